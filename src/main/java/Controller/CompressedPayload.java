@@ -0,0 +1,45 @@
+package Controller;
+
+import Util.CompressionCodec;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A serialized response body together with its compressed variants.
+ * Each variant is produced at most once and then reused for every request that accepts that encoding.
+ */
+public class CompressedPayload {
+    private final byte[] identity;
+    private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(CompressionCodec.values().length);
+
+    /**
+     * @param identity The uncompressed response body
+     */
+    public CompressedPayload(byte[] identity) {
+        this.identity = identity;
+    }
+
+    /**
+     * @return The uncompressed response body
+     */
+    public byte[] getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Returns the body compressed with the given codec, compressing it on first use
+     * @param codec The codec to use
+     * @param level The compression level used if the variant has not been produced yet
+     * @return The compressed body
+     */
+    public byte[] getEncoded(CompressionCodec codec, int level) {
+        byte[] bytes = encoded.get(codec.ordinal());
+        if(bytes == null) {
+            // Two racing requests may both compress; the loser's copy is simply discarded
+            bytes = codec.compress(identity, level);
+            if(!encoded.compareAndSet(codec.ordinal(), null, bytes)) {
+                bytes = encoded.get(codec.ordinal());
+            }
+        }
+        return bytes;
+    }
+}
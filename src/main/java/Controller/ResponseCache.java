@@ -0,0 +1,212 @@
+package Controller;
+
+import Diagnostics.CacheLookupEvent;
+import Util.AppConfig;
+import Util.CompressionCodec;
+import io.javalin.http.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches serialized bodies of hot list responses and writes them with content negotiation.
+ * Compressed variants are kept alongside each cached body so a payload is compressed once per encoding,
+ * not once per request.
+ *
+ * Settings (see AppConfig):
+ * - compression.enabled (default true)
+ * - compression.min.size: bodies smaller than this many bytes are sent uncompressed (default 1024)
+ * - compression.level: deflate level 1-9 (default 6)
+ * - compression.encodings: server preference order (default "gzip,deflate")
+ * - response.cache.max.entries: cached bodies kept before one is evicted for each new one (default 1024)
+ */
+public class ResponseCache {
+    private final boolean compressionEnabled;
+    private final int minSize;
+    private final int level;
+    private final List<CompressionCodec> codecs;
+    private final int maxEntries;
+
+    private final Map<String, CompressedPayload> entries = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with a write is not cached, as in BoundedCache
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+
+    /**
+     * Default constructor reads its settings from AppConfig
+     */
+    public ResponseCache() {
+        this(AppConfig.getBoolean("compression.enabled", true),
+                AppConfig.getInt("compression.min.size", 1024),
+                AppConfig.getInt("compression.level", 6),
+                AppConfig.getString("compression.encodings", "gzip,deflate"),
+                AppConfig.getInt("response.cache.max.entries", 1024));
+    }
+
+    /**
+     * Constructor with explicit settings for testing and benchmarks
+     * @param compressionEnabled Whether responses may be compressed at all
+     * @param minSize Minimum body size in bytes before compression is applied
+     * @param level The deflate level, 1 to 9
+     * @param encodings Comma separated content codings in server preference order
+     * @param maxEntries Maximum number of cached bodies
+     */
+    public ResponseCache(boolean compressionEnabled, int minSize, int level, String encodings, int maxEntries) {
+        this.compressionEnabled = compressionEnabled;
+        this.minSize = minSize;
+        this.level = Math.max(1, Math.min(9, level));
+        this.maxEntries = maxEntries;
+        this.codecs = new ArrayList<>();
+        for(String encoding : encodings.split(",")) {
+            CompressionCodec codec = CompressionCodec.fromEncoding(encoding.trim());
+            if(codec != null) {
+                codecs.add(codec);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached body for a key, serializing it with the loader on a miss
+     * @param key The cache key, e.g. "messages" or "accounts/1/messages"
+     * @param loader Produces the serialized body
+     * @return The cached payload
+     */
+    public CompressedPayload get(String key, Supplier<byte[]> loader) {
+        CompressedPayload payload = entries.get(key);
+        if(payload != null) {
+            hits.increment();
+            CacheLookupEvent.record("response", true);
+            return payload;
+        }
+        misses.increment();
+        CacheLookupEvent.record("response", false);
+        long observedGeneration = generation.get();
+        payload = new CompressedPayload(loader.get());
+        if(generation.get() == observedGeneration) {
+            store(key, payload);
+            if(generation.get() != observedGeneration) {
+                // An invalidation landed between the check and the put
+                entries.remove(key, payload);
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Caches a body, evicting an arbitrary other one when full so the rest stay cached
+     */
+    private void store(String key, CompressedPayload payload) {
+        if(entries.put(key, payload) == null && entries.size() > maxEntries) {
+            for(String victim : entries.keySet()) {
+                if(!victim.equals(key)) {
+                    entries.remove(victim);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops cached bodies that may no longer reflect the database
+     * @param keys The keys to drop
+     */
+    public void invalidate(String... keys) {
+        generation.incrementAndGet();
+        for(String key : keys) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Writes a payload as JSON, compressed when the client accepts a supported encoding and the body is large enough
+     * @param ctx The Javalin context to write to
+     * @param payload The payload to write
+     */
+    public void write(Context ctx, CompressedPayload payload) {
+        ctx.contentType("application/json");
+        ctx.header("Vary", "Accept-Encoding");
+        CompressionCodec codec = negotiate(ctx.header("Accept-Encoding"), payload.getIdentity().length);
+        if(codec == null) {
+            ctx.result(payload.getIdentity());
+            return;
+        }
+        compressedResponses.increment();
+        ctx.header("Content-Encoding", codec.getEncoding());
+        ctx.result(payload.getEncoded(codec, level));
+    }
+
+    /**
+     * Picks the codec to use for a response
+     * @param acceptEncoding The request's Accept-Encoding header, may be null
+     * @param size The uncompressed body size
+     * @return The codec, or null if the body should be sent uncompressed
+     */
+    CompressionCodec negotiate(String acceptEncoding, int size) {
+        if(!compressionEnabled || acceptEncoding == null || size < minSize) {
+            return null;
+        }
+        boolean wildcard = false;
+        List<CompressionCodec> accepted = new ArrayList<>();
+        for(String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if(isRefused(tokens)) continue;
+            if(tokens[0].trim().equals("*")) {
+                wildcard = true;
+            } else {
+                CompressionCodec codec = CompressionCodec.fromEncoding(tokens[0].trim());
+                if(codec != null) accepted.add(codec);
+            }
+        }
+        for(CompressionCodec codec : codecs) {
+            if(wildcard || accepted.contains(codec)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param tokens A coding followed by its parameters
+     * @return true if the coding carries q=0
+     */
+    private boolean isRefused(String[] tokens) {
+        for(int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if(param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch(NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of requests served from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of requests that had to serialize their body
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of responses sent with a Content-Encoding
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+}
@@ -1,12 +1,54 @@
 package Controller;
+import Diagnostics.HttpRequestEvent;
+import Diagnostics.RequestProfiler;
 import Model.Account;
 import Model.Message;
+import Model.MessageRevision;
+import Model.VersionedMessage;
 import Service.AccountService;
+import Service.MessageEventBus;
+import Service.MessageExporter;
 import Service.MessageService;
+import Service.MessageStatistics;
+import Service.TokenService;
+import Service.TombstoneCompactor;
+import Service.TrendingTracker;
+import Util.AdaptiveConcurrencyLimiter;
+import Util.AppConfig;
+import Util.ApplicationContext;
+import Util.ConnectionUtil;
+import Util.ReadConsistency;
+import Util.ReadReplica;
+import Util.TokenBucketLimiter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.http.sse.SseClient;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -19,17 +61,94 @@ public class SocialMediaController {
      * suite must receive a Javalin object from this method.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
+    private static final Logger LOG = LoggerFactory.getLogger(SocialMediaController.class);
+
     private AccountService accountService;
     private MessageService messageService;
+    private MessageEventBus eventBus;
     private ObjectMapper objectMapper;
+    private ResponseCache responseCache;
+    private WebSocketPushChannel pushChannel;
+    private TokenBucketLimiter<Integer> accountWriteLimiter;
+    private TokenBucketLimiter<String> anonymousWriteLimiter;
+    private AdaptiveConcurrencyLimiter writeConcurrencyLimiter;
+    private TokenService tokenService;
+    private boolean authRequired;
+    private byte[] adminToken;
+    private MessageExporter messageExporter;
+    private TombstoneCompactor tombstoneCompactor;
+    private final AtomicBoolean exportRunning = new AtomicBoolean();
+    private volatile boolean warm;
+    private volatile Map<String, Long> warmUpReport = Map.of();
+    private final ApplicationContext context;
+    private Javalin app;
+    private volatile boolean draining;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final RequestProfiler requestProfiler = new RequestProfiler();
 
     /**
-     * Default constructor initializes services and object mapper
+     * Default constructor wires the controller to a fresh application context
      */
     public SocialMediaController() {
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        this(new ApplicationContext());
+    }
+
+    /**
+     * Takes the services from the application context and creates the object mapper, response cache and write limiters
+     * @param context The context that owns the services, shared with anything else running in the process
+     */
+    public SocialMediaController(ApplicationContext context) {
+        this.context = context;
+        // The context shares one account service, so account lookups from message validation are coalesced and counted together
+        this.accountService = context.getAccountService();
+        this.messageService = context.getMessageService();
+        this.eventBus = context.getEventBus();
         this.objectMapper = new ObjectMapper();
+        this.responseCache = new ResponseCache();
+        this.pushChannel = new WebSocketPushChannel(eventBus, objectMapper);
+        this.accountWriteLimiter = new TokenBucketLimiter<>(
+                AppConfig.getInt("ratelimit.per.second", 20),
+                AppConfig.getInt("ratelimit.burst", 40),
+                AppConfig.getInt("ratelimit.max.accounts", 100_000),
+                AppConfig.getLong("ratelimit.idle.seconds", 60));
+        // Writes without a token may name any posted_by, so they are limited per client address instead
+        this.anonymousWriteLimiter = new TokenBucketLimiter<>(
+                AppConfig.getInt("ratelimit.anonymous.per.second", 100),
+                AppConfig.getInt("ratelimit.anonymous.burst", 200),
+                AppConfig.getInt("ratelimit.max.clients", 100_000),
+                AppConfig.getLong("ratelimit.idle.seconds", 60));
+        this.writeConcurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                AppConfig.getInt("concurrency.initial", 64),
+                AppConfig.getInt("concurrency.min", 4),
+                AppConfig.getInt("concurrency.max", 512),
+                AppConfig.getInt("concurrency.latency.tolerance", 3));
+        this.tokenService = context.getTokenService();
+        this.authRequired = AppConfig.getBoolean("auth.required", false);
+        String adminToken = AppConfig.get("admin.token");
+        if(adminToken == null || adminToken.isEmpty()) {
+            LOG.warn("admin.token is not set; admin endpoints will refuse every request");
+        } else {
+            this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+        }
+        this.messageExporter = context.getMessageExporter();
+        // Deleted messages are purged only while few writes are in flight
+        int compactionMaxInFlight = AppConfig.getInt("compaction.max.in.flight", 2);
+        this.tombstoneCompactor = new TombstoneCompactor(context.getMessageDAO(),
+                () -> writeConcurrencyLimiter.getInFlight() > compactionMaxInFlight);
+        context.register(new ApplicationContext.Lifecycle() {
+            private boolean compacting;
+
+            @Override
+            public void suspend() {
+                compacting = tombstoneCompactor.isRunning();
+                tombstoneCompactor.stop();
+            }
+
+            @Override
+            public void resume() {
+                if(compacting) tombstoneCompactor.start();
+            }
+        });
     }
     /**
      * Starts the Javalin application and configures all endpoints
@@ -37,50 +156,130 @@ public class SocialMediaController {
      */
 
     public Javalin startAPI() {
-         Javalin app = Javalin.create();
+        // List responses are compressed by ResponseCache so cached bodies are not recompressed per request
+        Javalin app = Javalin.create(config -> config.compression.none());
+        app.events(event -> {
+            event.serverStarted(tombstoneCompactor::start);
+            event.serverStopped(tombstoneCompactor::stop);
+        });
+        // First before handlers and, below, last after handlers, so the JFR event and profiling cover all the others
+        app.before(this::beginRequestEvent);
+        app.before(requestProfiler::begin);
+        // Counts requests for a graceful shutdown to wait on, and turns new ones away once it has begun
+        app.before(this::admitRequest);
+        app.after(this::finishRequest);
+        // Read-your-writes across requests: a client echoes the X-Write-Lsn it was given as X-Read-After-Lsn
+        app.before(this::beginReadSession);
+        app.after(this::endReadSession);
+        // Admin endpoints expose internals and start expensive work, so they need the admin token
+        app.before("/admin/metrics", this::requireAdmin);
+        app.before("/admin/export", this::requireAdmin);
+        app.before("/admin/profiling", this::requireAdmin);
         // Account endpoints
         app.post("/register", this::registerHandler);
         app.post("/login", this::loginHandler);
+        app.post("/logout", this::logoutHandler);
 
         // Message endpoints
         app.post("/messages", this::createMessageHandler);
         app.get("/messages", this::getAllMessagesHandler);
+        // Registered before /messages/{message_id} so "stream" and "trending" are not taken for an id
+        app.sse("/messages/stream", client -> streamMessagesHandler(client, null));
+        app.get("/messages/trending", this::getTrendingHandler);
         app.get("/messages/{message_id}", this::getMessageByIdHandler);
         app.delete("/messages/{message_id}", this::deleteMessageHandler);
         app.patch("/messages/{message_id}", this::updateMessageHandler);
+        app.get("/messages/{message_id}/history", this::getMessageHistoryHandler);
         app.get("/accounts/{account_id}/messages", this::getMessagesByUserHandler);
+        app.get("/accounts/{account_id}/stats", this::getAccountStatsHandler);
+        app.get("/stats", this::getStatsHandler);
+        app.sse("/accounts/{account_id}/messages/stream",
+                client -> streamMessagesHandler(client, Integer.parseInt(client.ctx.pathParam("account_id"))));
+
+        // Push endpoints; one socket per device can follow many account timelines
+        app.ws("/ws/messages", pushChannel::configure);
+
+        // Health endpoints
+        app.get("/health/live", this::livenessHandler);
+        app.get("/health/ready", this::readinessHandler);
 
+        // Admin endpoints
+        app.get("/admin/metrics", this::getMetricsHandler);
+        app.post("/admin/export", this::exportHandler);
+        app.get("/admin/profiling", ctx -> ctx.json(requestProfiler.getReport()));
+        app.post("/admin/profiling", this::profilingHandler);
+
+        app.after(requestProfiler::end);
+        app.after(this::endRequestEvent);
+
+        this.app = app;
         return app;
     }
 
     /**
-     * Handles account registration requests
+     * Handles account registration requests. The password is hashed on the verifier pool and the request thread is
+     * released while it is.
      * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with the registered account
+     * - 400 Bad Request if the account is invalid or the username is taken
+     * - 503 Service Unavailable if password hashing is saturated
      */
     private void registerHandler(Context ctx) throws JsonProcessingException {
         Account account = objectMapper.readValue(ctx.body(), Account.class);
-        Account registeredAccount = accountService.register(account);
-        
-        if(registeredAccount != null) {
-            ctx.json(objectMapper.writeValueAsString(registeredAccount));
-        } else {
-            ctx.status(400); // Bad request if registration fails
-        }
+        ctx.future(() -> accountService.registerAsync(account).handle((registeredAccount, error) -> {
+            // The insert ran on the thread now running this callback, so its write LSN is reported from here
+            endReadSession(ctx);
+            if(error != null) {
+                boolean saturated = error instanceof RejectedExecutionException
+                        || error.getCause() instanceof RejectedExecutionException;
+                ctx.status(saturated ? 503 : 500); // 503 when password hashing is saturated
+            } else if(registeredAccount != null) {
+                ctx.result(toJsonBytes(registeredAccount)).contentType("application/json");
+            } else {
+                ctx.status(400); // Bad request if registration fails
+            }
+            return null;
+        }));
     }
 
     /**
-     * Handles login requests
+     * Handles login requests. Password verification runs on the verifier pool and the request thread is released
+     * while it does.
      * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with the account, and an access token in the X-Auth-Token header for use as
+     *   Authorization: Bearer TOKEN on message writes
+     * - 401 Unauthorized if the credentials are wrong
+     * - 503 Service Unavailable if password verification is saturated
      */
     private void loginHandler(Context ctx) throws JsonProcessingException {
         Account account = objectMapper.readValue(ctx.body(), Account.class);
-        Account loggedInAccount = accountService.login(account);
-        
-        if(loggedInAccount != null) {
-            ctx.json(objectMapper.writeValueAsString(loggedInAccount));
-        } else {
-            ctx.status(401); // Unauthorized if login fails
-        }
+        ctx.future(() -> accountService.loginAsync(account).handle((loggedInAccount, error) -> {
+            if(error != null) {
+                boolean saturated = error instanceof RejectedExecutionException
+                        || error.getCause() instanceof RejectedExecutionException;
+                ctx.status(saturated ? 503 : 500);
+            } else if(loggedInAccount != null) {
+                // The token travels in a header so the response body keeps its shape
+                ctx.header("X-Auth-Token", tokenService.issue(loggedInAccount.getAccount_id()));
+                ctx.result(toJsonBytes(loggedInAccount)).contentType("application/json");
+            } else {
+                ctx.status(401); // Unauthorized if login fails
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Handles logout requests by revoking the presented access token
+     * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK if the token was revoked
+     * - 401 Unauthorized if no valid token was presented
+     */
+    private void logoutHandler(Context ctx) {
+        ctx.status(tokenService.revoke(bearerToken(ctx)) ? 200 : 401);
     }
 
     /**
@@ -89,9 +288,13 @@ public class SocialMediaController {
      */
     private void createMessageHandler(Context ctx) throws JsonProcessingException {
         Message message = objectMapper.readValue(ctx.body(), Message.class);
-        Message createdMessage = messageService.createMessage(message);
+        if(!authorize(ctx, message.getPosted_by())) return;
+        if(!admitWrite(ctx)) return;
+        Message createdMessage = limitedWrite(() -> messageService.createMessage(message));
         
         if(createdMessage != null) {
+            invalidateCachedLists(createdMessage);
+            setVersionTag(ctx, createdMessage);
             ctx.json(objectMapper.writeValueAsString(createdMessage));
         } else {
             ctx.status(400); // Bad request if message creation fails
@@ -103,7 +306,49 @@ public class SocialMediaController {
      * @param ctx The Javalin context containing request and response information
      */
     private void getAllMessagesHandler(Context ctx) {
-        ctx.json(messageService.getAllMessages());
+        if(ctx.queryParam("ids") != null) {
+            getMessagesByIdsHandler(ctx);
+            return;
+        }
+        responseCache.write(ctx, allMessagesPayload());
+    }
+
+    /**
+     * Handles multi-get requests of the form GET /messages?ids=1,2,3
+     * @param ctx The Javalin context containing request and response information
+     * Responses:
+     * - 200 OK with {"messages": [...], "missing": [...]}, where messages is in request order with null for each
+     *   id that does not exist and missing lists those ids
+     * - 400 if an id is not a number or more ids are requested than multiget.max.ids (default 500)
+     */
+    private void getMessagesByIdsHandler(Context ctx) {
+        List<Integer> message_ids = new ArrayList<>();
+        try {
+            for(String id : ctx.queryParam("ids").split(",")) {
+                if(!id.isBlank()) {
+                    message_ids.add(Integer.parseInt(id.trim()));
+                }
+            }
+        } catch(NumberFormatException e) {
+            ctx.status(400); // Bad request if an id is not a number
+            return;
+        }
+        if(message_ids.size() > AppConfig.getInt("multiget.max.ids", 500)) {
+            ctx.status(400); // Bad request if too many ids are requested at once
+            return;
+        }
+
+        List<Message> messages = messageService.getMessagesByIds(message_ids);
+        List<Integer> missing = new ArrayList<>();
+        for(int i = 0; i < messages.size(); i++) {
+            if(messages.get(i) == null) {
+                missing.add(message_ids.get(i));
+            }
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("messages", messages);
+        body.put("missing", missing);
+        responseCache.write(ctx, new CompressedPayload(toJsonBytes(body)));
     }
 
     /**
@@ -115,6 +360,7 @@ public class SocialMediaController {
         Message message = messageService.getMessageById(message_id);
         
         if(message != null) {
+            setVersionTag(ctx, message);
             ctx.json(message);
         } else {
             ctx.result(""); // Empty response if message not found
@@ -127,9 +373,16 @@ public class SocialMediaController {
      */
     private void deleteMessageHandler(Context ctx) throws JsonProcessingException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message deletedMessage = messageService.deleteMessage(message_id);
+        if(authRequired || bearerToken(ctx) != null) {
+            // Only the author may delete; a missing message is left for the service to report
+            Message existingMessage = messageService.getMessageById(message_id);
+            if(!authorize(ctx, existingMessage == null ? null : existingMessage.getPosted_by())) return;
+        }
+        if(!admitWrite(ctx)) return;
+        Message deletedMessage = limitedWrite(() -> messageService.deleteMessage(message_id));
         
         if(deletedMessage != null) {
+            invalidateCachedLists(deletedMessage);
             ctx.json(objectMapper.writeValueAsString(deletedMessage));
         } else {
             ctx.result(""); // Empty response if message not found
@@ -137,22 +390,111 @@ public class SocialMediaController {
     }
 
     /**
-     * Handles message update requests
+     * Handles message update requests. An If-Match header holding the message's ETag, strong or weak, makes the edit
+     * conditional on nobody having edited the message since that version was read; If-Match: * only requires the
+     * message to exist. The check is a compare-and-set on the version column, so no row is locked.
      * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with the updated message and its new version in the ETag header
+     * - 400 Bad Request if the text is invalid or the message does not exist
+     * - 412 Precondition Failed if the message is no longer at the If-Match version, or does not exist for If-Match: *
      */
     private void updateMessageHandler(Context ctx) throws JsonProcessingException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
         Message messageUpdate = objectMapper.readValue(ctx.body(), Message.class);
         String message_text = messageUpdate.getMessage_text();
-        
-        Message updatedMessage = messageService.updateMessage(message_id, message_text);
+        String ifMatch = ctx.header("If-Match");
+        boolean anyVersion = ifMatch != null && ifMatch.trim().equals("*");
+        Integer expectedVersion = ifMatch == null || anyVersion ? null : parseVersionTag(ifMatch);
+        if(ifMatch != null && !anyVersion && expectedVersion == null) {
+            ctx.status(412); // A tag this server never issued cannot match
+            return;
+        }
+
+        // Only the author may edit; a missing message is left for the service to reject
+        Message existingMessage = messageService.getMessageById(message_id);
+        if(anyVersion && existingMessage == null) {
+            ctx.status(412);
+            return;
+        }
+        if(!authorize(ctx, existingMessage == null ? null : existingMessage.getPosted_by())) return;
+        if(!admitWrite(ctx)) return;
+        Message updatedMessage;
+        try {
+            updatedMessage = limitedWrite(() -> messageService.updateMessage(message_id, message_text, expectedVersion));
+        } catch(ConcurrentModificationException e) {
+            ctx.status(412);
+            return;
+        }
         if(updatedMessage != null) {
+            invalidateCachedLists(updatedMessage);
+            setVersionTag(ctx, updatedMessage);
             ctx.json(objectMapper.writeValueAsString(updatedMessage));
         } else {
             ctx.status(400); // Bad request if update fails
         }
     }
 
+    /**
+     * Handles requests for the edit history of a message
+     * @param ctx The Javalin context containing request and response information
+     * * Query parameters:
+     * - limit: maximum number of versions, newest first (default and maximum history.max.limit, 100)
+     * * Responses:
+     * - 200 OK with JSON array of {"message_id", "version", "message_text", "superseded_epoch"}, the current version
+     *   first with a null superseded_epoch
+     * - 400 Bad Request if limit is not a positive number
+     * - 404 Not Found if the message does not exist
+     */
+    private void getMessageHistoryHandler(Context ctx) {
+        int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        int maxLimit = AppConfig.getInt("history.max.limit", 100);
+        String limitParam = ctx.queryParam("limit");
+        int limit;
+        try {
+            limit = limitParam == null ? maxLimit : Integer.parseInt(limitParam);
+        } catch(NumberFormatException e) {
+            limit = 0;
+        }
+        if(limit < 1) {
+            ctx.status(400);
+            return;
+        }
+        List<MessageRevision> history = messageService.getMessageHistory(message_id, Math.min(limit, maxLimit));
+        if(history == null) {
+            ctx.status(404);
+            return;
+        }
+        ctx.json(history);
+    }
+
+    /**
+     * Sends a message's version as its ETag
+     * @param ctx The Javalin context of the response
+     * @param message The message in the response
+     */
+    private void setVersionTag(Context ctx, Message message) {
+        if(message instanceof VersionedMessage) {
+            ctx.header("ETag", "\"" + ((VersionedMessage) message).getVersion() + "\"");
+        }
+    }
+
+    /**
+     * @param tag An entity tag from a request, such as "3"; a weak W/"3" names the same version, since If-Match
+     *            only asks whether the version is still current
+     * @return The message version it names, or null if it is not one of ours
+     */
+    private Integer parseVersionTag(String tag) {
+        String trimmed = tag.trim();
+        if(trimmed.startsWith("W/")) trimmed = trimmed.substring(2);
+        if(trimmed.length() < 3 || !trimmed.startsWith("\"") || !trimmed.endsWith("\"")) return null;
+        try {
+            return Integer.parseInt(trimmed.substring(1, trimmed.length() - 1));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * Handles requests to get all messages by a specific user
      * @param ctx The Javalin context containing request and response information
@@ -161,7 +503,533 @@ public class SocialMediaController {
      */
     private void getMessagesByUserHandler(Context ctx) {
         int account_id = Integer.parseInt(ctx.pathParam("account_id"));
-        ctx.json(messageService.getMessagesByUser(account_id));
+        responseCache.write(ctx, userMessagesPayload(account_id));
+    }
+
+    private CompressedPayload allMessagesPayload() {
+        return responseCache.get("messages",
+                () -> toJsonBytes(ReadConsistency.latest(messageService::getAllMessages)));
+    }
+
+    private CompressedPayload userMessagesPayload(int account_id) {
+        return responseCache.get("accounts/" + account_id + "/messages",
+                () -> toJsonBytes(ReadConsistency.latest(() -> messageService.getMessagesByUser(account_id))));
+    }
+
+    /**
+     * Handles server-sent event streams of message changes.
+     * Each event is named created, updated or deleted, carries the message JSON as its data and the bus event id
+     * as its id. Clients must send Accept: text/event-stream. A client resumes after a reconnect by sending the Last-Event-ID header (or lastEventId query
+     * parameter); a client that falls too far behind is disconnected.
+     * @param client The SSE client for the request
+     * @param account_id Only stream changes to this account's messages, or null for all messages
+     */
+    private void streamMessagesHandler(SseClient client, Integer account_id) {
+        client.keepAlive();
+        String lastEventId = client.ctx.header("Last-Event-ID");
+        if(lastEventId == null) {
+            lastEventId = client.ctx.queryParam("lastEventId");
+        }
+        long resumeAfter = 0;
+        try {
+            resumeAfter = lastEventId == null ? 0 : Long.parseLong(lastEventId.trim());
+        } catch(NumberFormatException e) {
+            // An unusable id just means starting from new events
+        }
+
+        MessageEventBus.Subscription subscription = eventBus.subscribe(account_id, resumeAfter,
+                event -> client.sendEvent(event.getType().name().toLowerCase(),
+                        new String(toJsonBytes(event.getMessage()), StandardCharsets.UTF_8),
+                        String.valueOf(event.getEvent_id())),
+                client::close);
+        client.onClose(subscription::close);
+    }
+
+    /**
+     * Handles requests for the most used terms and most active posters among recent messages. Answered from in-memory
+     * sketches without querying the database.
+     * @param ctx The Javalin context; query parameters window (1m, 1h or 24h, default 1h) and limit (default 10,
+     * at most trending.max.limit)
+     * * Responses:
+     * - 200 OK with {"window": ..., "terms": [{"term": ..., "count": ...}], "posters": [{"account_id": ..., "count": ...}]}
+     * - 400 Bad Request for an unknown window or a limit that is not a positive number
+     */
+    private void getTrendingHandler(Context ctx) {
+        String windowParam = ctx.queryParam("window");
+        TrendingTracker.Window window = TrendingTracker.Window.fromLabel(windowParam == null ? "1h" : windowParam);
+        String limitParam = ctx.queryParam("limit");
+        int limit;
+        try {
+            limit = limitParam == null ? 10 : Integer.parseInt(limitParam);
+        } catch(NumberFormatException e) {
+            limit = 0;
+        }
+        if(window == null || limit < 1) {
+            ctx.status(400);
+            return;
+        }
+        limit = Math.min(limit, AppConfig.getInt("trending.max.limit", 100));
+        ctx.json(messageService.getTrending().getTrending(window, limit));
+    }
+
+    /**
+     * Handles requests for an account's message statistics, answered from counters without scanning messages
+     * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with {"account_id": ..., "message_count": ...}
+     */
+    private void getAccountStatsHandler(Context ctx) {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("account_id", account_id);
+        stats.put("message_count", messageService.getStatistics().getMessageCount(account_id));
+        ctx.json(stats);
+    }
+
+    /**
+     * Handles requests for overall message statistics, answered from counters without scanning messages
+     * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with {"total_messages": ..., "active_accounts": ..., "messages_per_hour": [{"hour_epoch": ..., "count": ...}]}
+     */
+    private void getStatsHandler(Context ctx) {
+        MessageStatistics statistics = messageService.getStatistics();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total_messages", statistics.getTotalMessages());
+        stats.put("active_accounts", statistics.getActiveAccounts());
+        stats.put("messages_per_hour", statistics.getMessagesPerHour());
+        ctx.json(stats);
+    }
+
+    /**
+     * Starts read-your-writes tracking for a request
+     * @param ctx The Javalin context; a numeric X-Read-After-Lsn header makes the request's reads skip replicas that
+     * have not applied that LSN yet
+     */
+    private void beginReadSession(Context ctx) {
+        long requiredLsn = 0;
+        String header = ctx.header("X-Read-After-Lsn");
+        if(header != null) {
+            try {
+                requiredLsn = Long.parseLong(header.trim());
+            } catch(NumberFormatException e) {
+                requiredLsn = 0;
+            }
+        }
+        ReadConsistency.begin(requiredLsn);
+    }
+
+    /**
+     * Reports the LSN of the request's last write, if it made one, in the X-Write-Lsn header
+     * @param ctx The Javalin context
+     */
+    private void endReadSession(Context ctx) {
+        long writeLsn = ReadConsistency.lastWriteLsn();
+        if(writeLsn > 0) {
+            ctx.header("X-Write-Lsn", Long.toString(writeLsn));
+        }
+        ReadConsistency.end();
+    }
+
+    /**
+     * Warms the server up before it takes traffic, so the first requests after a deploy do not pay for an empty cache
+     * and interpreted code. Loads the warmup.messages (5000) most recent messages and the accounts of up to
+     * warmup.accounts (1000) of their authors into the service caches, builds the cached timeline responses of those
+     * authors and of GET /messages, then runs the hot read paths and JSON codecs for warmup.iterations (20000) rounds,
+     * stopping after warmup.max.millis (30000). Nothing is written. The server reports ready on /health/ready once
+     * this returns, also if warming failed part way, since a cold server is better than none; with
+     * warmup.enabled=false it is ready at once.
+     * @return What was warmed, also reported by /admin/metrics
+     */
+    public Map<String, Long> warmUp() {
+        long start = System.nanoTime();
+        Map<String, Long> report = new LinkedHashMap<>();
+        try {
+            if(!AppConfig.getBoolean("warmup.enabled", true)) return report;
+            List<Message> recent = messageService.preloadRecent(AppConfig.getInt("warmup.messages", 5_000));
+            Set<Integer> authors = new LinkedHashSet<>();
+            int maxAccounts = AppConfig.getInt("warmup.accounts", 1_000);
+            for(Message message : recent) {
+                if(authors.size() >= maxAccounts) break;
+                authors.add(message.getPosted_by());
+            }
+            report.put("warmup.messages", (long) recent.size());
+            report.put("warmup.accounts", (long) accountService.preload(authors));
+            allMessagesPayload();
+            for(Integer account_id : authors) {
+                userMessagesPayload(account_id);
+            }
+
+            int iterations = AppConfig.getInt("warmup.iterations", 20_000);
+            long deadline = start + AppConfig.getLong("warmup.max.millis", 30_000) * 1_000_000;
+            List<Integer> accountIds = new ArrayList<>(authors);
+            int round = 0;
+            while(!recent.isEmpty() && round < iterations && System.nanoTime() < deadline) {
+                // The same calls the GET handlers make, alternating cache hits with database reads
+                Message message = recent.get(round % recent.size());
+                Message cached = messageService.getMessageById(message.getMessage_id());
+                objectMapper.readValue(toJsonBytes(cached), Message.class);
+                accountService.getAccountById(message.getPosted_by());
+                if(round % 16 == 0) {
+                    int account_id = accountIds.get((round / 16) % accountIds.size());
+                    toJsonBytes(messageService.getMessagesByUser(account_id));
+                    toJsonBytes(messageService.getMessagesByIds(List.of(message.getMessage_id(), -1)));
+                    messageService.getMessageHistory(message.getMessage_id(), 2);
+                }
+                round++;
+            }
+            report.put("warmup.iterations", (long) round);
+        } catch(IOException | RuntimeException e) {
+            LOG.warn("Warm-up stopped early: " + e.getMessage(), e);
+        } finally {
+            report.put("warmup.millis", (System.nanoTime() - start) / 1_000_000);
+            warmUpReport = report;
+            warm = true;
+        }
+        return report;
+    }
+
+    /**
+     * Handles liveness probes. The process answering at all is the signal, so this never touches the database.
+     * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with {"live": true}
+     */
+    private void livenessHandler(Context ctx) {
+        ctx.json(Map.of("live", true));
+    }
+
+    /**
+     * Handles readiness probes from the load balancer
+     * @param ctx The Javalin context containing request and response information
+     * * Responses:
+     * - 200 OK with {"ready": true, "warm", "database", "draining", ...warm-up report} once warmUp has run, while
+     *   the database answers with a free pooled connection and no shutdown has begun
+     * - 503 Service Unavailable with the same body and "ready": false otherwise
+     */
+    private void readinessHandler(Context ctx) {
+        // A draining server is not ready whatever its database says, and is not worth a database round trip
+        boolean database = !draining && ConnectionUtil.isHealthy();
+        boolean ready = warm && database && !draining;
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ready", ready);
+        body.put("warm", warm);
+        body.put("database", database);
+        body.put("draining", draining);
+        body.putAll(warmUpReport);
+        ctx.status(ready ? 200 : 503).json(body);
+    }
+
+    /**
+     * Shuts the server down without cutting off requests. Readiness turns to 503 at once; after
+     * shutdown.ready.delay.ms (default 0), long enough for a load balancer to notice, new requests are answered 503.
+     * Requests already running are given until shutdown.deadline.ms (default 15000) from the start to finish. The
+     * server then stops, closing streams and sockets, and the application context delivers queued events, waits for
+     * replicas to catch up and closes the database in whatever time is left.
+     * @return true if every request, event and replicated change was drained before the deadline
+     */
+    public boolean shutdown() {
+        long start = System.nanoTime();
+        long deadline = start + AppConfig.getLong("shutdown.deadline.ms", 15_000) * 1_000_000;
+        draining = true;
+        try {
+            Thread.sleep(Math.max(0, AppConfig.getLong("shutdown.ready.delay.ms", 0)));
+            synchronized(inFlightRequests) {
+                while(inFlightRequests.get() > 0 && System.nanoTime() < deadline) {
+                    inFlightRequests.wait(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int abandoned = inFlightRequests.get();
+        if(app != null) {
+            // Jetty's statistics handler then lets the responses of the last requests finish writing before it closes
+            app.jettyServer().server().setStopTimeout(Math.max(100, (deadline - System.nanoTime()) / 1_000_000));
+            app.stop();
+        }
+        boolean drained = abandoned == 0 && context.close(Math.max(0, (deadline - System.nanoTime()) / 1_000_000));
+        LOG.info("Shut down in " + (System.nanoTime() - start) / 1_000_000 + " ms"
+                + (drained ? "" : ", " + abandoned + " requests cut off or queued work left undone"));
+        return drained;
+    }
+
+    /**
+     * Counts a request as in flight, or turns it away with 503 once a shutdown has begun. Health probes are always
+     * answered, and event streams are not counted since they only end when the client leaves.
+     * @param ctx The Javalin context
+     */
+    private void admitRequest(Context ctx) {
+        String path = ctx.path();
+        if(path.startsWith("/health/") || path.endsWith("/stream")) return;
+        // Counted before the check, so a shutdown that saw no requests in flight cannot miss this one
+        inFlightRequests.incrementAndGet();
+        if(draining) {
+            release();
+            ctx.header("Connection", "close");
+            throw new ServiceUnavailableResponse();
+        }
+        ctx.attribute("in.flight", true);
+    }
+
+    /**
+     * Ends a request counted by admitRequest, waking a shutdown waiting for the last one
+     * @param ctx The Javalin context
+     */
+    private void finishRequest(Context ctx) {
+        if(ctx.attribute("in.flight") != null) {
+            release();
+        }
+    }
+
+    private void release() {
+        if(inFlightRequests.decrementAndGet() == 0) {
+            synchronized(inFlightRequests) {
+                inFlightRequests.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts a JFR HttpRequestEvent for the request if a recording has the event enabled
+     * @param ctx The Javalin context
+     */
+    private void beginRequestEvent(Context ctx) {
+        HttpRequestEvent event = HttpRequestEvent.start();
+        if(event != null) {
+            ctx.attribute("jfr.event", event);
+        }
+    }
+
+    /**
+     * Commits the request's JFR event, if one was started, with its route and status
+     * @param ctx The Javalin context
+     */
+    private void endRequestEvent(Context ctx) {
+        HttpRequestEvent event = ctx.attribute("jfr.event");
+        if(event != null) {
+            event.finish(ctx.method().toString(), RequestProfiler.routeOf(ctx), ctx.path(), ctx.statusCode());
+        }
+    }
+
+    /**
+     * Handles requests for runtime metrics of the caches, limiters and lookup coalescing
+     * @param ctx The Javalin context containing request and response information
+     */
+    private void getMetricsHandler(Context ctx) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("response.cache.hits", responseCache.getHits());
+        metrics.put("response.cache.misses", responseCache.getMisses());
+        metrics.put("response.cache.compressed", responseCache.getCompressedResponses());
+        metrics.put("ratelimit.admitted", accountWriteLimiter.getAdmitted());
+        metrics.put("ratelimit.rejected", accountWriteLimiter.getRejected());
+        metrics.put("ratelimit.accounts.tracked", accountWriteLimiter.getBucketCount());
+        metrics.put("ratelimit.accounts.evicted", accountWriteLimiter.getEvicted());
+        metrics.put("ratelimit.anonymous.admitted", anonymousWriteLimiter.getAdmitted());
+        metrics.put("ratelimit.anonymous.rejected", anonymousWriteLimiter.getRejected());
+        metrics.put("ratelimit.clients.tracked", anonymousWriteLimiter.getBucketCount());
+        metrics.put("concurrency.limit", writeConcurrencyLimiter.getLimit());
+        metrics.put("concurrency.in.flight", writeConcurrencyLimiter.getInFlight());
+        metrics.put("concurrency.shed", writeConcurrencyLimiter.getShed());
+        metrics.put("requests.in.flight", inFlightRequests.get());
+        metrics.putAll(accountService.getMetrics());
+        metrics.putAll(messageService.getMetrics());
+        metrics.putAll(pushChannel.getMetrics());
+        metrics.putAll(tokenService.getMetrics());
+        metrics.putAll(tombstoneCompactor.getMetrics());
+        metrics.putAll(warmUpReport);
+        long lastLsn = ConnectionUtil.getReplicationLog().getLastLsn();
+        metrics.put("replication.lsn", lastLsn);
+        ReadReplica[] replicas = ConnectionUtil.getReplicas();
+        for(int i = 0; i < replicas.length; i++) {
+            metrics.put("replica." + (i + 1) + ".applied.lsn", replicas[i].getAppliedLsn());
+            metrics.put("replica." + (i + 1) + ".lag.lsn", lastLsn - replicas[i].getAppliedLsn());
+            metrics.put("replica." + (i + 1) + ".lag.ms", replicas[i].getLagMillis());
+        }
+        ctx.json(metrics);
+    }
+
+    /**
+     * Handles requests to switch per-route allocation and CPU profiling on or off at runtime
+     * @param ctx The Javalin context containing request and response information
+     * * Query parameters:
+     * - enabled: true or false; omitted leaves profiling as it is
+     * - reset: true to drop the measurements so far
+     * * Responses:
+     * - 200 OK with the report also served by GET /admin/profiling; "enabled" stays false if the JVM cannot measure
+     *   per-thread allocation
+     */
+    private void profilingHandler(Context ctx) {
+        String enabled = ctx.queryParam("enabled");
+        if(enabled != null) {
+            requestProfiler.setEnabled(Boolean.parseBoolean(enabled));
+        }
+        if(Boolean.parseBoolean(ctx.queryParam("reset"))) {
+            requestProfiler.reset();
+        }
+        ctx.json(requestProfiler.getReport());
+    }
+
+    /**
+     * Handles requests to export every message to a file under export.directory (default ./exports). The export runs
+     * off the request thread; one runs at a time.
+     * @param ctx The Javalin context containing request and response information
+     * * Query parameters:
+     * - format: ndjson (default) or csv
+     * - gzip: true to gzip the file
+     * * Responses:
+     * - 200 OK with {"file", "rows", "bytes", "millis", "rows_per_second"}
+     * - 400 Bad Request if the format is unknown
+     * - 409 Conflict if an export is already running
+     * - 500 Internal Server Error if the export failed
+     */
+    private void exportHandler(Context ctx) {
+        String formatParam = ctx.queryParam("format");
+        MessageExporter.Format format = MessageExporter.Format.fromName(formatParam == null ? "ndjson" : formatParam);
+        if(format == null) {
+            ctx.status(400);
+            return;
+        }
+        boolean gzip = Boolean.parseBoolean(ctx.queryParam("gzip"));
+        if(!exportRunning.compareAndSet(false, true)) {
+            ctx.status(409);
+            return;
+        }
+        String name = "messages-" + System.currentTimeMillis() + "." + format.name().toLowerCase() + (gzip ? ".gz" : "");
+        String directory = AppConfig.get("export.directory");
+        Path target = Paths.get(directory == null ? "exports" : directory, name);
+        ctx.future(() -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return messageExporter.export(target, format, gzip);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "message-export");
+            thread.setDaemon(true);
+            thread.start();
+        }).handle((result, error) -> {
+            exportRunning.set(false);
+            if(error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                LOG.error("Message export to " + target + " failed", cause);
+                ctx.status(500);
+            } else {
+                ctx.json(result);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Checks the access token on a message write. Without a token the write is allowed unless auth.required is set;
+     * a presented token must always be valid. Checking needs no database lookup.
+     * @param ctx The Javalin context; responds 401 for a missing or invalid token and 403 for another account's
+     * token. The verified account is stored in its "auth.account_id" attribute for admitWrite.
+     * @param owner_id The account the write acts for, or null if there is none (e.g. a missing message)
+     * @return true if the write may proceed
+     */
+    private boolean authorize(Context ctx, Integer owner_id) {
+        String token = bearerToken(ctx);
+        if(token == null) {
+            if(!authRequired) return true;
+            ctx.status(401);
+            return false;
+        }
+        TokenService.Claims claims = tokenService.verify(token);
+        if(claims == null) {
+            ctx.status(401);
+            return false;
+        }
+        if(owner_id != null && claims.getAccount_id() != owner_id) {
+            ctx.status(403);
+            return false;
+        }
+        ctx.attribute("auth.account_id", claims.getAccount_id());
+        return true;
+    }
+
+    /**
+     * Refuses an admin request unless it carries the admin.token secret as an Authorization: Bearer header.
+     * This is a separate secret from account tokens, which only ever authorize writes for their own account.
+     * @param ctx The Javalin context; responds 403 if no admin token is configured and 401 for a missing or wrong one
+     */
+    private void requireAdmin(Context ctx) {
+        if(adminToken == null) throw new ForbiddenResponse();
+        String token = bearerToken(ctx);
+        if(token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            throw new UnauthorizedResponse();
+        }
+    }
+
+    /**
+     * @return The token of an Authorization: Bearer header, or null if there is none
+     */
+    private String bearerToken(Context ctx) {
+        String header = ctx.header("Authorization");
+        if(header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return header.substring(7).trim();
+    }
+
+    /**
+     * Applies the rate limit and the global write concurrency limit. A write authorized by a token is limited per
+     * account; any other write is limited per client address, since its posted_by is unverified and would let one
+     * client exhaust another account's budget.
+     * When this returns true a concurrency permit is held and the write must be run through limitedWrite.
+     * @param ctx The Javalin context, after authorize has run
+     * @return true if the write may proceed, false if a 429 or 503 response was set
+     */
+    private boolean admitWrite(Context ctx) {
+        Integer account_id = ctx.attribute("auth.account_id");
+        long waitNanos = account_id != null
+                ? accountWriteLimiter.tryAcquire(account_id)
+                : anonymousWriteLimiter.tryAcquire(ctx.ip());
+        if(waitNanos > 0) {
+            ctx.header("Retry-After", String.valueOf(Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L)));
+            ctx.status(429); // Too many requests from this account or client
+            return false;
+        }
+        if(!writeConcurrencyLimiter.tryAcquire()) {
+            ctx.header("Retry-After", "1");
+            ctx.status(503); // Shed load while the database is slow
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a write admitted by admitWrite, feeding its latency to the concurrency limiter
+     * @param write The service call performing the write
+     * @return The result of the write
+     */
+    private <T> T limitedWrite(Supplier<T> write) {
+        long start = System.nanoTime();
+        try {
+            return write.get();
+        } finally {
+            writeConcurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Drops the cached list responses that contain the given message
+     * @param message A message that was created, updated or deleted
+     */
+    private void invalidateCachedLists(Message message) {
+        responseCache.invalidate("messages", "accounts/" + message.getPosted_by() + "/messages");
+    }
+
+    /**
+     * Serializes a response body for the response cache
+     * @param value The object to serialize
+     * @return The JSON bytes
+     */
+    private byte[] toJsonBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch(JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
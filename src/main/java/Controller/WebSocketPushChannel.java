@@ -0,0 +1,204 @@
+package Controller;
+
+import Model.Message;
+import Model.MessageEvent;
+import Service.MessageEventBus;
+import Service.TimelineSubscriptionRegistry;
+import Util.AppConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.websocket.WsConfig;
+import io.javalin.websocket.WsContext;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * WebSocket channel that pushes new messages for the account timelines a connection subscribes to.
+ *
+ * Clients send text frames such as {"action":"subscribe","account_ids":[1,2]} or
+ * {"action":"unsubscribe","account_ids":[2]}. For every message created by a followed account the server sends
+ * {"type":"created","event_id":..,"message":{..}}. Frames are written asynchronously; a connection with too many
+ * unacknowledged frames is closed as a slow consumer instead of buffering without bound.
+ *
+ * Settings (see AppConfig):
+ * - ws.max.pending: unacknowledged frames allowed per connection (default 128)
+ * - ws.max.subscriptions: timelines one connection may follow (default 1000)
+ */
+public class WebSocketPushChannel {
+    private final ObjectMapper objectMapper;
+    private final MessageEventBus eventBus;
+    private final TimelineSubscriptionRegistry<Connection> registry;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final int maxPending;
+    private final int maxSubscriptions;
+
+    private final AtomicLong lastEventId = new AtomicLong();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder slowConsumersClosed = new LongAdder();
+
+    /**
+     * @param eventBus The bus that message changes are published to
+     * @param objectMapper Mapper used to read client frames and write pushed messages
+     */
+    public WebSocketPushChannel(MessageEventBus eventBus, ObjectMapper objectMapper) {
+        this.eventBus = eventBus;
+        this.objectMapper = objectMapper;
+        this.registry = new TimelineSubscriptionRegistry<>();
+        this.maxPending = AppConfig.getInt("ws.max.pending", 128);
+        this.maxSubscriptions = AppConfig.getInt("ws.max.subscriptions", 1000);
+        listen(0);
+    }
+
+    /**
+     * Subscribes to every message change. If the channel itself falls behind the bus, it resubscribes and resumes
+     * after the last event it handled, so no created message is skipped.
+     * @param resumeAfter The last event id already handled
+     */
+    private void listen(long resumeAfter) {
+        eventBus.subscribe(null, resumeAfter, this::fanOut, () -> listen(lastEventId.get()));
+    }
+
+    /**
+     * Registers the connection lifecycle handlers for the endpoint
+     * @param ws The Javalin WebSocket configuration
+     */
+    public void configure(WsConfig ws) {
+        ws.onConnect(ctx -> connections.put(ctx.getSessionId(), new Connection(ctx)));
+        ws.onMessage(ctx -> {
+            Connection connection = connections.get(ctx.getSessionId());
+            if(connection != null) {
+                handleCommand(connection, ctx.message());
+            }
+        });
+        ws.onClose(ctx -> disconnect(ctx.getSessionId()));
+        ws.onError(ctx -> disconnect(ctx.getSessionId()));
+    }
+
+    private void handleCommand(Connection connection, String frame) {
+        JsonNode command;
+        try {
+            command = objectMapper.readTree(frame);
+        } catch(IOException e) {
+            connection.sendError("invalid json");
+            return;
+        }
+        String action = command.path("action").asText();
+        JsonNode ids = command.path("account_ids");
+        if(!ids.isArray()) {
+            connection.sendError("account_ids must be an array");
+            return;
+        }
+        for(JsonNode id : ids) {
+            int account_id = id.asInt();
+            if(action.equals("subscribe")) {
+                if(connection.accounts.size() >= maxSubscriptions) {
+                    connection.sendError("too many subscriptions");
+                    return;
+                }
+                connection.accounts.add(account_id);
+                registry.subscribe(account_id, connection);
+            } else if(action.equals("unsubscribe")) {
+                connection.accounts.remove(account_id);
+                registry.unsubscribe(account_id, connection);
+            } else {
+                connection.sendError("unknown action");
+                return;
+            }
+        }
+    }
+
+    private void fanOut(MessageEvent event) {
+        lastEventId.set(event.getEvent_id());
+        if(event.getType() != MessageEvent.Type.CREATED) return;
+        Message message = event.getMessage();
+
+        // Serialize once per message, not once per subscriber
+        String[] frame = new String[1];
+        registry.forEachSubscriber(message.getPosted_by(), connection -> {
+            if(frame[0] == null) {
+                frame[0] = toFrame(event);
+            }
+            connection.send(frame[0]);
+        });
+    }
+
+    private String toFrame(MessageEvent event) {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("type", event.getType().name().toLowerCase());
+        frame.put("event_id", event.getEvent_id());
+        frame.put("message", event.getMessage());
+        try {
+            return objectMapper.writeValueAsString(frame);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void disconnect(String sessionId) {
+        Connection connection = connections.remove(sessionId);
+        if(connection == null) return;
+        for(Integer account_id : connection.accounts) {
+            registry.unsubscribe(account_id, connection);
+        }
+    }
+
+    /**
+     * @return Channel metrics for the admin endpoint
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("ws.connections", (long) connections.size());
+        metrics.put("ws.timelines", (long) registry.getTimelineCount());
+        metrics.put("ws.frames.sent", framesSent.sum());
+        metrics.put("ws.slow.consumers.closed", slowConsumersClosed.sum());
+        return metrics;
+    }
+
+    /**
+     * One client WebSocket and the timelines it follows.
+     */
+    private class Connection implements WriteCallback {
+        private final WsContext ctx;
+        private final Set<Integer> accounts = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        Connection(WsContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void send(String frame) {
+            if(pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                if(ctx.session.isOpen()) {
+                    slowConsumersClosed.increment();
+                    ctx.closeSession(StatusCode.TRY_AGAIN_LATER, "slow consumer");
+                }
+                return;
+            }
+            ctx.session.getRemote().sendString(frame, this);
+        }
+
+        void sendError(String error) {
+            send("{\"type\":\"error\",\"error\":\"" + error + "\"}");
+        }
+
+        @Override
+        public void writeSuccess() {
+            pending.decrementAndGet();
+            framesSent.increment();
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            pending.decrementAndGet();
+        }
+    }
+}
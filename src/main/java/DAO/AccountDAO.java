@@ -1,123 +1,344 @@
 package DAO;
 
+import Diagnostics.DaoQueryEvent;
 import Model.Account;
+import Util.AppConfig;
 import Util.ConnectionUtil;
+import Util.IdGenerator;
+import Util.ReplicationLog;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Data Access Object for Account operations
- * Handles all database interactions related to Account model
+ * Handles all database interactions related to Account model.
+ * Writes and uniqueness checks use the main database; other reads may be served by a read replica.
  */
 public class AccountDAO {
-    
+    private static final String[] COLUMNS = {"account_id", "username", "password"};
+
+    private final IdGenerator idGenerator;
+
+    /**
+     * Default constructor allocates ids as node id.node of id.nodes writers
+     */
+    public AccountDAO() {
+        this(new IdGenerator(AppConfig.getInt("id.nodes", 1), AppConfig.getInt("id.node", 0)));
+    }
+
+    /**
+     * Constructor with dependency injection for testing
+     * @param idGenerator The allocator of new account ids
+     */
+    public AccountDAO(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
     /**
      * Inserts a new account into the database
      * @param account The account to be inserted (without account_id)
      * @return The inserted account with generated account_id, or null if insertion fails
      */
     public Account insertAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            ConnectionUtil.beginWrite(connection);
             // SQL query to insert new account
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            String sql = "INSERT INTO account (account_id, username, password) VALUES (?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            for(int attempt = 0; ; attempt++) {
+                // The id is known before the insert, so no generated key has to be read back
+                int account_id = nextAccountId(connection);
 
-            // Set parameters for the prepared statement
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
+                // Set parameters for the prepared statement
+                preparedStatement.setInt(1, account_id);
+                preparedStatement.setString(2, account.getUsername());
+                preparedStatement.setString(3, account.getPassword());
 
-            // Execute the insert operation
-            preparedStatement.executeUpdate();
-            
-            // Retrieve the auto-generated account_id
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next()){
-                int generated_account_id = pkeyResultSet.getInt(1);
-                return new Account(generated_account_id, account.getUsername(), account.getPassword());
+                try {
+                    // Execute the insert operation
+                    preparedStatement.executeUpdate();
+                } catch(SQLException e) {
+                    // The key taken may be the id, from rows inserted behind the generator's back; skip past them once.
+                    // A taken username fails again on the retry.
+                    if(attempt > 0 || !"23505".equals(e.getSQLState())) throw e;
+                    idGenerator.advancePast(maxAccountId(connection));
+                    continue;
+                }
+                Account inserted = new Account(account_id, account.getUsername(), account.getPassword());
+                ConnectionUtil.commitWrite(connection, rowChange(inserted));
+                rows = 1;
+                return inserted;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "insertAccount", 0, rows);
         }
         return null;
     }
 
+    /**
+     * Inserts many accounts with one JDBC batch in one transaction
+     * @param accounts The accounts to be inserted (without account_id)
+     * @return The inserted accounts with their new account_id, in the given order, or null if the batch fails
+     */
+    public List<Account> insertAccounts(List<Account> accounts) {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            connection.setAutoCommit(false);
+            String sql = "INSERT INTO account (account_id, username, password) VALUES (?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            List<Account> inserted = new ArrayList<>(accounts.size());
+            ReplicationLog.Change[] changes = new ReplicationLog.Change[accounts.size()];
+            for(int attempt = 0; ; attempt++) {
+                int[] account_ids = seeded(connection).next(accounts.size());
+                inserted.clear();
+                for(int i = 0; i < accounts.size(); i++) {
+                    Account row = new Account(account_ids[i], accounts.get(i).getUsername(), accounts.get(i).getPassword());
+                    preparedStatement.setInt(1, row.getAccount_id());
+                    preparedStatement.setString(2, row.getUsername());
+                    preparedStatement.setString(3, row.getPassword());
+                    preparedStatement.addBatch();
+                    inserted.add(row);
+                    changes[i] = rowChange(row);
+                }
+                try {
+                    preparedStatement.executeBatch();
+                    break;
+                } catch(SQLException e) {
+                    // As in insertAccount: skip past ids taken behind the generator's back once, after undoing the
+                    // rest of the batch. A taken username fails again on the retry.
+                    if(attempt > 0 || !"23505".equals(e.getSQLState())) throw e;
+                    connection.rollback();
+                    preparedStatement.clearBatch();
+                    idGenerator.advancePast(maxAccountId(connection));
+                }
+            }
+            ConnectionUtil.commitWrite(connection, changes);
+            rows = inserted.size();
+            return inserted;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "insertAccounts", 0, rows);
+        }
+        return null;
+    }
+
+    private int nextAccountId(Connection connection) throws SQLException {
+        return seeded(connection).next();
+    }
+
+    private IdGenerator seeded(Connection connection) throws SQLException {
+        if(!idGenerator.isSeeded()) {
+            idGenerator.advancePast(maxAccountId(connection));
+        }
+        return idGenerator;
+    }
+
+    private int maxAccountId(Connection connection) throws SQLException {
+        ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(account_id) FROM account");
+        return rs.next() ? rs.getInt(1) : 0;
+    }
+
+    private ReplicationLog.Change rowChange(Account account) {
+        return new ReplicationLog.Change("account", "account_id", account.getAccount_id(), COLUMNS,
+                new Object[]{account.getAccount_id(), account.getUsername(), account.getPassword()});
+    }
+
     /**
      * Retrieves an account by username
      * @param username The username to search for
      * @return The Account object if found, null otherwise
      */
     public Account getAccountByUsername(String username) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        // Read from the main database: registration relies on this to reject duplicate usernames
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
             String sql = "SELECT * FROM account WHERE username = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             
             preparedStatement.setString(1, username);
 
             ResultSet rs = preparedStatement.executeQuery();
+            rows = 0;
             while(rs.next()){
                 Account account = new Account(rs.getInt("account_id"),
                         rs.getString("username"),
                         rs.getString("password"));
+                rows = 1;
                 return account;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "getAccountByUsername", 0, rows);
         }
         return null;
     }
 
+    /**
+     * Finds which of some usernames are taken
+     * @param usernames The usernames to look up
+     * @return The usernames that already have an account, or null if the query failed
+     */
+    public Set<String> getExistingUsernames(Collection<String> usernames) {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        // Read from the main database, as registration does
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            String sql = "SELECT username FROM account WHERE username = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setArray(1, connection.createArrayOf("VARCHAR", usernames.toArray()));
+
+            ResultSet rs = preparedStatement.executeQuery();
+            Set<String> existing = new HashSet<>();
+            while(rs.next()){
+                existing.add(rs.getString(1));
+            }
+            rows = existing.size();
+            return existing;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "getExistingUsernames", 0, rows);
+        }
+        return null;
+    }
+
+    /**
+     * Finds which of some account ids exist
+     * @param account_ids The ids to look up
+     * @return The ids that have an account, or null if the query failed
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> account_ids) {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            String sql = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", account_ids.toArray()));
+
+            ResultSet rs = preparedStatement.executeQuery();
+            Set<Integer> existing = new HashSet<>();
+            while(rs.next()){
+                existing.add(rs.getInt(1));
+            }
+            rows = existing.size();
+            return existing;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "getExistingAccountIds", 0, rows);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves several accounts with one query
+     * @param account_ids The account IDs to look up
+     * @return The accounts that exist, in no particular order
+     */
+    public List<Account> getAccountsByIds(Collection<Integer> account_ids) {
+        List<Account> accounts = new ArrayList<>();
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getReadConnection()) {
+            String sql = "SELECT * FROM account WHERE account_id = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", account_ids.toArray()));
+
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                accounts.add(new Account(rs.getInt("account_id"),
+                        rs.getString("username"),
+                        rs.getString("password")));
+            }
+            rows = accounts.size();
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "getAccountsByIds", 0, rows);
+        }
+        return accounts;
+    }
+
     /**
      * Retrieves an account by account_id
      * @param account_id The account ID to search for
      * @return The Account object if found, null otherwise
      */
     public Account getAccountById(int account_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getReadConnection()) {
             String sql = "SELECT * FROM account WHERE account_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             
             preparedStatement.setInt(1, account_id);
 
             ResultSet rs = preparedStatement.executeQuery();
+            rows = 0;
             while(rs.next()){
                 Account account = new Account(rs.getInt("account_id"),
                         rs.getString("username"),
                         rs.getString("password"));
+                rows = 1;
                 return account;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "getAccountById", 0, rows);
         }
         return null;
     }
 
     /**
-     * Validates login credentials
-     * @param username The username to validate
-     * @param password The password to validate
-     * @return The Account object if credentials are valid, null otherwise
+     * Replaces an account's stored password hash if it has not changed in the meantime
+     * @param account_id The account to update
+     * @param expected The stored value the new hash replaces
+     * @param password The new stored hash
+     * @return true if the stored value was replaced
      */
-    public Account login(String username, String password) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
+    public boolean updatePassword(int account_id, String expected, String password) {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            ConnectionUtil.beginWrite(connection);
+            String sql = "UPDATE account SET password = ? WHERE account_id = ? AND password = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            preparedStatement.setString(1, username);
-            preparedStatement.setString(2, password);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Account account = new Account(rs.getInt("account_id"),
-                        rs.getString("username"),
-                        rs.getString("password"));
-                return account;
-            }
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, account_id);
+            preparedStatement.setString(3, expected);
+
+            rows = preparedStatement.executeUpdate();
+            if(rows == 0) return false;
+
+            PreparedStatement select = connection.prepareStatement("SELECT * FROM account WHERE account_id = ?");
+            select.setInt(1, account_id);
+            ResultSet rs = select.executeQuery();
+            if(!rs.next()) return false;
+            ConnectionUtil.commitWrite(connection, rowChange(new Account(rs.getInt("account_id"),
+                    rs.getString("username"), rs.getString("password"))));
+            return true;
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("AccountDAO", "updatePassword", 0, rows);
         }
-        return null;
+        return false;
     }
-}
\ No newline at end of file
+}
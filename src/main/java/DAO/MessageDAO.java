@@ -1,72 +1,237 @@
 package DAO;
 
+import Diagnostics.DaoQueryEvent;
 import Model.Message;
+import Model.MessageRevision;
+import Model.VersionedMessage;
 import Util.ConnectionUtil;
+import Util.ReplicationLog;
+import Util.TextDelta;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object for Message operations
- * Handles all database interactions related to Message model
+ * Handles all database interactions related to Message model.
+ * Messages are spread across shard databases by MessageShardRouter; connections are borrowed from the shard pools
+ * and closed after each operation. Shard 0 is the main database: its reads may be served by a read replica and its
+ * writes are shipped to the replicas.
+ * Deleting a message only sets its deleted_epoch; every read skips such tombstones and purgeDeleted removes them
+ * later in batches.
+ * Every edit raises the message's version and appends to message_history a reverse delta that rebuilds the previous
+ * text from the new one, so only the current text is stored in full.
  */
 public class MessageDAO {
-    
+    private static final String[] COLUMNS = {"message_id", "posted_by", "message_text", "time_posted_epoch", "deleted_epoch", "version"};
+    private static final String[] HISTORY_COLUMNS = {"message_id", "version", "prefix_length", "suffix_length", "middle_text", "superseded_epoch"};
+
+    private final MessageShardRouter router;
+
+    /**
+     * Default constructor routes across the configured shards
+     */
+    public MessageDAO() {
+        this(new MessageShardRouter());
+    }
+
+    /**
+     * Constructor with dependency injection for testing
+     * @param router The shard router to use
+     */
+    public MessageDAO(MessageShardRouter router) {
+        this.router = router;
+    }
+
     /**
      * Inserts a new message into the database
      * @param message The message to be inserted (without message_id)
      * @return The inserted message with generated message_id, or null if insertion fails
      */
     public Message insertMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            // SQL query to insert new message
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            // Set parameters for the prepared statement
-            preparedStatement.setInt(1, message.getPosted_by());
-            preparedStatement.setString(2, message.getMessage_text());
-            preparedStatement.setLong(3, message.getTime_posted_epoch());
-
-            // Execute the insert operation
-            preparedStatement.executeUpdate();
-            
-            // Retrieve the auto-generated message_id
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next()){
-                int generated_message_id = pkeyResultSet.getInt(1);
-                return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        int shard = router.shardForAccount(message.getPosted_by());
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+            beginWrite(shard, connection);
+            String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            for(int attempt = 0; ; attempt++) {
+                // The id is allocated up front so it is unique across shards and no generated key has to be read back
+                int message_id = router.nextMessageId(shard, connection);
+
+                // Set parameters for the prepared statement
+                preparedStatement.setInt(1, message_id);
+                preparedStatement.setInt(2, message.getPosted_by());
+                preparedStatement.setString(3, message.getMessage_text());
+                preparedStatement.setLong(4, message.getTime_posted_epoch());
+
+                try {
+                    // Execute the insert operation
+                    preparedStatement.executeUpdate();
+                } catch(SQLException e) {
+                    // Rows inserted behind the router's back; skip past them once
+                    if(attempt > 0 || !isDuplicateKey(e)) throw e;
+                    router.resync(shard, connection);
+                    continue;
+                }
+                Message inserted = new VersionedMessage(message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch(), 1);
+                commitWrite(shard, connection, rowChange(inserted));
+                rows = 1;
+                return inserted;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", "insertMessage", shard, rows);
         }
         return null;
     }
 
+    /**
+     * Inserts many messages with one JDBC batch and one transaction per shard
+     * @param messages The messages to be inserted (without message_id)
+     * @return The inserted messages with their new message_id, in the given order, or null if any shard's batch
+     * fails; batches already committed on other shards stay committed
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        List<List<Integer>> positionsByShard = new ArrayList<>();
+        for(int shard = 0; shard < router.getShardCount(); shard++) {
+            positionsByShard.add(new ArrayList<>());
+        }
+        for(int i = 0; i < messages.size(); i++) {
+            positionsByShard.get(router.shardForAccount(messages.get(i).getPosted_by())).add(i);
+        }
+
+        Message[] inserted = new Message[messages.size()];
+        for(int shard = 0; shard < positionsByShard.size(); shard++) {
+            List<Integer> positions = positionsByShard.get(shard);
+            if(positions.isEmpty()) continue;
+            DaoQueryEvent query = DaoQueryEvent.start();
+            long rows = -1;
+            try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+                connection.setAutoCommit(false);
+                String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                ReplicationLog.Change[] changes = new ReplicationLog.Change[positions.size()];
+                for(int attempt = 0; ; attempt++) {
+                    int[] message_ids = router.nextMessageIds(shard, positions.size(), connection);
+                    for(int i = 0; i < positions.size(); i++) {
+                        Message message = messages.get(positions.get(i));
+                        Message row = new VersionedMessage(message_ids[i], message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch(), 1);
+                        preparedStatement.setInt(1, row.getMessage_id());
+                        preparedStatement.setInt(2, row.getPosted_by());
+                        preparedStatement.setString(3, row.getMessage_text());
+                        preparedStatement.setLong(4, row.getTime_posted_epoch());
+                        preparedStatement.addBatch();
+                        inserted[positions.get(i)] = row;
+                        changes[i] = rowChange(row);
+                    }
+                    try {
+                        preparedStatement.executeBatch();
+                        break;
+                    } catch(SQLException e) {
+                        // Rows inserted behind the router's back; undo the rest of the batch and skip past them once
+                        if(attempt > 0 || !isDuplicateKey(e)) throw e;
+                        connection.rollback();
+                        preparedStatement.clearBatch();
+                        router.resync(shard, connection);
+                    }
+                }
+                if(shard == 0) {
+                    ConnectionUtil.commitWrite(connection, changes);
+                } else {
+                    connection.commit();
+                }
+                rows = positions.size();
+            } catch(SQLException e) {
+                System.out.println(e.getMessage());
+                return null;
+            } finally {
+                query.finish("MessageDAO", "insertMessages", shard, rows);
+            }
+        }
+        return Arrays.asList(inserted);
+    }
+
+    private boolean isDuplicateKey(SQLException e) {
+        return "23505".equals(e.getSQLState());
+    }
+
     /**
      * Retrieves all messages from the database
-     * @return List of all messages, empty list if no messages found
+     * @return List of all messages ordered by message_id, empty list if no messages found
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
-        List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                messages.add(message);
+        if(router.getShardCount() == 1) {
+            return queryShard("getAllMessages", 0, "SELECT * FROM message WHERE deleted_epoch IS NULL ORDER BY message_id");
+        }
+
+        // Scatter the query to every shard, then gather with a k-way merge of the already sorted results
+        List<CompletableFuture<List<Message>>> shardResults = new ArrayList<>();
+        for(int shard = 0; shard < router.getShardCount(); shard++) {
+            int target = shard;
+            shardResults.add(CompletableFuture.supplyAsync(
+                    () -> queryShard("getAllMessages", target, "SELECT * FROM message WHERE deleted_epoch IS NULL ORDER BY message_id"), router.getScatterPool()));
+        }
+        List<List<Message>> sortedRuns = new ArrayList<>();
+        int total = 0;
+        for(CompletableFuture<List<Message>> shardResult : shardResults) {
+            List<Message> run = shardResult.join();
+            sortedRuns.add(run);
+            total += run.size();
+        }
+        return mergeByMessageId(sortedRuns, total);
+    }
+
+    /**
+     * Retrieves the most recently posted messages
+     * @param limit Maximum number of messages
+     * @return Up to limit messages, newest time_posted_epoch first
+     */
+    public List<Message> getRecentMessages(int limit) {
+        // Ids grow with time, so the newest ids of each shard come off the primary key without a sort
+        List<Message> recent = new ArrayList<>();
+        for(int shard = 0; shard < router.getShardCount(); shard++) {
+            recent.addAll(queryShard("getRecentMessages", shard,
+                    "SELECT * FROM message WHERE deleted_epoch IS NULL ORDER BY message_id DESC LIMIT ?", limit));
+        }
+        recent.sort(Comparator.comparingLong(Message::getTime_posted_epoch).reversed());
+        return recent.size() > limit ? new ArrayList<>(recent.subList(0, limit)) : recent;
+    }
+
+    /**
+     * Merges lists that are each sorted by message_id into one sorted list
+     */
+    private List<Message> mergeByMessageId(List<List<Message>> sortedRuns, int total) {
+        List<Message> merged = new ArrayList<>(total);
+        // Heap entries are {run index, position in run}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparingInt(
+                (int[] head) -> sortedRuns.get(head[0]).get(head[1]).getMessage_id()));
+        for(int run = 0; run < sortedRuns.size(); run++) {
+            if(!sortedRuns.get(run).isEmpty()) {
+                heads.add(new int[]{run, 0});
             }
-        } catch(SQLException e) {
-            System.out.println(e.getMessage());
         }
-        return messages;
+        while(!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Message> run = sortedRuns.get(head[0]);
+            merged.add(run.get(head[1]));
+            if(head[1] + 1 < run.size()) {
+                heads.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
     }
 
     /**
@@ -75,73 +240,289 @@ public class MessageDAO {
      * @return The Message object if found, null otherwise
      */
     public Message getMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            preparedStatement.setInt(1, message_id);
+        List<Message> messages = queryShard("getMessageById", router.shardForMessage(message_id),
+                "SELECT * FROM message WHERE message_id = ? AND deleted_epoch IS NULL", message_id);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                return message;
+    /**
+     * Retrieves several messages with one query per shard involved
+     * @param message_ids The IDs of the messages to retrieve
+     * @return The messages that exist, in no particular order
+     */
+    public List<Message> getMessagesByIds(List<Integer> message_ids) {
+        List<List<Integer>> idsByShard = new ArrayList<>();
+        for(int shard = 0; shard < router.getShardCount(); shard++) {
+            idsByShard.add(new ArrayList<>());
+        }
+        for(Integer message_id : message_ids) {
+            idsByShard.get(router.shardForMessage(message_id)).add(message_id);
+        }
+
+        List<Message> messages = new ArrayList<>();
+        for(int shard = 0; shard < idsByShard.size(); shard++) {
+            List<Integer> shardIds = idsByShard.get(shard);
+            if(shardIds.isEmpty()) continue;
+            DaoQueryEvent query = DaoQueryEvent.start();
+            long rows = -1;
+            try (Connection connection = readConnection(shard)) {
+                // A single array bind keeps one statement shape however many ids are requested
+                String sql = "SELECT * FROM message WHERE message_id = ANY(?) AND deleted_epoch IS NULL";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+                preparedStatement.setArray(1, connection.createArrayOf("INTEGER", shardIds.toArray()));
+
+                ResultSet rs = preparedStatement.executeQuery();
+                rows = 0;
+                while(rs.next()){
+                    messages.add(toMessage(rs));
+                    rows++;
+                }
+            } catch(SQLException e) {
+                System.out.println(e.getMessage());
+            } finally {
+                query.finish("MessageDAO", "getMessagesByIds", shard, rows);
             }
-        } catch(SQLException e) {
-            System.out.println(e.getMessage());
         }
-        return null;
+        return messages;
     }
 
     /**
-     * Deletes a message by its ID
+     * Deletes a message by its ID, leaving a tombstone for purgeDeleted to remove
      * @param message_id The ID of the message to delete
      * @return The deleted Message object if found and deleted, null otherwise
      */
     public Message deleteMessage(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            // First retrieve the message to return it after deletion
-            Message message = getMessageById(message_id);
-            if(message == null) return null;
-            
-            String sql = "DELETE FROM message WHERE message_id = ?";
+        int shard = router.shardForMessage(message_id);
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+            beginWrite(shard, connection);
+            // One statement marks the row and returns it as it was, so no separate lookup is needed
+            String sql = "SELECT * FROM OLD TABLE (UPDATE message SET deleted_epoch = ? " +
+                    "WHERE message_id = ? AND deleted_epoch IS NULL)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            preparedStatement.setInt(1, message_id);
-            preparedStatement.executeUpdate();
-            
+
+            long deleted_epoch = System.currentTimeMillis() / 1000;
+            preparedStatement.setLong(1, deleted_epoch);
+            preparedStatement.setInt(2, message_id);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            rows = 0;
+            if(!rs.next()) return null;
+            Message message = toMessage(rs);
+            commitWrite(shard, connection, rowChange(message, deleted_epoch));
+
+            rows = 1;
             return message;
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", "deleteMessage", shard, rows);
         }
         return null;
     }
 
     /**
-     * Updates a message's text
+     * Physically removes tombstones left by deleteMessage from one shard. The highest id removed is kept in
+     * id_high_water, so the shard's id sequence never hands a purged id out again.
+     * @param shard The shard to compact
+     * @param deletedBefore Only tombstones with a deleted_epoch before this are removed
+     * @param limit Maximum number of rows to remove
+     * @return Number of rows removed
+     * @throws SQLException if the removal fails; nothing is removed then
+     */
+    public int purgeDeleted(int shard, long deletedBefore, int limit) throws SQLException {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+            // The rows and their edit history go together
+            connection.setAutoCommit(false);
+            String sql = "SELECT message_id FROM OLD TABLE (DELETE FROM message " +
+                    "WHERE deleted_epoch < ? FETCH FIRST ? ROWS ONLY)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setLong(1, deletedBefore);
+            preparedStatement.setInt(2, limit);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            List<Integer> message_ids = new ArrayList<>();
+            List<ReplicationLog.Change> changes = new ArrayList<>();
+            while(rs.next()){
+                message_ids.add(rs.getInt(1));
+                changes.add(new ReplicationLog.Change("message", "message_id", rs.getInt(1), null, null));
+                changes.add(new ReplicationLog.Change("message_history", "message_id", rs.getInt(1), null, null));
+            }
+            if(!message_ids.isEmpty()) {
+                PreparedStatement history = connection.prepareStatement("DELETE FROM message_history WHERE message_id = ANY(?)");
+                history.setArray(1, connection.createArrayOf("INTEGER", message_ids.toArray()));
+                history.executeUpdate();
+                // Only the primary allocates ids, so the mark is not replicated
+                PreparedStatement highWater = connection.prepareStatement("MERGE INTO id_high_water (table_name, max_id) " +
+                        "KEY (table_name) VALUES ('message', GREATEST(?, " +
+                        "COALESCE((SELECT max_id FROM id_high_water WHERE table_name = 'message'), 0)))");
+                highWater.setInt(1, Collections.max(message_ids));
+                highWater.executeUpdate();
+            }
+            if(shard == 0) {
+                ConnectionUtil.commitWrite(connection, changes.toArray(new ReplicationLog.Change[0]));
+            } else {
+                connection.commit();
+            }
+            rows = message_ids.size();
+            return message_ids.size();
+        } finally {
+            query.finish("MessageDAO", "purgeDeleted", shard, rows);
+        }
+    }
+
+    /**
+     * Updates a message's text, whatever its current version
      * @param message_id The ID of the message to update
      * @param message_text The new message text
      * @return The updated Message object if successful, null otherwise
      */
     public Message updateMessage(int message_id, String message_text) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
+        return updateMessage(message_id, message_text, null);
+    }
+
+    /**
+     * Updates a message's text if it is still at the expected version. The row is not locked while the new version
+     * is prepared: the UPDATE only applies if the version is unchanged, and an unconditional edit that loses a race
+     * starts over.
+     * @param message_id The ID of the message to update
+     * @param message_text The new message text
+     * @param expectedVersion The version the edit was based on, or null to edit whatever version is current
+     * @return The updated message with its new version if successful, null if there is no such message or on error
+     * @throws ConcurrentModificationException if the message is no longer at the expected version
+     */
+    public VersionedMessage updateMessage(int message_id, String message_text, Integer expectedVersion) {
+        return updateMessage(message_id, message_text, expectedVersion, false);
+    }
+
+    /**
+     * Updates a message's text like updateMessage, but locks the row with SELECT ... FOR UPDATE while the new version
+     * is prepared, so concurrent editors of the same message wait for each other instead of retrying. Kept for
+     * comparing contention behaviour; the server edits optimistically.
+     * @param message_id The ID of the message to update
+     * @param message_text The new message text
+     * @param expectedVersion The version the edit was based on, or null to edit whatever version is current
+     * @return The updated message with its new version if successful, null if there is no such message or on error
+     * @throws ConcurrentModificationException if the message is no longer at the expected version
+     */
+    public VersionedMessage updateMessageLocking(int message_id, String message_text, Integer expectedVersion) {
+        return updateMessage(message_id, message_text, expectedVersion, true);
+    }
+
+    private VersionedMessage updateMessage(int message_id, String message_text, Integer expectedVersion, boolean lockRow) {
+        int shard = router.shardForMessage(message_id);
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+            // The new text and the history entry are committed together
+            connection.setAutoCommit(false);
+            PreparedStatement select = connection.prepareStatement(
+                    "SELECT * FROM message WHERE message_id = ? AND deleted_epoch IS NULL" + (lockRow ? " FOR UPDATE" : ""));
+            String sql = "UPDATE message SET message_text = ?, version = version + 1 " +
+                    "WHERE message_id = ? AND version = ? AND deleted_epoch IS NULL";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            preparedStatement.setString(1, message_text);
-            preparedStatement.setInt(2, message_id);
+            PreparedStatement history = connection.prepareStatement("INSERT INTO message_history (" +
+                    String.join(", ", HISTORY_COLUMNS) + ") VALUES (?, ?, ?, ?, ?, ?)");
+            while(true) {
+                select.setInt(1, message_id);
+                ResultSet rs = select.executeQuery();
+                rows = 0;
+                if(!rs.next()) return null;
+                VersionedMessage current = toMessage(rs);
+                if(expectedVersion != null && current.getVersion() != expectedVersion) {
+                    throw new ConcurrentModificationException("Message " + message_id + " is at version " + current.getVersion());
+                }
+
+                preparedStatement.setString(1, message_text);
+                preparedStatement.setInt(2, message_id);
+                preparedStatement.setInt(3, current.getVersion());
+                if(preparedStatement.executeUpdate() == 0) {
+                    // Edited or deleted since it was read
+                    connection.rollback();
+                    if(expectedVersion != null) {
+                        throw new ConcurrentModificationException("Message " + message_id + " was changed concurrently");
+                    }
+                    continue;
+                }
 
-            int rowsUpdated = preparedStatement.executeUpdate();
-            if(rowsUpdated > 0) {
-                return getMessageById(message_id);
+                TextDelta delta = TextDelta.between(message_text, current.getMessage_text());
+                Object[] historyRow = {message_id, current.getVersion(), delta.getPrefixLength(), delta.getSuffixLength(),
+                        delta.getMiddle(), System.currentTimeMillis() / 1000};
+                for(int i = 0; i < historyRow.length; i++) {
+                    history.setObject(i + 1, historyRow[i]);
+                }
+                history.executeUpdate();
+
+                VersionedMessage updated = new VersionedMessage(message_id, current.getPosted_by(), message_text,
+                        current.getTime_posted_epoch(), current.getVersion() + 1);
+                if(shard == 0) {
+                    // MERGE takes a list of key columns, so the history row replicates under its composite key
+                    ConnectionUtil.commitWrite(connection, rowChange(updated),
+                            new ReplicationLog.Change("message_history", "message_id, version", message_id,
+                                    HISTORY_COLUMNS, historyRow));
+                } else {
+                    connection.commit();
+                }
+                rows = 1;
+                return updated;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", "updateMessage", shard, rows);
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds the versions of a message's text, newest first, applying one stored delta per older version
+     * @param message_id The ID of the message
+     * @param limit Maximum number of versions to rebuild, the current one included
+     * @return The versions, or null if there is no such message
+     */
+    public List<MessageRevision> getMessageHistory(int message_id, int limit) {
+        int shard = router.shardForMessage(message_id);
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = readConnection(shard)) {
+            PreparedStatement select = connection.prepareStatement(
+                    "SELECT * FROM message WHERE message_id = ? AND deleted_epoch IS NULL");
+            select.setInt(1, message_id);
+            ResultSet rs = select.executeQuery();
+            rows = 0;
+            if(!rs.next()) return null;
+            VersionedMessage current = toMessage(rs);
+
+            List<MessageRevision> revisions = new ArrayList<>();
+            revisions.add(new MessageRevision(message_id, current.getVersion(), current.getMessage_text(), null));
+            rows = 1;
+            if(limit <= 1) return revisions;
+
+            // Entries for edits made after the row was read are skipped; older entries never change
+            String sql = "SELECT * FROM message_history WHERE message_id = ? AND version < ? ORDER BY version DESC LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, message_id);
+            preparedStatement.setInt(2, current.getVersion());
+            preparedStatement.setInt(3, limit - 1);
+
+            rs = preparedStatement.executeQuery();
+            String text = current.getMessage_text();
+            while(rs.next()){
+                text = new TextDelta(rs.getInt("prefix_length"), rs.getInt("suffix_length"), rs.getString("middle_text"))
+                        .applyTo(text);
+                revisions.add(new MessageRevision(message_id, rs.getInt("version"), text, rs.getLong("superseded_epoch")));
+            }
+            rows = revisions.size();
+            return revisions;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", "getMessageHistory", shard, rows);
         }
         return null;
     }
@@ -152,25 +533,192 @@ public class MessageDAO {
      * @return List of messages posted by the user, empty list if none found
      */
     public List<Message> getMessagesByUser(int account_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        // An account's messages all live on one shard
+        return queryShard("getMessagesByUser", router.shardForAccount(account_id),
+                "SELECT * FROM message WHERE posted_by = ? AND deleted_epoch IS NULL ORDER BY message_id", account_id);
+    }
+
+    /**
+     * Counts messages per account with one GROUP BY query per shard
+     * @return posted_by to number of messages, for accounts with at least one message
+     */
+    public Map<Integer, Long> countMessagesByAccount() {
+        Map<Integer, Long> counts = new HashMap<>();
+        for(Map.Entry<Long, Long> count : countPerShard("countMessagesByAccount", "SELECT posted_by, COUNT(*) FROM message WHERE deleted_epoch IS NULL GROUP BY posted_by").entrySet()) {
+            counts.put(count.getKey().intValue(), count.getValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Counts messages per hour of time_posted_epoch with one GROUP BY query per shard
+     * @param hours Number of most recent hours to count
+     * @param beforeEpoch Messages posted at or after this time are not counted
+     * @return Start of the hour in epoch seconds to number of messages, for the newest hours with messages
+     */
+    public Map<Long, Long> countMessagesByHour(int hours, long beforeEpoch) {
+        String sql = "SELECT time_posted_epoch / 3600 * 3600 AS hour_epoch, COUNT(*) FROM message " +
+                "WHERE deleted_epoch IS NULL AND time_posted_epoch < ? GROUP BY hour_epoch ORDER BY hour_epoch DESC LIMIT ?";
+        TreeMap<Long, Long> counts = new TreeMap<>(countPerShard("countMessagesByHour", sql, beforeEpoch, hours));
+        while(counts.size() > hours) {
+            counts.pollFirstEntry();
+        }
+        return counts;
+    }
+
+    /**
+     * Runs a two column (key, count) query on every shard and adds up the counts per key
+     */
+    private Map<Long, Long> countPerShard(String method, String sql, long... parameters) {
+        Map<Long, Long> counts = new HashMap<>();
+        for(int shard = 0; shard < router.getShardCount(); shard++) {
+            DaoQueryEvent query = DaoQueryEvent.start();
+            long rows = -1;
+            try (Connection connection = readConnection(shard)) {
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                for(int i = 0; i < parameters.length; i++) {
+                    preparedStatement.setLong(i + 1, parameters[i]);
+                }
+                ResultSet rs = preparedStatement.executeQuery();
+                rows = 0;
+                while(rs.next()){
+                    counts.merge(rs.getLong(1), rs.getLong(2), Long::sum);
+                    rows++;
+                }
+            } catch(SQLException e) {
+                System.out.println(e.getMessage());
+            } finally {
+                query.finish("MessageDAO", method, shard, rows);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return Number of shards messages are spread across
+     */
+    public int getShardCount() {
+        return router.getShardCount();
+    }
+
+    /**
+     * @param shard A shard
+     * @return {lowest, highest} message_id on the shard, tombstones included, or null if it holds no messages
+     */
+    public int[] getMessageIdRange(int shard) {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = readConnection(shard)) {
+            ResultSet rs = connection.createStatement().executeQuery("SELECT MIN(message_id), MAX(message_id) FROM message");
+            rows = 0;
+            if(rs.next() && rs.getObject(1) != null) {
+                rows = 1;
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", "getMessageIdRange", shard, rows);
+        }
+        return null;
+    }
+
+    /**
+     * Streams the messages of one shard in a message_id range, in message_id order, without holding them all in memory
+     * @param shard The shard to read
+     * @param fromId Lowest message_id to include
+     * @param toId Highest message_id to include
+     * @param sink Receives each message
+     * @throws SQLException if the query fails part way, so an export is never silently truncated
+     */
+    public void forEachMessage(int shard, int fromId, int toId, Consumer<Message> sink) throws SQLException {
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = readConnection(shard)) {
+            String sql = "SELECT * FROM message WHERE message_id BETWEEN ? AND ? AND deleted_epoch IS NULL ORDER BY message_id";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(1000);
+            preparedStatement.setInt(1, fromId);
+            preparedStatement.setInt(2, toId);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            rows = 0;
+            while(rs.next()){
+                sink.accept(toMessage(rs));
+                rows++;
+            }
+        } finally {
+            query.finish("MessageDAO", "forEachMessage", shard, rows);
+        }
+    }
+
+    /**
+     * Runs a message query on one shard
+     * @param method The DAO method the query is for, as reported in its DaoQueryEvent
+     * @param shard The shard to query
+     * @param sql The query, with an optional single integer parameter
+     * @param parameters The integer parameter values
+     * @return The messages found, empty list if none or on error
+     */
+    private List<Message> queryShard(String method, int shard, String sql, int... parameters) {
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
+        DaoQueryEvent query = DaoQueryEvent.start();
+        long rows = -1;
+        try (Connection connection = readConnection(shard)) {
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            preparedStatement.setInt(1, account_id);
+            for(int i = 0; i < parameters.length; i++) {
+                preparedStatement.setInt(i + 1, parameters[i]);
+            }
 
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                messages.add(message);
+                messages.add(toMessage(rs));
             }
+            rows = messages.size();
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            query.finish("MessageDAO", method, shard, rows);
         }
         return messages;
     }
-}
\ No newline at end of file
+
+    /**
+     * Shard 0 is the main database and may be read from a replica; other shards are read directly
+     */
+    private Connection readConnection(int shard) throws SQLException {
+        return shard == 0 ? ConnectionUtil.getReadConnection() : ConnectionUtil.getShardConnection(shard);
+    }
+
+    private void beginWrite(int shard, Connection connection) throws SQLException {
+        if(shard == 0) {
+            ConnectionUtil.beginWrite(connection);
+        }
+    }
+
+    private void commitWrite(int shard, Connection connection, ReplicationLog.Change change) throws SQLException {
+        if(shard == 0) {
+            ConnectionUtil.commitWrite(connection, change);
+        }
+    }
+
+    private ReplicationLog.Change rowChange(Message message) {
+        return rowChange(message, null);
+    }
+
+    private ReplicationLog.Change rowChange(Message message, Long deleted_epoch) {
+        int version = message instanceof VersionedMessage ? ((VersionedMessage) message).getVersion() : 1;
+        return new ReplicationLog.Change("message", "message_id", message.getMessage_id(), COLUMNS,
+                new Object[]{message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch(), deleted_epoch, version});
+    }
+
+    private VersionedMessage toMessage(ResultSet rs) throws SQLException {
+        return new VersionedMessage(rs.getInt("message_id"),
+                rs.getInt("posted_by"),
+                rs.getString("message_text"),
+                rs.getLong("time_posted_epoch"),
+                rs.getInt("version"));
+    }
+}
@@ -0,0 +1,142 @@
+package DAO;
+
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.IdGenerator;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides which shard database holds a message and allocates globally unique message ids.
+ *
+ * A message lives on the shard chosen by hashing its posted_by, so one account's timeline is always on one shard.
+ * Its id is allocated on that shard from the ids congruent to the shard index modulo the shard count, which makes
+ * ids unique across shards and lets a lookup by id go straight to the owning shard. When several writer nodes share
+ * the shards (id.nodes, with this process being id.node) each node further takes its own residue, so the id space
+ * is split into nodes * shards interleaved IdGenerator slots. With a single shard and node this is simply
+ * max(message_id) + 1, where the maximum includes ids purged by MessageDAO.purgeDeleted so they are never reused.
+ */
+public class MessageShardRouter {
+    /**
+     * Threads used to query shards in parallel for scatter-gather reads.
+     */
+    private static final ExecutorService SCATTER_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "message-shard-scatter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int shardCount;
+    // One generator per shard, seeded from the shard's highest id ever stored on first use
+    private final IdGenerator[] idGenerators;
+
+    /**
+     * Default constructor uses the shard count configured in ConnectionUtil
+     */
+    public MessageShardRouter() {
+        this(ConnectionUtil.getShardCount());
+    }
+
+    /**
+     * @param shardCount Number of shards messages are spread across
+     */
+    public MessageShardRouter(int shardCount) {
+        this(shardCount, AppConfig.getInt("id.nodes", 1), AppConfig.getInt("id.node", 0));
+    }
+
+    /**
+     * @param shardCount Number of shards messages are spread across
+     * @param nodeCount Number of processes inserting messages into the same shards
+     * @param node This process's node number, 0 to nodeCount - 1
+     */
+    public MessageShardRouter(int shardCount, int nodeCount, int node) {
+        this.shardCount = shardCount;
+        this.idGenerators = new IdGenerator[shardCount];
+        for(int shard = 0; shard < shardCount; shard++) {
+            // shardForMessage only looks at id % shardCount, which the node's share does not disturb
+            idGenerators[shard] = new IdGenerator(nodeCount * shardCount, node * shardCount + shard);
+        }
+    }
+
+    /**
+     * @return Number of shards messages are spread across
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param posted_by The account that posted a message
+     * @return The shard holding that account's messages
+     */
+    public int shardForAccount(int posted_by) {
+        // Spread sequential account ids evenly
+        return Math.floorMod(posted_by * 0x9E3779B9, shardCount);
+    }
+
+    /**
+     * @param message_id A message id allocated by this router
+     * @return The shard holding that message
+     */
+    public int shardForMessage(int message_id) {
+        return Math.floorMod(message_id, shardCount);
+    }
+
+    /**
+     * Allocates a new message id on a shard
+     * @param shard The shard the message will be stored on
+     * @param connection A connection to that shard, used to seed the sequence on first use
+     * @return An id not used by any shard
+     * @throws SQLException if the shard's current maximum id cannot be read
+     */
+    public int nextMessageId(int shard, Connection connection) throws SQLException {
+        return seeded(shard, connection).next();
+    }
+
+    /**
+     * Allocates ids for a batch of messages on a shard
+     * @param shard The shard the messages will be stored on
+     * @param count How many ids to allocate
+     * @param connection A connection to that shard, used to seed the sequence on first use
+     * @return Increasing ids not used by any shard
+     * @throws SQLException if the shard's current maximum id cannot be read
+     */
+    public int[] nextMessageIds(int shard, int count, Connection connection) throws SQLException {
+        return seeded(shard, connection).next(count);
+    }
+
+    /**
+     * Moves a shard's ids past rows that were written without this router, e.g. after a duplicate key error
+     * @param shard The shard to resynchronize
+     * @param connection A connection to that shard
+     * @throws SQLException if the shard's current maximum id cannot be read
+     */
+    public void resync(int shard, Connection connection) throws SQLException {
+        idGenerators[shard].advancePast(maxMessageId(connection));
+    }
+
+    private IdGenerator seeded(int shard, Connection connection) throws SQLException {
+        IdGenerator idGenerator = idGenerators[shard];
+        if(!idGenerator.isSeeded()) {
+            // Seeding twice concurrently is harmless: advancePast only ever raises the sequence
+            idGenerator.advancePast(maxMessageId(connection));
+        }
+        return idGenerator;
+    }
+
+    private int maxMessageId(Connection connection) throws SQLException {
+        ResultSet rs = connection.createStatement().executeQuery("SELECT GREATEST(COALESCE(MAX(message_id), 0), " +
+                "COALESCE((SELECT max_id FROM id_high_water WHERE table_name = 'message'), 0)) FROM message");
+        return rs.next() ? rs.getInt(1) : 0;
+    }
+
+    /**
+     * @return The executor used to query several shards at once
+     */
+    public ExecutorService getScatterPool() {
+        return SCATTER_POOL;
+    }
+}
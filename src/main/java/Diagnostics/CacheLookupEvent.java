@@ -0,0 +1,42 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event marking a cache hit or miss. Lookups are far more frequent than queries, so the event is disabled unless
+ * a recording enables it, e.g. with jfr configure or -XX:StartFlightRecording:settings=... and
+ * socialmedia.CacheLookup#enabled=true.
+ */
+@Name("socialmedia.CacheLookup")
+@Label("Cache Lookup")
+@Category({"Social Media", "Cache"})
+@Description("A lookup in a BoundedCache or the ResponseCache")
+@StackTrace(false)
+@Enabled(false)
+public class CacheLookupEvent extends Event {
+    @Label("Cache")
+    String cache;
+
+    @Label("Hit")
+    boolean hit;
+
+    /**
+     * Commits an instant event for a lookup if the recording wants it
+     * @param cache Name of the cache
+     * @param hit Whether the lookup was a hit
+     */
+    public static void record(String cache, boolean hit) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if(event.shouldCommit()) {
+            event.cache = cache;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
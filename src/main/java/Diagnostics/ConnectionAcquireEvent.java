@@ -0,0 +1,48 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering the wait for a pooled database connection, which grows when a pool is exhausted.
+ */
+@Name("socialmedia.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"Social Media", "Database"})
+@Description("Borrowing a connection from a ConnectionUtil pool")
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+    @Label("Shard")
+    int shard;
+
+    @Label("Replica")
+    @Description("Whether the connection came from a read replica of shard 0")
+    boolean replica;
+
+    /**
+     * @return A started event
+     */
+    public static ConnectionAcquireEvent start() {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if the recording wants it
+     * @param shard The shard the connection is for
+     * @param replica Whether it came from a replica
+     */
+    public void finish(int shard, boolean replica) {
+        end();
+        if(shouldCommit()) {
+            this.shard = shard;
+            this.replica = replica;
+            commit();
+        }
+    }
+}
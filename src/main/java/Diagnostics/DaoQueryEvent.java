@@ -0,0 +1,61 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering one DAO call on one shard: borrowing the connection, the statements and reading the rows.
+ *
+ * A call that fans out to every shard records one event per shard. Rows is the number of rows returned or changed,
+ * or -1 if the call failed with an SQLException.
+ */
+@Name("socialmedia.DaoQuery")
+@Label("DAO Query")
+@Category({"Social Media", "Database"})
+@Description("A query or update made by AccountDAO or MessageDAO")
+@StackTrace(false)
+public class DaoQueryEvent extends Event {
+    @Label("DAO")
+    String dao;
+
+    @Label("Method")
+    String method;
+
+    @Label("Shard")
+    @Description("The shard queried, or -1 for a call spanning several")
+    int shard;
+
+    @Label("Rows")
+    long rows;
+
+    /**
+     * @return A started event
+     */
+    public static DaoQueryEvent start() {
+        DaoQueryEvent event = new DaoQueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if the recording wants it
+     * @param dao The DAO class, e.g. MessageDAO
+     * @param method The DAO method
+     * @param shard The shard queried
+     * @param rows Rows returned or changed, -1 on failure
+     */
+    public void finish(String dao, String method, int shard, long rows) {
+        end();
+        if(shouldCommit()) {
+            this.dao = dao;
+            this.method = method;
+            this.shard = shard;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one HTTP request, from the first before handler to the last after handler.
+ *
+ * Started by SocialMediaController for every request while a recording has the event enabled; otherwise start
+ * returns null and the request carries no event at all.
+ */
+@Name("socialmedia.HttpRequest")
+@Label("HTTP Request")
+@Category({"Social Media", "HTTP"})
+@Description("An HTTP request handled by SocialMediaController")
+@StackTrace(false)
+public class HttpRequestEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("Route")
+    @Description("The matched endpoint path, e.g. /messages/{message_id}, or unmatched")
+    String route;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Async")
+    @Description("Whether the response was completed on another thread, as the login and export handlers do with ctx.future")
+    boolean async;
+
+    private transient long startThread;
+
+    /**
+     * @return A started event, or null if no recording has the event enabled
+     */
+    public static HttpRequestEvent start() {
+        HttpRequestEvent event = new HttpRequestEvent();
+        if(!event.isEnabled()) return null;
+        event.startThread = Thread.currentThread().getId();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if the recording wants it
+     * @param method The HTTP method
+     * @param route The matched endpoint path
+     * @param path The request path
+     * @param status The response status
+     */
+    public void finish(String method, String route, String path, int status) {
+        end();
+        if(shouldCommit()) {
+            this.method = method;
+            this.route = route;
+            this.path = path;
+            this.status = status;
+            this.async = Thread.currentThread().getId() != startThread;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative longs with one bucket per power of two. Recording is two adds and a CAS at
+ * most, cheap enough for every request; percentiles are reported as the upper bound of their bucket, so they are
+ * within a factor of two, which is plenty to tell a 2 KB request from a 200 KB one.
+ */
+public class LogHistogram {
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LogHistogram() {
+        for(int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value The value to record; negative values count as 0
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        // Bucket i holds 2^(i-1) to 2^i - 1, bucket 0 holds 0
+        buckets[64 - Long.numberOfLeadingZeros(clamped)].increment();
+        count.increment();
+        sum.add(clamped);
+        long seen = max.get();
+        while(clamped > seen && !max.compareAndSet(seen, clamped)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * @return Number of values recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param percentile The percentile, 0 to 100
+     * @return The upper bound of the bucket holding that percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.sum();
+        if(total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if(seen >= rank) {
+                return Math.min(max.get(), i == 0 ? 0 : (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Summarises the histogram under a name prefix, e.g. alloc.bytes.p99
+     * @param prefix The prefix of every key
+     * @return count, mean, p50, p90, p99 and max
+     */
+    public Map<String, Long> summary(String prefix) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        long total = count.sum();
+        summary.put(prefix + ".mean", total == 0 ? 0 : sum.sum() / total);
+        summary.put(prefix + ".p50", getValueAtPercentile(50));
+        summary.put(prefix + ".p90", getValueAtPercentile(90));
+        summary.put(prefix + ".p99", getValueAtPercentile(99));
+        summary.put(prefix + ".max", max.get());
+        return summary;
+    }
+}
@@ -0,0 +1,143 @@
+package Diagnostics;
+
+import Util.AppConfig;
+import io.javalin.http.Context;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in measurement of the heap bytes allocated and the CPU time used by each request, per route.
+ *
+ * begin and end run as the first before handler and the last after handler, and read the request thread's allocation
+ * and CPU counters from com.sun.management.ThreadMXBean, so the figures cover the handler, its JSON parsing and
+ * serialization and the other handlers, but not Jetty's own work or writing the response. A request finished on
+ * another thread, as the login and export handlers do with ctx.future, cannot be measured that way and is only
+ * counted as async. While switched off the two handlers return after one volatile read.
+ *
+ * Switched on with profiling.enabled or at runtime with setEnabled.
+ */
+public class RequestProfiler {
+    private static final String START = "profiler.start";
+
+    /**
+     * The measurements of one route.
+     */
+    private static class RouteProfile {
+        final LogHistogram allocatedBytes = new LogHistogram();
+        final LogHistogram cpuMicros = new LogHistogram();
+        final LongAdder async = new LongAdder();
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final boolean supported;
+    private final ConcurrentHashMap<String, RouteProfile> routes = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    /**
+     * Reads profiling.enabled (default false) from AppConfig
+     */
+    public RequestProfiler() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            supported = threads.isThreadAllocatedMemorySupported() && threads.isCurrentThreadCpuTimeSupported();
+        } else {
+            threads = null;
+            supported = false;
+        }
+        setEnabled(AppConfig.getBoolean("profiling.enabled", false));
+    }
+
+    /**
+     * Switches profiling on or off; stays off if the JVM cannot measure per-thread allocation and CPU time
+     * @param enabled Whether to profile requests
+     * @return Whether profiling is now on
+     */
+    public boolean setEnabled(boolean enabled) {
+        if(enabled && supported) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        this.enabled = enabled && supported;
+        return this.enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Drops every measurement so far
+     */
+    public void reset() {
+        routes.clear();
+    }
+
+    /**
+     * Notes the request thread's counters as the request starts
+     * @param ctx The Javalin context
+     */
+    public void begin(Context ctx) {
+        // Allocation tracking can also be switched off through JMX while profiling is on
+        if(!enabled || !threads.isThreadAllocatedMemoryEnabled()) return;
+        long thread = Thread.currentThread().getId();
+        ctx.attribute(START, new long[]{thread, threads.getThreadAllocatedBytes(thread),
+                threads.getCurrentThreadCpuTime()});
+    }
+
+    /**
+     * Records what the request used since begin under its method and route, e.g. GET /messages/{message_id}
+     * @param ctx The Javalin context
+     */
+    public void end(Context ctx) {
+        long[] start = ctx.attribute(START);
+        if(start == null) return;
+        // getThreadAllocatedBytes(id) rather than getCurrentThreadAllocatedBytes(), which needs Java 14
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long cpu = threads.getCurrentThreadCpuTime();
+        RouteProfile profile = routes.computeIfAbsent(ctx.method() + " " + routeOf(ctx), route -> new RouteProfile());
+        if(Thread.currentThread().getId() != start[0]) {
+            profile.async.increment();
+            return;
+        }
+        profile.allocatedBytes.record(allocated - start[1]);
+        profile.cpuMicros.record((cpu - start[2]) / 1000);
+    }
+
+    /**
+     * @param ctx The Javalin context
+     * @return The path of the endpoint that handled the request, e.g. /messages/{message_id}, or unmatched
+     */
+    public static String routeOf(Context ctx) {
+        try {
+            return ctx.endpointHandlerPath();
+        } catch(RuntimeException e) {
+            return "unmatched"; // 404s and requests rejected before an endpoint was chosen
+        }
+    }
+
+    /**
+     * @return Whether profiling is on, and per route the number of requests measured, how many were async, and
+     * allocated bytes and CPU microseconds as mean, p50, p90, p99 and max
+     */
+    public Map<String, Object> getReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("supported", supported);
+        Map<String, Map<String, Long>> byRoute = new TreeMap<>();
+        routes.forEach((route, profile) -> {
+            Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("requests", profile.allocatedBytes.getCount());
+            summary.put("async", profile.async.sum());
+            summary.putAll(profile.allocatedBytes.summary("alloc.bytes"));
+            summary.putAll(profile.cpuMicros.summary("cpu.us"));
+            byRoute.put(route, summary);
+        });
+        report.put("routes", byRoute);
+        return report;
+    }
+}
@@ -0,0 +1,34 @@
+import Service.MessageExporter;
+import Util.ApplicationContext;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Exports every message to a file from the command line, without starting the API.
+ *
+ * Usage: Export FILE [--format ndjson|csv] [--gzip]
+ */
+public class Export {
+    public static void main(String[] args) throws IOException {
+        String file = null;
+        MessageExporter.Format format = MessageExporter.Format.NDJSON;
+        boolean gzip = false;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--format") && i + 1 < args.length) {
+                format = MessageExporter.Format.fromName(args[++i]);
+            } else if(args[i].equals("--gzip")) {
+                gzip = true;
+            } else {
+                file = args[i];
+            }
+        }
+        if(file == null || format == null) {
+            System.out.println("Usage: Export FILE [--format ndjson|csv] [--gzip]");
+            System.exit(2);
+        }
+
+        MessageExporter.ExportResult result = new ApplicationContext().getMessageExporter().export(Paths.get(file), format, gzip);
+        System.out.println("Exported " + result.getRows() + " messages (" + result.getBytes() + " bytes) to "
+                + result.getFile() + " in " + result.getMillis() + " ms, " + result.getRows_per_second() + " rows/sec");
+    }
+}
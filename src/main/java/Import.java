@@ -0,0 +1,63 @@
+import Service.BulkImporter;
+import Util.AppConfig;
+import Util.ApplicationContext;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk loads accounts and messages from NDJSON or CSV files from the command line, without starting the API.
+ * Accounts are loaded first so messages can refer to them. Progress is printed every import.progress.seconds.
+ * Passwords that are already hashes are only kept as they are with -Dimport.accept.hashes=true. An API server
+ * running against the same database does not see the imported rows in its caches and statistics until it restarts.
+ *
+ * Usage: Import [--accounts FILE] [--messages FILE]
+ */
+public class Import {
+    public static void main(String[] args) throws IOException {
+        Path accounts = null;
+        Path messages = null;
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(args[i].equals("--accounts")) {
+                accounts = Paths.get(args[i + 1]);
+            } else if(args[i].equals("--messages")) {
+                messages = Paths.get(args[i + 1]);
+            }
+        }
+        if(accounts == null && messages == null) {
+            System.out.println("Usage: Import [--accounts FILE] [--messages FILE]");
+            System.exit(2);
+        }
+
+        BulkImporter importer = new ApplicationContext().getBulkImporter();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "import-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = AppConfig.getLong("import.progress.seconds", 5);
+        progress.scheduleAtFixedRate(() -> System.out.println(String.format("%.1f%% read, %d imported, %d rejected, %d failed",
+                importer.getTotalBytes() == 0 ? 0.0 : 100.0 * importer.getBytesRead() / importer.getTotalBytes(),
+                importer.getImported(), importer.getRejected(), importer.getFailed())), period, period, TimeUnit.SECONDS);
+        try {
+            if(accounts != null) {
+                report("accounts", importer.importAccounts(accounts));
+            }
+            if(messages != null) {
+                report("messages", importer.importMessages(messages));
+            }
+            System.out.println("Restart any running API server so its caches and statistics include the imported rows");
+        } finally {
+            progress.shutdownNow();
+        }
+    }
+
+    private static void report(String kind, BulkImporter.ImportResult result) {
+        System.out.println("Imported " + result.getImported() + " " + kind + " from " + result.getFile() + " in "
+                + result.getMillis() + " ms, " + result.getRows_per_second() + " rows/sec (" + result.getRejected()
+                + " rejected, " + result.getFailed() + " failed)");
+    }
+}
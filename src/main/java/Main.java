@@ -1,4 +1,5 @@
 import Controller.SocialMediaController;
+import Util.ApplicationContext;
 import io.javalin.Javalin;
 
 /**
@@ -7,8 +8,14 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
-        SocialMediaController controller = new SocialMediaController();
+        // One context for the process; its components, and the database, are created as the first requests need them
+        ApplicationContext context = new ApplicationContext();
+        SocialMediaController controller = new SocialMediaController(context);
         Javalin app = controller.startAPI();
+        // Warm caches and JIT before the port opens, so the first real requests are not the slow ones
+        controller.warmUp();
+        // On SIGTERM, finish the requests in flight before exiting rather than cutting them off
+        Runtime.getRuntime().addShutdownHook(new Thread(controller::shutdown, "graceful-shutdown"));
         app.start(8080);
     }
 }
@@ -0,0 +1,85 @@
+package Model;
+
+/**
+ * This is a class that models a change to a message, as published to stream subscribers.
+ */
+public class MessageEvent {
+    /**
+     * The kinds of change that are published.
+     */
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    /**
+     * A sequence number unique to this event, increasing in publication order. Clients resume a stream by sending
+     * the last id they saw.
+     */
+    private final long event_id;
+    /**
+     * What happened to the message.
+     */
+    private final Type type;
+    /**
+     * The message as it was after the change, or as it was before being deleted.
+     */
+    private final Message message;
+    /**
+     * System.nanoTime() at publication, used to measure delivery latency.
+     */
+    private final long published_nanos;
+
+    /**
+     * @param event_id
+     * @param type
+     * @param message
+     * @param published_nanos
+     */
+    public MessageEvent(long event_id, Type type, Message message, long published_nanos) {
+        this.event_id = event_id;
+        this.type = type;
+        this.message = message;
+        this.published_nanos = published_nanos;
+    }
+
+    /**
+     * @return event_id
+     */
+    public long getEvent_id() {
+        return event_id;
+    }
+
+    /**
+     * @return type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return published_nanos
+     */
+    public long getPublished_nanos() {
+        return published_nanos;
+    }
+
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageEvent{" +
+                "event_id=" + event_id +
+                ", type=" + type +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -0,0 +1,78 @@
+package Model;
+
+/**
+ * This is a class that models one version of a message's text, as listed in its edit history.
+ */
+public class MessageRevision {
+    /**
+     * The message this is a version of.
+     */
+    private final int message_id;
+    /**
+     * The version number, 1 for the text the message was posted with.
+     */
+    private final int version;
+    /**
+     * The text of the message at this version.
+     */
+    private final String message_text;
+    /**
+     * When this version was replaced by an edit (seconds since Jan 1, 1970), or null for the current version.
+     */
+    private final Long superseded_epoch;
+
+    /**
+     * @param message_id
+     * @param version
+     * @param message_text
+     * @param superseded_epoch
+     */
+    public MessageRevision(int message_id, int version, String message_text, Long superseded_epoch) {
+        this.message_id = message_id;
+        this.version = version;
+        this.message_text = message_text;
+        this.superseded_epoch = superseded_epoch;
+    }
+
+    /**
+     * @return message_id
+     */
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    /**
+     * @return version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return message_text
+     */
+    public String getMessage_text() {
+        return message_text;
+    }
+
+    /**
+     * @return superseded_epoch
+     */
+    public Long getSuperseded_epoch() {
+        return superseded_epoch;
+    }
+
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageRevision{" +
+                "message_id=" + message_id +
+                ", version=" + version +
+                ", message_text='" + message_text + '\'' +
+                ", superseded_epoch=" + superseded_epoch +
+                '}';
+    }
+}
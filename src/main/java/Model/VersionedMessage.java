@@ -0,0 +1,51 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * This is a class that models a message as stored, together with the version of its text.
+ *
+ * The version starts at 1 and goes up by one with every edit. It is left out of the JSON so message bodies keep the
+ * Message shape; the API sends it in the ETag header instead.
+ */
+public class VersionedMessage extends Message {
+    /**
+     * Number of the current text of this message, 1 for the text it was posted with.
+     */
+    private final int version;
+
+    /**
+     * @param message_id
+     * @param posted_by
+     * @param message_text
+     * @param time_posted_epoch
+     * @param version
+     */
+    public VersionedMessage(int message_id, int posted_by, String message_text, long time_posted_epoch, int version) {
+        super(message_id, posted_by, message_text, time_posted_epoch);
+        this.version = version;
+    }
+
+    /**
+     * @return version
+     */
+    @JsonIgnore
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "VersionedMessage{" +
+                "message_id=" + message_id +
+                ", posted_by=" + posted_by +
+                ", message_text='" + message_text + '\'' +
+                ", time_posted_epoch=" + time_posted_epoch +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -2,19 +2,36 @@ package Service;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.AppConfig;
+import Util.BoundedCache;
+import Util.ReadConsistency;
+import Util.SingleFlight;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service layer for Account operations
- * Contains business logic for account-related operations
+ * Contains business logic for account-related operations.
+ * Passwords are stored as PBKDF2 hashes; accounts still holding a plaintext password are upgraded on their next
+ * successful login. Accounts returned to callers carry the password the caller submitted, never the stored hash.
  */
 public class AccountService {
     private AccountDAO accountDAO;
+    private CredentialVerifier credentialVerifier;
+    private final BoundedCache<Integer, Account> accountCache =
+            new BoundedCache<>("account", AppConfig.getInt("account.cache.max.entries", 10_000));
+    private final SingleFlight<Integer, Account> accountLookups = new SingleFlight<>();
+    private final LongAdder passwordUpgrades = new LongAdder();
 
     /**
      * Default constructor initializes with new AccountDAO
      */
     public AccountService() {
-        this.accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     /**
@@ -22,36 +39,131 @@ public class AccountService {
      * @param accountDAO The AccountDAO implementation to use
      */
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, new CredentialVerifier());
+    }
+
+    /**
+     * Constructor with dependency injection for testing
+     * @param accountDAO The AccountDAO implementation to use
+     * @param credentialVerifier The password hashing to use
+     */
+    public AccountService(AccountDAO accountDAO, CredentialVerifier credentialVerifier) {
         this.accountDAO = accountDAO;
+        this.credentialVerifier = credentialVerifier;
     }
 
     /**
      * Registers a new account with validation
      * @param account The account to register
      * @return Registered account with ID if successful, null otherwise
+     * @throws java.util.concurrent.RejectedExecutionException if password hashing is saturated
      */
     public Account register(Account account) {
+        return join(registerAsync(account));
+    }
+
+    /**
+     * Registers a new account without holding the calling thread while the password is hashed. The account is
+     * inserted by the thread that completes the hash, so a write LSN it records belongs to that thread's session.
+     * @param account The account to register
+     * @return Completes with the registered account with ID, or null if the account is invalid or the username is
+     * taken; fails with RejectedExecutionException if password hashing is saturated
+     */
+    public CompletableFuture<Account> registerAsync(Account account) {
         // Validate username and password requirements
-        if(account.getUsername().isBlank() || account.getPassword().length() < 4) {
-            return null;
+        if(!isValidRegistration(account)) {
+            return CompletableFuture.completedFuture(null);
         }
         
         // Check if username already exists
         if(accountDAO.getAccountByUsername(account.getUsername()) != null) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
         
-        // Insert the new account into database
-        return accountDAO.insertAccount(account);
+        // Hash on the verifier pool, then insert the new account into database once the hash is ready
+        return credentialVerifier.hash(account.getPassword()).thenApply(hash -> {
+            Account inserted = accountDAO.insertAccount(new Account(account.getUsername(), hash));
+            if(inserted == null) return null;
+            credentialVerifier.remember(account.getUsername(), account.getPassword(), hash);
+            return new Account(inserted.getAccount_id(), account.getUsername(), account.getPassword());
+        });
+    }
+
+    /**
+     * Checks the username and password rules for a new account, without checking that the username is free
+     * @param account The account to check
+     * @return true if the username is not blank and the password has at least 4 characters
+     */
+    public static boolean isValidRegistration(Account account) {
+        return account.getUsername() != null && !account.getUsername().isBlank()
+                && account.getPassword() != null && account.getPassword().length() >= 4;
     }
 
     /**
      * Authenticates a user's login credentials
      * @param account The account with login credentials
      * @return Authenticated account if successful, null otherwise
+     * @throws java.util.concurrent.RejectedExecutionException if password verification is saturated
      */
     public Account login(Account account) {
-        return accountDAO.login(account.getUsername(), account.getPassword());
+        return join(loginAsync(account));
+    }
+
+    /**
+     * Authenticates a user's login credentials without holding the calling thread during password verification
+     * @param account The account with login credentials
+     * @return Completes with the authenticated account, or null if the credentials are wrong; fails with
+     * RejectedExecutionException if password verification is saturated
+     */
+    public CompletableFuture<Account> loginAsync(Account account) {
+        if(account.getUsername() == null || account.getPassword() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Account stored = accountDAO.getAccountByUsername(account.getUsername());
+        if(stored == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return credentialVerifier.verify(account.getUsername(), account.getPassword(), stored.getPassword())
+                .thenCompose(matches -> {
+                    if(!matches) return CompletableFuture.completedFuture(null);
+                    Account authenticated = new Account(stored.getAccount_id(), stored.getUsername(), account.getPassword());
+                    if(!credentialVerifier.needsRehash(stored.getPassword())) {
+                        return CompletableFuture.completedFuture(authenticated);
+                    }
+                    return upgradePassword(stored, account.getPassword()).thenApply(upgraded -> authenticated);
+                });
+    }
+
+    /**
+     * Replaces a plaintext or outdated stored password with a current hash. A failure only means the upgrade is
+     * retried on the next login, so the returned future always completes normally.
+     */
+    private CompletableFuture<Boolean> upgradePassword(Account stored, String password) {
+        return credentialVerifier.hash(password).thenApply(hash -> {
+            try {
+                if(!accountDAO.updatePassword(stored.getAccount_id(), stored.getPassword(), hash)) return false;
+                passwordUpgrades.increment();
+                credentialVerifier.remember(stored.getUsername(), password, hash);
+                accountCache.invalidate(stored.getAccount_id());
+                accountLookups.forget(stored.getAccount_id());
+                return true;
+            } finally {
+                // Runs on the verifier pool, where the write's LSN belongs to no request
+                ReadConsistency.end();
+            }
+        }).exceptionally(e -> {
+            System.out.println("Password upgrade deferred: " + e.getMessage());
+            return false;
+        });
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
     }
 
     /**
@@ -60,6 +172,40 @@ public class AccountService {
      * @return The Account object if found, null otherwise
      */
     public Account getAccountById(int account_id) {
-        return accountDAO.getAccountById(account_id);
+        return accountCache.get(account_id,
+                () -> accountLookups.execute(account_id,
+                        () -> ReadConsistency.latest(() -> accountDAO.getAccountById(account_id))));
+    }
+
+    /**
+     * Loads accounts into the cache ahead of their first lookup
+     * @param account_ids The IDs of the accounts to load
+     * @return Number of accounts cached
+     */
+    public int preload(Collection<Integer> account_ids) {
+        if(account_ids.isEmpty()) return 0;
+        long observedGeneration = accountCache.getGeneration();
+        int loaded = 0;
+        for(Account account : accountDAO.getAccountsByIds(account_ids)) {
+            accountCache.putIfCurrent(account.getAccount_id(), account, observedGeneration);
+            loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Reports how many account lookups ran against the database and how many were coalesced
+     * @return Metric name to value
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("account.cache.hits", accountCache.getHits());
+        metrics.put("account.cache.misses", accountCache.getMisses());
+        metrics.put("account.cache.size", (long) accountCache.size());
+        metrics.put("account.lookups.executed", accountLookups.getExecutions());
+        metrics.put("account.lookups.coalesced", accountLookups.getCoalesced());
+        metrics.put("password.upgrades", passwordUpgrades.sum());
+        metrics.putAll(credentialVerifier.getMetrics());
+        return metrics;
     }
 }
\ No newline at end of file
@@ -0,0 +1,555 @@
+package Service;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.AppConfig;
+import Util.PasswordHasher;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Loads accounts or messages from NDJSON or CSV files far faster than the API can take them one row at a time.
+ *
+ * A file is memory mapped and cut into chunks of about import.chunk.bytes at record boundaries. A fork-join pool
+ * (import.parallelism threads) parses the chunks in parallel, applies the same rules as AccountService.register and
+ * MessageService.createMessage, and inserts the rows that pass in JDBC batches of import.batch.size. Rows that break
+ * a rule are counted as rejected and skipped; a batch the database refuses is counted as failed.
+ *
+ * Files ending in .csv are CSV with a header naming the columns (username, password for accounts; posted_by,
+ * message_text, time_posted_epoch for messages, so an export can be loaded back). Anything else is read as one JSON
+ * object per line. Ids in the input are ignored and new ones assigned, so accounts and messages must be imported
+ * into the same database their ids were issued by. Passwords are hashed as registration would. A file of
+ * passwords that are already hashes, e.g. from another deployment, is only stored as it is with
+ * import.accept.hashes=true; otherwise a value that looks like a hash is hashed like any other password.
+ *
+ * Message posters are looked up once per batch so unknown ones are rejected rather than failing the batch; the
+ * database's foreign keys stay on. One import runs at a time.
+ *
+ * Rows are written straight through the DAOs, so an API server running against the same database does not see
+ * them in its caches, statistics or trending until it restarts: cached lists and lookups miss the new rows until
+ * they expire or are invalidated by a later write, and the message counters, seeded once, leave them out. Import
+ * while the API is stopped, or restart it afterwards.
+ */
+public class BulkImporter {
+    private static final long SCAN_WINDOW_BYTES = 64L << 20;
+
+    /**
+     * What an import loaded and how fast.
+     */
+    public static class ImportResult {
+        private final String file;
+        private final long imported;
+        private final long rejected;
+        private final long failed;
+        private final long millis;
+
+        ImportResult(String file, long imported, long rejected, long failed, long millis) {
+            this.file = file;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.millis = millis;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getRows_per_second() {
+            return millis == 0 ? imported * 1000 : imported * 1000 / millis;
+        }
+    }
+
+    private final AccountDAO accountDAO;
+    private final MessageDAO messageDAO;
+    private final PasswordHasher passwordHasher;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final long chunkBytes;
+    private final int batchSize;
+    private final int parallelism;
+    private final boolean acceptHashes;
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long totalBytes;
+
+    /**
+     * Default constructor reads chunk, batch and pool sizes from AppConfig
+     */
+    public BulkImporter() {
+        this(new AccountDAO(), new MessageDAO());
+    }
+
+    /**
+     * @param accountDAO The DAO accounts are checked against and inserted with
+     * @param messageDAO The DAO messages are inserted with
+     */
+    public BulkImporter(AccountDAO accountDAO, MessageDAO messageDAO) {
+        this.accountDAO = accountDAO;
+        this.messageDAO = messageDAO;
+        this.passwordHasher = new PasswordHasher(AppConfig.getInt("password.hash.iterations", 210_000));
+        this.chunkBytes = Math.max(1, AppConfig.getLong("import.chunk.bytes", 16L << 20));
+        this.batchSize = Math.max(1, AppConfig.getInt("import.batch.size", 5_000));
+        this.parallelism = Math.max(1, AppConfig.getInt("import.parallelism", Runtime.getRuntime().availableProcessors()));
+        this.acceptHashes = AppConfig.getBoolean("import.accept.hashes", false);
+    }
+
+    /**
+     * Imports accounts
+     * @param file An NDJSON or CSV file of accounts
+     * @return What was loaded
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importAccounts(Path file) throws IOException {
+        return run(file, new AccountLoad());
+    }
+
+    /**
+     * Imports messages, whose posters must already have accounts
+     * @param file An NDJSON or CSV file of messages
+     * @return What was loaded
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importMessages(Path file) throws IOException {
+        return run(file, new MessageLoad());
+    }
+
+    /**
+     * @return Bytes of the current file parsed so far
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return Size of the current file
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return Rows of the current file inserted so far
+     */
+    public long getImported() {
+        return imported.sum();
+    }
+
+    /**
+     * @return Rows of the current file skipped so far for breaking a rule
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return Rows of the current file in batches the database refused so far
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * How one kind of row is read, checked and inserted.
+     * @param <T> The row type
+     */
+    private abstract class Load<T> {
+        private final Class<T> type;
+        private final String[] csvColumns;
+
+        Load(Class<T> type, String... csvColumns) {
+            this.type = type;
+            this.csvColumns = csvColumns;
+        }
+
+        /**
+         * @param fields A CSV record
+         * @param positions Where each of csvColumns is in the record
+         * @return The row
+         */
+        abstract T fromCsv(String[] fields, int[] positions);
+
+        /**
+         * @return true if the row passes the rules that need no database lookup
+         */
+        abstract boolean isValid(T row);
+
+        /**
+         * Checks a batch of valid rows against the database and inserts those that pass, updating the counters
+         */
+        abstract void load(List<T> batch);
+    }
+
+    private class AccountLoad extends Load<Account> {
+        // Usernames seen earlier in the file, so duplicates within it are rejected before they reach the database
+        private final Set<String> usernames = ConcurrentHashMap.newKeySet();
+
+        AccountLoad() {
+            super(Account.class, "username", "password");
+        }
+
+        @Override
+        Account fromCsv(String[] fields, int[] positions) {
+            return new Account(fields[positions[0]], fields[positions[1]]);
+        }
+
+        @Override
+        boolean isValid(Account account) {
+            return AccountService.isValidRegistration(account);
+        }
+
+        @Override
+        void load(List<Account> batch) {
+            List<Account> candidates = new ArrayList<>(batch.size());
+            List<String> names = new ArrayList<>(batch.size());
+            for(Account account : batch) {
+                if(usernames.add(account.getUsername())) {
+                    candidates.add(account);
+                    names.add(account.getUsername());
+                } else {
+                    rejected.increment();
+                }
+            }
+            Set<String> taken = accountDAO.getExistingUsernames(names);
+            if(taken == null) {
+                failed.add(candidates.size());
+                return;
+            }
+            List<Account> accounts = new ArrayList<>(candidates.size());
+            for(Account account : candidates) {
+                if(taken.contains(account.getUsername())) {
+                    rejected.increment();
+                } else {
+                    String password = account.getPassword();
+                    accounts.add(new Account(account.getUsername(),
+                            acceptHashes && PasswordHasher.isHash(password) ? password : passwordHasher.hash(password)));
+                }
+            }
+            insert(accounts, accountDAO::insertAccounts);
+        }
+    }
+
+    private class MessageLoad extends Load<Message> {
+        // Posters already confirmed to exist; accounts are not deleted, so this never goes stale
+        private final Set<Integer> accounts = ConcurrentHashMap.newKeySet();
+
+        MessageLoad() {
+            super(Message.class, "posted_by", "message_text", "time_posted_epoch");
+        }
+
+        @Override
+        Message fromCsv(String[] fields, int[] positions) {
+            return new Message(Integer.parseInt(fields[positions[0]].trim()), fields[positions[1]],
+                    Long.parseLong(fields[positions[2]].trim()));
+        }
+
+        @Override
+        boolean isValid(Message message) {
+            return MessageService.isValidText(message.getMessage_text());
+        }
+
+        @Override
+        void load(List<Message> batch) {
+            Set<Integer> unknown = new HashSet<>();
+            for(Message message : batch) {
+                if(!accounts.contains(message.getPosted_by())) unknown.add(message.getPosted_by());
+            }
+            if(!unknown.isEmpty()) {
+                Set<Integer> existing = accountDAO.getExistingAccountIds(unknown);
+                if(existing == null) {
+                    failed.add(batch.size());
+                    return;
+                }
+                accounts.addAll(existing);
+            }
+            List<Message> messages = new ArrayList<>(batch.size());
+            for(Message message : batch) {
+                if(accounts.contains(message.getPosted_by())) {
+                    messages.add(message);
+                } else {
+                    rejected.increment();
+                }
+            }
+            insert(messages, messageDAO::insertMessages);
+        }
+    }
+
+    private <T> void insert(List<T> rows, Function<List<T>, List<T>> batchInsert) {
+        if(rows.isEmpty()) return;
+        if(batchInsert.apply(rows) == null) {
+            failed.add(rows.size());
+        } else {
+            imported.add(rows.size());
+        }
+    }
+
+    private <T> ImportResult run(Path file, Load<T> load) throws IOException {
+        long start = System.nanoTime();
+        bytesRead.reset();
+        imported.reset();
+        rejected.reset();
+        failed.reset();
+        boolean csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            totalBytes = size;
+            if(size == 0) {
+                return new ImportResult(file.toString(), 0, 0, 0, (System.nanoTime() - start) / 1_000_000);
+            }
+            List<Long> boundaries = csv ? csvBoundaries(channel, size) : lineBoundaries(channel, size);
+
+            int[] positions = null;
+            if(csv) {
+                // Everything before the first boundary is the header
+                String[][] header = new String[1][];
+                forEachCsvRecord(decode(channel, 0, boundaries.get(0)), fields -> {
+                    if(header[0] == null) header[0] = fields;
+                });
+                positions = columnPositions(header[0], load.csvColumns);
+                bytesRead.add(boundaries.get(0));
+            }
+
+            List<Callable<Void>> chunks = new ArrayList<>();
+            for(int i = 0; i + 1 < boundaries.size(); i++) {
+                long from = boundaries.get(i);
+                long to = boundaries.get(i + 1);
+                int[] columns = positions;
+                chunks.add(() -> {
+                    importChunk(channel, from, to, columns, load);
+                    return null;
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for(Future<Void> chunk : pool.invokeAll(chunks)) {
+                    chunk.get();
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Import interrupted", e);
+            } catch(ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                throw new IOException(cause.getMessage(), cause);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new ImportResult(file.toString(), imported.sum(), rejected.sum(), failed.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private <T> void importChunk(FileChannel channel, long from, long to, int[] positions, Load<T> load) {
+        CharBuffer text;
+        try {
+            text = decode(channel, from, to);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<T> batch = new ArrayList<>(batchSize);
+        Consumer<T> accept = row -> {
+            if(row == null || !load.isValid(row)) {
+                rejected.increment();
+                return;
+            }
+            batch.add(row);
+            if(batch.size() == batchSize) {
+                load.load(batch);
+                batch.clear();
+            }
+        };
+        if(positions != null) {
+            forEachCsvRecord(text, fields -> accept.accept(parseCsv(fields, positions, load)));
+        } else {
+            ObjectReader reader = objectMapper.readerFor(load.type);
+            int lineStart = 0;
+            for(int i = 0; i <= text.length(); i++) {
+                if(i == text.length() || text.charAt(i) == '\n') {
+                    String line = text.subSequence(lineStart, i).toString().trim();
+                    if(!line.isEmpty()) {
+                        T row;
+                        try {
+                            row = reader.readValue(line);
+                        } catch(IOException e) {
+                            row = null;
+                        }
+                        accept.accept(row);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+        }
+        if(!batch.isEmpty()) {
+            load.load(batch);
+        }
+        bytesRead.add(to - from);
+    }
+
+    private static <T> T parseCsv(String[] fields, int[] positions, Load<T> load) {
+        for(int position : positions) {
+            if(position >= fields.length) return null;
+        }
+        try {
+            return load.fromCsv(fields, positions);
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int[] columnPositions(String[] header, String[] columns) throws IOException {
+        List<String> names = header == null ? List.of() : Arrays.asList(header);
+        int[] positions = new int[columns.length];
+        for(int i = 0; i < columns.length; i++) {
+            positions[i] = names.indexOf(columns[i]);
+            if(positions[i] < 0) {
+                throw new IOException("CSV header has no " + columns[i] + " column");
+            }
+        }
+        return positions;
+    }
+
+    private static CharBuffer decode(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        return StandardCharsets.UTF_8.decode(bytes);
+    }
+
+    /**
+     * Splits a file of lines into chunks of about chunkBytes. JSON strings cannot hold a raw newline, so any newline
+     * ends a record and only the bytes around each cut need to be read.
+     * @return Chunk start offsets followed by the file size
+     */
+    private List<Long> lineBoundaries(FileChannel channel, long size) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long cut = chunkBytes;
+        while(cut < size) {
+            long recordStart = size;
+            for(long window = cut; window < size && recordStart == size; window += SCAN_WINDOW_BYTES) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, window,
+                        Math.min(SCAN_WINDOW_BYTES, size - window));
+                for(int i = 0; i < bytes.limit(); i++) {
+                    if(bytes.get(i) == '\n') {
+                        recordStart = window + i + 1;
+                        break;
+                    }
+                }
+            }
+            if(recordStart >= size) break;
+            boundaries.add(recordStart);
+            cut = recordStart + chunkBytes;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    /**
+     * Splits a CSV file into its header and chunks of about chunkBytes. A quoted field may hold newlines, so the file
+     * is scanned once from the start to know which newlines end a record; doubled quotes inside a field toggle the
+     * quoted state twice and cancel out.
+     * @return The end of the header, then chunk start offsets, followed by the file size
+     */
+    private List<Long> csvBoundaries(FileChannel channel, long size) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boolean quoted = false;
+        for(long window = 0; window < size; window += SCAN_WINDOW_BYTES) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, window,
+                    Math.min(SCAN_WINDOW_BYTES, size - window));
+            for(int i = 0; i < bytes.limit(); i++) {
+                byte b = bytes.get(i);
+                if(b == '"') {
+                    quoted = !quoted;
+                } else if(b == '\n' && !quoted) {
+                    long recordStart = window + i + 1;
+                    if(boundaries.isEmpty() || recordStart - boundaries.get(boundaries.size() - 1) >= chunkBytes) {
+                        boundaries.add(recordStart);
+                    }
+                }
+            }
+        }
+        if(boundaries.isEmpty() || boundaries.get(boundaries.size() - 1) != size) {
+            boundaries.add(size);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Parses RFC 4180 CSV, skipping blank lines
+     */
+    static void forEachCsvRecord(CharSequence text, Consumer<String[]> sink) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int length = text.length();
+        for(int i = 0; i <= length; i++) {
+            char c = i == length ? '\n' : text.charAt(i);
+            if(quoted && i < length) {
+                if(c != '"') {
+                    field.append(c);
+                } else if(i + 1 < length && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if(c == '\n') {
+                if(!fields.isEmpty() || field.length() > 0) {
+                    fields.add(field.toString());
+                    sink.accept(fields.toArray(new String[0]));
+                }
+                fields.clear();
+                field.setLength(0);
+                quoted = false;
+            } else if(c != '\r') {
+                field.append(c);
+            }
+        }
+    }
+}
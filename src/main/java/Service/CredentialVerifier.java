@@ -0,0 +1,179 @@
+package Service;
+
+import Util.AppConfig;
+import Util.BoundedCache;
+import Util.PasswordHasher;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Runs password hashing off the request threads.
+ *
+ * Hashing is deliberately expensive, so it runs on a small dedicated pool (password.verify.threads, default one per
+ * core) with a bounded queue (password.verify.queue). When the queue is full new work fails fast with a
+ * RejectedExecutionException instead of piling up behind the HTTP and JDBC threads.
+ *
+ * Successful verifications are remembered in a bounded cache keyed by an HMAC of the username and password under a
+ * per-process random key, together with the stored hash they matched. A repeated login with the same credentials
+ * against an unchanged stored hash then skips PBKDF2. The cache never holds plaintext, and its keys are useless
+ * outside this process.
+ */
+public class CredentialVerifier {
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    private final BoundedCache<String, String> verified;
+    private final SecretKeySpec cacheKey;
+    private final ThreadLocal<Mac> macs;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Default constructor reads the work factor, pool and cache sizes from AppConfig
+     */
+    public CredentialVerifier() {
+        this(new PasswordHasher(AppConfig.getInt("password.hash.iterations", 210_000)),
+                AppConfig.getInt("password.verify.threads", Runtime.getRuntime().availableProcessors()),
+                AppConfig.getInt("password.verify.queue", 1024),
+                AppConfig.getInt("password.cache.max.entries", 10_000));
+    }
+
+    /**
+     * @param hasher The hasher to use
+     * @param threads Number of threads hashing at once
+     * @param queueSize Number of hashing jobs that may wait for a thread
+     * @param cacheEntries Number of verified credentials remembered
+     */
+    public CredentialVerifier(PasswordHasher hasher, int threads, int queueSize, int cacheEntries) {
+        this.hasher = hasher;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "credential-verifier-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.verified = new BoundedCache<>("credential", cacheEntries);
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Hashes a password for storage
+     * @param password The plaintext password
+     * @return The encoded hash, failed with RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<String> hash(String password) {
+        return submit(() -> {
+            hashes.increment();
+            return hasher.hash(password);
+        });
+    }
+
+    /**
+     * Checks a password against an account's stored hash
+     * @param username The account's username
+     * @param password The submitted plaintext password
+     * @param stored The account's stored hash or legacy plaintext password
+     * @return Whether the password matches, failed with RejectedExecutionException if the pool is saturated
+     */
+    public CompletableFuture<Boolean> verify(String username, String password, String stored) {
+        String credential = credentialKey(username, password);
+        if(stored.equals(verified.get(credential))) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return submit(() -> {
+            verifications.increment();
+            boolean matches = hasher.verify(password, stored);
+            if(matches) {
+                verified.put(credential, stored);
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * Records that a password now matches a new stored hash, after the hash was replaced
+     * @param username The account's username
+     * @param password The plaintext password
+     * @param stored The new stored hash
+     */
+    public void remember(String username, String password, String stored) {
+        verified.put(credentialKey(username, password), stored);
+    }
+
+    /**
+     * @param stored A stored hash or legacy plaintext password
+     * @return true if it should be replaced by a hash with the current work factor
+     */
+    public boolean needsRehash(String stored) {
+        return hasher.needsRehash(stored);
+    }
+
+    /**
+     * Stops the hashing threads once their queued work is done; later submissions are rejected
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch(RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private String credentialKey(String username, String password) {
+        Mac mac = macs.get();
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        // Prefixing the username's length keeps ("ab", "c") and ("a", "bc") apart
+        mac.update(new byte[]{(byte) (user.length >>> 24), (byte) (user.length >>> 16), (byte) (user.length >>> 8), (byte) user.length});
+        mac.update(user);
+        return Base64.getEncoder().withoutPadding().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(cacheKey);
+            return mac;
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reports hashing work, cache effectiveness and saturation
+     * @return Metric name to value
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("password.hashes", hashes.sum());
+        metrics.put("password.verifications", verifications.sum());
+        metrics.put("password.cache.hits", verified.getHits());
+        metrics.put("password.cache.misses", verified.getMisses());
+        metrics.put("password.rejected", rejected.sum());
+        metrics.put("password.queue.depth", (long) executor.getQueue().size());
+        return metrics;
+    }
+}
@@ -0,0 +1,383 @@
+package Service;
+
+import Model.Message;
+import Model.MessageEvent;
+import Util.AppConfig;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * In-process publish/subscribe bus for message changes.
+ * Every subscriber has a bounded buffer that is drained by a small shared dispatcher pool, so publishing never
+ * waits on a subscriber. A subscriber whose buffer fills up is a slow consumer and is dropped. The most recent
+ * events are kept in a ring so a reconnecting subscriber can resume from the last event id it saw.
+ *
+ * Event ids are assigned and the event queued to every subscriber under one lock, so each subscriber sees events
+ * in id order however many writers publish at once. Queuing never blocks, so the lock is only held briefly.
+ *
+ * A subscriber's sink may block, e.g. on a client that stops reading. While one write has been stuck for longer than
+ * events.slow.write.ms the dispatcher gets an extra thread, so one stalled client cannot hold up the others, and a
+ * write stuck for longer than events.write.timeout.ms drops the subscriber.
+ *
+ * Settings (see AppConfig):
+ * - events.buffer.size: events buffered per subscriber before it is dropped (default 256)
+ * - events.replay.size: recent events kept for resuming (default 4096)
+ * - events.dispatch.threads: threads delivering events to subscribers (default number of cores)
+ * - events.slow.write.ms: how long a write may block before a thread is added for the others (default 200)
+ * - events.slow.max.threads: most threads added for stalled writes at once (default 64)
+ * - events.write.timeout.ms: how long a write may block before its subscriber is dropped (default 10000)
+ */
+public class MessageEventBus {
+    private final int bufferSize;
+    private final AtomicReferenceArray<MessageEvent> replay;
+    private final AtomicLong sequence = new AtomicLong();
+    // Held while an event id is assigned and the event queued, and while a subscriber joins
+    private final Object publishLock = new Object();
+    private final ThreadPoolExecutor dispatcher;
+    private final int dispatchThreads;
+    private final long slowWriteNanos;
+    private final int maxExtraThreads;
+    private final long writeTimeoutNanos;
+    private final AtomicInteger extraThreads = new AtomicInteger();
+    private ScheduledExecutorService watchdog;
+
+    private final Set<Subscription> allSubscribers = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Set<Subscription>> accountSubscribers = new ConcurrentHashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder stalledWrites = new LongAdder();
+
+    /**
+     * Default constructor reads its settings from AppConfig
+     */
+    public MessageEventBus() {
+        this(AppConfig.getInt("events.buffer.size", 256),
+                AppConfig.getInt("events.replay.size", 4096),
+                AppConfig.getInt("events.dispatch.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructor with explicit buffer settings for testing and benchmarks; stalled writes are handled as configured
+     * @param bufferSize Events buffered per subscriber before it is dropped
+     * @param replaySize Recent events kept for resuming
+     * @param dispatchThreads Threads delivering events to subscribers
+     */
+    public MessageEventBus(int bufferSize, int replaySize, int dispatchThreads) {
+        this(bufferSize, replaySize, dispatchThreads, AppConfig.getLong("events.slow.write.ms", 200),
+                AppConfig.getInt("events.slow.max.threads", 64), AppConfig.getLong("events.write.timeout.ms", 10_000));
+    }
+
+    /**
+     * Constructor with explicit settings for testing and benchmarks
+     * @param bufferSize Events buffered per subscriber before it is dropped
+     * @param replaySize Recent events kept for resuming
+     * @param dispatchThreads Threads delivering events to subscribers
+     * @param slowWriteMillis How long a write may block before a thread is added for the other subscribers
+     * @param maxExtraThreads Most threads added for stalled writes at once
+     * @param writeTimeoutMillis How long a write may block before its subscriber is dropped
+     */
+    public MessageEventBus(int bufferSize, int replaySize, int dispatchThreads, long slowWriteMillis,
+            int maxExtraThreads, long writeTimeoutMillis) {
+        this.bufferSize = bufferSize;
+        this.replay = new AtomicReferenceArray<>(replaySize);
+        this.dispatchThreads = dispatchThreads;
+        this.slowWriteNanos = Math.max(1, slowWriteMillis) * 1_000_000;
+        this.maxExtraThreads = maxExtraThreads;
+        this.writeTimeoutNanos = Math.max(1, writeTimeoutMillis) * 1_000_000;
+        // The queue is unbounded, so the pool only grows past its core size when a stalled write adds a thread
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(dispatchThreads, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "message-event-dispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.dispatcher = pool;
+    }
+
+    /**
+     * Publishes a change to every matching subscriber
+     * @param type What happened to the message
+     * @param message The message after the change
+     */
+    public void publish(MessageEvent.Type type, Message message) {
+        synchronized(publishLock) {
+            MessageEvent event = new MessageEvent(sequence.incrementAndGet(), type, message, System.nanoTime());
+            replay.set((int) (event.getEvent_id() % replay.length()), event);
+            published.increment();
+
+            for(Subscription subscription : allSubscribers) {
+                subscription.offer(event);
+            }
+            Set<Subscription> forAccount = accountSubscribers.get(message.getPosted_by());
+            if(forAccount != null) {
+                for(Subscription subscription : forAccount) {
+                    subscription.offer(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a subscriber
+     * @param account_id Only deliver changes to this account's messages, or null for all messages
+     * @param lastEventId Replay buffered events after this id first, or 0 to receive only new events
+     * @param sink Receives events, one at a time and in event id order
+     * @param onDropped Called if the subscriber is dropped for falling behind
+     * @return The subscription, to be closed when the subscriber goes away
+     */
+    public Subscription subscribe(Integer account_id, long lastEventId, Consumer<MessageEvent> sink, Runnable onDropped) {
+        Subscription subscription = new Subscription(account_id, sink, onDropped);
+        startWatchdog();
+        synchronized(publishLock) {
+            if(account_id == null) {
+                allSubscribers.add(subscription);
+            } else {
+                accountSubscribers.computeIfAbsent(account_id, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+            }
+
+            if(lastEventId > 0) {
+                // Every event up to newest is replayed and every later one is queued live, so none is missed or repeated
+                long newest = sequence.get();
+                long oldest = Math.max(lastEventId + 1, newest - replay.length() + 1);
+                for(long id = oldest; id <= newest; id++) {
+                    MessageEvent event = replay.get((int) (id % replay.length()));
+                    if(event != null && event.getEvent_id() == id && subscription.matches(event)) {
+                        subscription.replayed.add(event);
+                    }
+                }
+            }
+        }
+        if(!subscription.replayed.isEmpty()) {
+            subscription.schedule();
+        }
+        return subscription;
+    }
+
+    /**
+     * Stops accepting events and waits for those already published to be delivered
+     * @param timeoutMillis How long to wait
+     * @return true if every event was delivered in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        synchronized(this) {
+            if(watchdog != null) {
+                watchdog.shutdownNow();
+            }
+        }
+        dispatcher.shutdown();
+        return dispatcher.awaitTermination(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts checking for stalled writes on a daemon thread, unless already started
+     */
+    private synchronized void startWatchdog() {
+        if(watchdog != null) return;
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-event-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodNanos = Math.max(10_000_000, slowWriteNanos / 2);
+        watchdog.scheduleWithFixedDelay(this::checkWrites, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds a dispatcher thread for each newly stalled write and drops subscribers whose write has timed out
+     */
+    private void checkWrites() {
+        long now = System.nanoTime();
+        for(Subscription subscription : allSubscribers) {
+            subscription.checkWrite(now);
+        }
+        for(Set<Subscription> subscriptions : accountSubscribers.values()) {
+            for(Subscription subscription : subscriptions) {
+                subscription.checkWrite(now);
+            }
+        }
+    }
+
+    private synchronized void addDispatchThread() {
+        dispatcher.setCorePoolSize(dispatchThreads + extraThreads.incrementAndGet());
+    }
+
+    private synchronized void removeDispatchThread() {
+        dispatcher.setCorePoolSize(dispatchThreads + extraThreads.decrementAndGet());
+    }
+
+    /**
+     * @return Number of subscribers currently registered
+     */
+    public int getSubscriberCount() {
+        int count = allSubscribers.size();
+        for(Set<Subscription> subscriptions : accountSubscribers.values()) {
+            count += subscriptions.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of events published
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return Number of event deliveries to subscribers
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return Number of subscribers dropped for falling behind or for a write that timed out
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Number of writes to a subscriber that blocked for longer than events.slow.write.ms
+     */
+    public long getStalledWrites() {
+        return stalledWrites.sum();
+    }
+
+    /**
+     * One subscriber's buffered view of the bus.
+     */
+    public class Subscription implements AutoCloseable {
+        private final Integer account_id;
+        private final Consumer<MessageEvent> sink;
+        private final Runnable onDropped;
+        private final ArrayBlockingQueue<MessageEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        // Filled before the first drain is scheduled, then only touched by the drain task, which never overlaps itself
+        private final ArrayDeque<MessageEvent> replayed = new ArrayDeque<>();
+        private long lastDelivered;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        // When the write in progress started, or 0 between writes
+        private volatile long writeStarted;
+        // Whether a dispatcher thread was added for the write in progress
+        private final AtomicBoolean compensated = new AtomicBoolean();
+
+        private Subscription(Integer account_id, Consumer<MessageEvent> sink, Runnable onDropped) {
+            this.account_id = account_id;
+            this.sink = sink;
+            this.onDropped = onDropped;
+        }
+
+        private boolean matches(MessageEvent event) {
+            return account_id == null || account_id == event.getMessage().getPosted_by();
+        }
+
+        private void offer(MessageEvent event) {
+            if(closed) return;
+            if(!buffer.offer(event)) {
+                dropped.increment();
+                close();
+                onDropped.run();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if(scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while(!closed) {
+                    MessageEvent event = replayed.poll();
+                    if(event != null) {
+                        // A replayed event is never older than one already delivered; skip it if it somehow is
+                        if(event.getEvent_id() <= lastDelivered) continue;
+                    } else if((event = buffer.poll()) == null) {
+                        break;
+                    }
+                    lastDelivered = event.getEvent_id();
+                    write(event);
+                    delivered.increment();
+                }
+            } catch(RuntimeException e) {
+                System.out.println(e.getMessage());
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            // An event may have arrived after the last poll but before the flag was cleared
+            if(!closed && !buffer.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void write(MessageEvent event) {
+            writeStarted = Math.max(1, System.nanoTime());
+            try {
+                sink.accept(event);
+            } finally {
+                writeStarted = 0;
+                if(compensated.compareAndSet(true, false)) {
+                    removeDispatchThread();
+                }
+            }
+        }
+
+        /**
+         * Called by the watchdog: gives the other subscribers a thread while this one's write is stalled, and drops
+         * this one once the write has timed out
+         */
+        private void checkWrite(long now) {
+            long started = writeStarted;
+            if(started == 0 || closed) return;
+            if(now - started > writeTimeoutNanos) {
+                dropped.increment();
+                close();
+                onDropped.run();
+            } else if(now - started > slowWriteNanos && extraThreads.get() < maxExtraThreads
+                    && compensated.compareAndSet(false, true)) {
+                // If the write ends right now, write() may remove the thread just before it is added; the count
+                // still comes back to even
+                stalledWrites.increment();
+                addDispatchThread();
+            }
+        }
+
+        /**
+         * Unregisters this subscriber
+         */
+        @Override
+        public void close() {
+            closed = true;
+            if(account_id == null) {
+                allSubscribers.remove(this);
+            } else {
+                Set<Subscription> subscriptions = accountSubscribers.get(account_id);
+                if(subscriptions != null) {
+                    subscriptions.remove(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.AppConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the whole message table to a file without loading it into memory.
+ *
+ * Each shard's message_id range is cut into chunks of export.chunk.ids ids. A fork-join pool (export.parallelism
+ * threads) reads the chunks in parallel, each streaming its rows from the database into its own part file through a
+ * buffered file channel. The parts are then concatenated in chunk order with channel transfers, so within a shard the
+ * output is in message_id order. With gzip every part is its own gzip member; a file of concatenated members is a
+ * valid gzip file.
+ */
+public class MessageExporter {
+    /**
+     * Output formats.
+     */
+    public enum Format {
+        NDJSON, CSV;
+
+        /**
+         * @param name A format name, case insensitive
+         * @return The format, or null if there is none by that name
+         */
+        public static Format fromName(String name) {
+            for(Format format : values()) {
+                if(format.name().equalsIgnoreCase(name)) return format;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * What an export wrote and how fast.
+     */
+    public static class ExportResult {
+        private final String file;
+        private final long rows;
+        private final long bytes;
+        private final long millis;
+
+        ExportResult(String file, long rows, long bytes, long millis) {
+            this.file = file;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getRows_per_second() {
+            return millis == 0 ? rows * 1000 : rows * 1000 / millis;
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final MessageDAO messageDAO;
+    private final ObjectWriter jsonWriter = new ObjectMapper().writerFor(Message.class);
+    private final int chunkIds;
+    private final int parallelism;
+
+    /**
+     * Default constructor reads chunk size and parallelism from AppConfig
+     */
+    public MessageExporter() {
+        this(new MessageDAO());
+    }
+
+    /**
+     * @param messageDAO The DAO to read messages with
+     */
+    public MessageExporter(MessageDAO messageDAO) {
+        this.messageDAO = messageDAO;
+        this.chunkIds = Math.max(1, AppConfig.getInt("export.chunk.ids", 50_000));
+        this.parallelism = Math.max(1, AppConfig.getInt("export.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Exports every message
+     * @param target The file to write, replaced if it exists
+     * @param format The output format
+     * @param gzip Whether to gzip the output
+     * @return What was written
+     * @throws IOException if writing fails or a chunk cannot be read from the database
+     */
+    public ExportResult export(Path target, Format format, boolean gzip) throws IOException {
+        long start = System.nanoTime();
+        List<int[]> chunks = new ArrayList<>();
+        for(int shard = 0; shard < messageDAO.getShardCount(); shard++) {
+            int[] range = messageDAO.getMessageIdRange(shard);
+            if(range == null) continue;
+            for(long from = range[0]; from <= range[1]; from += chunkIds) {
+                chunks.add(new int[]{shard, (int) from, (int) Math.min(range[1], from + chunkIds - 1)});
+            }
+        }
+
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        List<Path> parts = new ArrayList<>();
+        try {
+            if(format == Format.CSV) {
+                Path header = Files.createTempFile(directory, target.getFileName() + ".", ".header");
+                parts.add(header);
+                try (OutputStream out = open(header, gzip)) {
+                    out.write("message_id,posted_by,message_text,time_posted_epoch\n".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            for(int i = 0; i < chunks.size(); i++) {
+                parts.add(Files.createTempFile(directory, target.getFileName() + ".", ".part" + i));
+            }
+            int firstChunkPart = parts.size() - chunks.size();
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            long rows;
+            try {
+                rows = pool.invoke(new ChunkTask(chunks, parts.subList(firstChunkPart, parts.size()), 0, chunks.size(),
+                        (chunk, part) -> exportChunk(chunk, part, format, gzip)));
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+
+            long bytes = concatenate(parts, target);
+            return new ExportResult(target.toString(), rows, bytes, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            for(Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    /**
+     * Writes one chunk of messages to its part file
+     */
+    private interface ChunkWriter {
+        /**
+         * @param chunk The shard and message id range to write
+         * @param part The file to write it to
+         * @return Number of rows written
+         */
+        long write(int[] chunk, Path part);
+    }
+
+    /**
+     * Exports a contiguous run of chunks, splitting it in halves until one chunk is left
+     */
+    private static class ChunkTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<int[]> chunks;
+        private final List<Path> parts;
+        private final int from;
+        private final int to;
+        private final ChunkWriter writer;
+
+        ChunkTask(List<int[]> chunks, List<Path> parts, int from, int to, ChunkWriter writer) {
+            this.chunks = chunks;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.writer = writer;
+        }
+
+        @Override
+        protected Long compute() {
+            if(to - from == 0) return 0L;
+            if(to - from == 1) {
+                return writer.write(chunks.get(from), parts.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(chunks, parts, from, middle, writer);
+            left.fork();
+            long right = new ChunkTask(chunks, parts, middle, to, writer).compute();
+            return left.join() + right;
+        }
+    }
+
+    private long exportChunk(int[] chunk, Path part, Format format, boolean gzip) {
+        long[] rows = new long[1];
+        try (OutputStream out = open(part, gzip)) {
+            messageDAO.forEachMessage(chunk[0], chunk[1], chunk[2], message -> {
+                try {
+                    if(format == Format.NDJSON) {
+                        out.write(jsonWriter.writeValueAsBytes(message));
+                        out.write('\n');
+                    } else {
+                        out.write(toCsv(message).getBytes(StandardCharsets.UTF_8));
+                    }
+                    rows[0]++;
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } catch(SQLException e) {
+            throw new UncheckedIOException(new IOException("Reading messages " + chunk[1] + "-" + chunk[2]
+                    + " from shard " + chunk[0] + " failed: " + e.getMessage(), e));
+        }
+        return rows[0];
+    }
+
+    private static OutputStream open(Path file, boolean gzip) throws IOException {
+        OutputStream channel = Channels.newOutputStream(FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+        if(gzip) {
+            channel = new GZIPOutputStream(channel, BUFFER_BYTES);
+        }
+        return new BufferedOutputStream(channel, BUFFER_BYTES);
+    }
+
+    private static long concatenate(List<Path> parts, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for(Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long position = 0;
+                    while(position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+            return out.size();
+        }
+    }
+
+    /**
+     * Formats a message as an RFC 4180 CSV line
+     */
+    static String toCsv(Message message) {
+        String text = message.getMessage_text();
+        if(text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            text = '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return message.getMessage_id() + "," + message.getPosted_by() + "," + text + "," + message.getTime_posted_epoch() + "\n";
+    }
+}
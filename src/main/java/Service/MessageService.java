@@ -2,7 +2,19 @@ package Service;
 
 import DAO.MessageDAO;
 import Model.Message;
+import Model.MessageEvent;
+import Model.MessageRevision;
+import Model.VersionedMessage;
+import Util.AppConfig;
+import Util.BoundedCache;
+import Util.ReadConsistency;
+import Util.SingleFlight;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service layer for Message operations
@@ -11,13 +23,19 @@ import java.util.List;
 public class MessageService {
     private MessageDAO messageDAO;
     private AccountService accountService;
+    private MessageEventBus eventBus;
+    private MessageStatistics statistics;
+    private TrendingTracker trending;
+    private final BoundedCache<Integer, Message> messageCache =
+            new BoundedCache<>("message", AppConfig.getInt("message.cache.max.entries", 10_000));
+    private final SingleFlight<Integer, Message> messageLookups = new SingleFlight<>();
+    private final SingleFlight<Integer, List<Message>> userMessageLookups = new SingleFlight<>();
 
     /**
      * Default constructor initializes with new DAOs
      */
     public MessageService() {
-        this.messageDAO = new MessageDAO();
-        this.accountService = new AccountService();
+        this(new MessageDAO(), new AccountService(), new MessageEventBus());
     }
 
     /**
@@ -26,8 +44,21 @@ public class MessageService {
      * @param accountService The AccountService implementation to use
      */
     public MessageService(MessageDAO messageDAO, AccountService accountService) {
+        this(messageDAO, accountService, new MessageEventBus());
+    }
+
+    /**
+     * Constructor with dependency injection
+     * @param messageDAO The MessageDAO implementation to use
+     * @param accountService The AccountService implementation to use
+     * @param eventBus The bus that message changes are published to
+     */
+    public MessageService(MessageDAO messageDAO, AccountService accountService, MessageEventBus eventBus) {
         this.messageDAO = messageDAO;
         this.accountService = accountService;
+        this.eventBus = eventBus;
+        this.statistics = new MessageStatistics(messageDAO);
+        this.trending = new TrendingTracker();
     }
 
     /**
@@ -37,13 +68,29 @@ public class MessageService {
      */
     public Message createMessage(Message message) {
         // Validate message requirements
-        if(message.getMessage_text().isBlank() || 
-           message.getMessage_text().length() > 255 || 
+        if(!isValidText(message.getMessage_text()) ||
            accountService.getAccountById(message.getPosted_by()) == null) {
             return null;
         }
         
-        return messageDAO.insertMessage(message);
+        Message createdMessage = statistics.counting(() -> {
+            Message inserted = messageDAO.insertMessage(message);
+            statistics.recordCreated(inserted);
+            return inserted;
+        });
+        invalidate(createdMessage);
+        trending.record(createdMessage);
+        publish(MessageEvent.Type.CREATED, createdMessage);
+        return createdMessage;
+    }
+
+    /**
+     * Checks the message text rules shared by create and update
+     * @param message_text The text to check
+     * @return true if the text is not blank and at most 255 characters
+     */
+    public static boolean isValidText(String message_text) {
+        return message_text != null && !message_text.isBlank() && message_text.length() <= 255;
     }
 
     /**
@@ -60,7 +107,56 @@ public class MessageService {
      * @return The Message object if found, null otherwise
      */
     public Message getMessageById(int message_id) {
-        return messageDAO.getMessageById(message_id);
+        return messageCache.get(message_id,
+                () -> messageLookups.execute(message_id,
+                        () -> ReadConsistency.latest(() -> messageDAO.getMessageById(message_id))));
+    }
+
+    /**
+     * Retrieves several messages, answering from the cache where possible and fetching the rest in one query
+     * @param message_ids The IDs of the messages to retrieve
+     * @return The messages in the same order as the IDs, with null for each ID that does not exist
+     */
+    public List<Message> getMessagesByIds(List<Integer> message_ids) {
+        List<Message> messages = new ArrayList<>(message_ids.size());
+        List<Integer> misses = new ArrayList<>();
+        for(Integer message_id : message_ids) {
+            Message message = messageCache.get(message_id);
+            messages.add(message);
+            if(message == null) {
+                misses.add(message_id);
+            }
+        }
+        if(misses.isEmpty()) {
+            return messages;
+        }
+
+        long observedGeneration = messageCache.getGeneration();
+        Map<Integer, Message> fetched = new HashMap<>();
+        for(Message message : ReadConsistency.latest(() -> messageDAO.getMessagesByIds(misses))) {
+            fetched.put(message.getMessage_id(), message);
+            messageCache.putIfCurrent(message.getMessage_id(), message, observedGeneration);
+        }
+        for(int i = 0; i < messages.size(); i++) {
+            if(messages.get(i) == null) {
+                messages.set(i, fetched.get(message_ids.get(i)));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Loads the most recently posted messages into the cache ahead of their first lookup
+     * @param limit Maximum number of messages to load
+     * @return The loaded messages, newest first
+     */
+    public List<Message> preloadRecent(int limit) {
+        long observedGeneration = messageCache.getGeneration();
+        List<Message> recent = messageDAO.getRecentMessages(limit);
+        for(Message message : recent) {
+            messageCache.putIfCurrent(message.getMessage_id(), message, observedGeneration);
+        }
+        return recent;
     }
 
     /**
@@ -69,7 +165,14 @@ public class MessageService {
      * @return The deleted Message object if found and deleted, null otherwise
      */
     public Message deleteMessage(int message_id) {
-        return messageDAO.deleteMessage(message_id);
+        Message deletedMessage = statistics.counting(() -> {
+            Message deleted = messageDAO.deleteMessage(message_id);
+            statistics.recordDeleted(deleted);
+            return deleted;
+        });
+        invalidate(deletedMessage);
+        publish(MessageEvent.Type.DELETED, deletedMessage);
+        return deletedMessage;
     }
 
     /**
@@ -79,12 +182,37 @@ public class MessageService {
      * @return Updated Message object if successful, null otherwise
      */
     public Message updateMessage(int message_id, String message_text) {
+        return updateMessage(message_id, message_text, null);
+    }
+
+    /**
+     * Updates a message's text with validation, if the text is still at the version the edit was based on
+     * @param message_id The ID of the message to update
+     * @param message_text The new message text
+     * @param expectedVersion The version the edit was based on, or null to edit whatever version is current
+     * @return Updated message with its new version if successful, null otherwise
+     * @throws ConcurrentModificationException if the message has moved on from the expected version
+     */
+    public VersionedMessage updateMessage(int message_id, String message_text, Integer expectedVersion) {
         // Validate new message text
-        if(message_text.isBlank() || message_text.length() > 255) {
+        if(!isValidText(message_text)) {
             return null;
         }
         
-        return messageDAO.updateMessage(message_id, message_text);
+        VersionedMessage updatedMessage = messageDAO.updateMessage(message_id, message_text, expectedVersion);
+        invalidate(updatedMessage);
+        publish(MessageEvent.Type.UPDATED, updatedMessage);
+        return updatedMessage;
+    }
+
+    /**
+     * Retrieves the versions of a message's text, rebuilt from stored deltas only as far back as asked
+     * @param message_id The ID of the message
+     * @param limit Maximum number of versions to return
+     * @return The versions, newest first, or null if the message does not exist
+     */
+    public List<MessageRevision> getMessageHistory(int message_id, int limit) {
+        return messageDAO.getMessageHistory(message_id, limit);
     }
 
     /**
@@ -93,6 +221,72 @@ public class MessageService {
      * @return List of messages posted by the user
      */
     public List<Message> getMessagesByUser(int account_id) {
-        return messageDAO.getMessagesByUser(account_id);
+        return userMessageLookups.execute(account_id,
+                () -> ReadConsistency.latest(() -> messageDAO.getMessagesByUser(account_id)));
+    }
+
+    /**
+     * @return The incrementally maintained message counts
+     */
+    public MessageStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return The sketches of recently trending terms and posters
+     */
+    public TrendingTracker getTrending() {
+        return trending;
+    }
+
+    /**
+     * @return The bus that message changes are published to
+     */
+    public MessageEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Reports how many lookups ran against the database and how many were coalesced onto a running lookup
+     * @return Metric name to value
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("message.cache.hits", messageCache.getHits());
+        metrics.put("message.cache.misses", messageCache.getMisses());
+        metrics.put("message.cache.size", (long) messageCache.size());
+        metrics.put("message.lookups.executed", messageLookups.getExecutions());
+        metrics.put("message.lookups.coalesced", messageLookups.getCoalesced());
+        metrics.put("message.user.lookups.executed", userMessageLookups.getExecutions());
+        metrics.put("message.user.lookups.coalesced", userMessageLookups.getCoalesced());
+        metrics.put("events.published", eventBus.getPublished());
+        metrics.put("events.delivered", eventBus.getDelivered());
+        metrics.put("events.subscribers", (long) eventBus.getSubscriberCount());
+        metrics.put("events.subscribers.dropped", eventBus.getDropped());
+        metrics.put("events.writes.stalled", eventBus.getStalledWrites());
+        return metrics;
+    }
+
+    /**
+     * Drops cached state for a written message and keeps readers that arrive after the write from joining a lookup
+     * that started before it
+     * @param message The written message, or null if the write did not happen
+     */
+    private void invalidate(Message message) {
+        if(message == null) return;
+        messageCache.invalidate(message.getMessage_id());
+        messageLookups.forget(message.getMessage_id());
+        userMessageLookups.forget(message.getPosted_by());
+    }
+
+    /**
+     * Publishes a change to stream subscribers
+     * @param type What happened to the message
+     * @param message The written message, or null if the write did not happen
+     */
+    private void publish(MessageEvent.Type type, Message message) {
+        if(message != null) {
+            eventBus.publish(type, message);
+        }
     }
-}
\ No newline at end of file
+}
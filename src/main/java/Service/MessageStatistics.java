@@ -0,0 +1,176 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.AppConfig;
+import Util.ReadConsistency;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Message counters kept up to date by MessageService, so statistics queries never scan the message table.
+ *
+ * Counts are held per account and per hour of time_posted_epoch in LongAdders, which stay cheap under concurrent
+ * writes. They are seeded on first use with one GROUP BY query per shard and then adjusted on every create and
+ * delete. Only the newest stats.hour.buckets hours are kept, and time_posted_epoch is supplied by clients, so hours
+ * after the current one are never bucketed and a message older than the kept hours does not recreate its bucket.
+ * Either would otherwise push the live hours out.
+ *
+ * Writes that overlap seeding would be counted twice (once by the query, once incrementally) or not at all, so until
+ * seeding has finished writes run under a shared lock that seeding takes exclusively. Afterwards the lock is skipped.
+ */
+public class MessageStatistics {
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final MessageDAO messageDAO;
+    private final int maxHourBuckets;
+    private final ConcurrentHashMap<Integer, LongAdder> messagesByAccount = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, LongAdder> messagesByHour = new ConcurrentSkipListMap<>();
+    private final LongAdder totalMessages = new LongAdder();
+    private final ReentrantReadWriteLock seedLock = new ReentrantReadWriteLock();
+    private volatile boolean seeded;
+
+    /**
+     * @param messageDAO The DAO used to seed the counters
+     */
+    public MessageStatistics(MessageDAO messageDAO) {
+        this(messageDAO, AppConfig.getInt("stats.hour.buckets", 24 * 7));
+    }
+
+    /**
+     * @param messageDAO The DAO used to seed the counters
+     * @param maxHourBuckets Number of hourly counts kept
+     */
+    public MessageStatistics(MessageDAO messageDAO, int maxHourBuckets) {
+        this.messageDAO = messageDAO;
+        this.maxHourBuckets = maxHourBuckets;
+    }
+
+    /**
+     * Runs a message write so that its effect is counted exactly once
+     * @param write The write, which must call recordCreated or recordDeleted for what it changed
+     * @return The write's result
+     */
+    public <T> T counting(Supplier<T> write) {
+        if(seeded) return write.get();
+        seedLock.readLock().lock();
+        try {
+            return write.get();
+        } finally {
+            seedLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts a created message
+     * @param message The message, or null if the write did not happen
+     */
+    public void recordCreated(Message message) {
+        if(message == null || !seeded) return; // seeding will count it
+        add(message, 1);
+    }
+
+    /**
+     * Counts a deleted message
+     * @param message The message, or null if the write did not happen
+     */
+    public void recordDeleted(Message message) {
+        if(message == null || !seeded) return;
+        add(message, -1);
+    }
+
+    private void add(Message message, long delta) {
+        totalMessages.add(delta);
+        messagesByAccount.computeIfAbsent(message.getPosted_by(), account_id -> new LongAdder()).add(delta);
+        long hour = hourOf(message.getTime_posted_epoch());
+        if(hour > hourOf(System.currentTimeMillis() / 1000)) return;
+        if(delta > 0) {
+            Map.Entry<Long, LongAdder> newest = messagesByHour.lastEntry();
+            if(newest != null && hour <= newest.getKey() - maxHourBuckets * SECONDS_PER_HOUR) return;
+            messagesByHour.computeIfAbsent(hour, key -> new LongAdder()).add(delta);
+            long oldestKept = messagesByHour.lastKey() - (maxHourBuckets - 1) * SECONDS_PER_HOUR;
+            messagesByHour.headMap(oldestKept).clear();
+        } else {
+            // An hour that has been rolled off stays rolled off
+            LongAdder count = messagesByHour.get(hour);
+            if(count != null) count.add(delta);
+        }
+    }
+
+    private static long hourOf(long epoch) {
+        return Math.floorDiv(epoch, SECONDS_PER_HOUR) * SECONDS_PER_HOUR;
+    }
+
+    /**
+     * @param account_id An account
+     * @return Number of messages the account has posted
+     */
+    public long getMessageCount(int account_id) {
+        ensureSeeded();
+        LongAdder count = messagesByAccount.get(account_id);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return Number of messages stored
+     */
+    public long getTotalMessages() {
+        ensureSeeded();
+        return totalMessages.sum();
+    }
+
+    /**
+     * @return Number of accounts with at least one message
+     */
+    public long getActiveAccounts() {
+        ensureSeeded();
+        long active = 0;
+        for(LongAdder count : messagesByAccount.values()) {
+            if(count.sum() > 0) active++;
+        }
+        return active;
+    }
+
+    /**
+     * @return Message counts per hour of posting, oldest first, as {"hour_epoch": ..., "count": ...} entries
+     */
+    public List<Map<String, Long>> getMessagesPerHour() {
+        ensureSeeded();
+        List<Map<String, Long>> hours = new ArrayList<>(messagesByHour.size());
+        for(Map.Entry<Long, LongAdder> bucket : messagesByHour.entrySet()) {
+            Map<String, Long> hour = new LinkedHashMap<>();
+            hour.put("hour_epoch", bucket.getKey());
+            hour.put("count", bucket.getValue().sum());
+            hours.add(hour);
+        }
+        return hours;
+    }
+
+    private void ensureSeeded() {
+        if(seeded) return;
+        seedLock.writeLock().lock();
+        try {
+            if(seeded) return;
+            Map<Integer, Long> byAccount = ReadConsistency.latest(messageDAO::countMessagesByAccount);
+            Map<Long, Long> byHour = ReadConsistency.latest(() -> messageDAO.countMessagesByHour(maxHourBuckets,
+                    hourOf(System.currentTimeMillis() / 1000) + SECONDS_PER_HOUR));
+            for(Map.Entry<Integer, Long> account : byAccount.entrySet()) {
+                messagesByAccount.computeIfAbsent(account.getKey(), account_id -> new LongAdder()).add(account.getValue());
+                totalMessages.add(account.getValue());
+            }
+            for(Map.Entry<Long, Long> hour : byHour.entrySet()) {
+                messagesByHour.computeIfAbsent(hour.getKey(), key -> new LongAdder()).add(hour.getValue());
+            }
+            seeded = true;
+        } finally {
+            seedLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Maps account timelines to the connections subscribed to them.
+ * Each timeline's subscriber set is a concurrent set, so subscribing is constant time however many connections
+ * follow the account, and fanning a message out iterates it without locking. Subscribing and unsubscribing change
+ * the set inside the map's per-key compute, so dropping an empty timeline can never race with a new subscriber.
+ * @param <C> The connection type
+ */
+public class TimelineSubscriptionRegistry<C> {
+    private final ConcurrentHashMap<Integer, Set<C>> timelines = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribes a connection to an account's timeline
+     * @param account_id The account to follow
+     * @param connection The subscribing connection
+     * @return true if the connection was not already subscribed
+     */
+    public boolean subscribe(int account_id, C connection) {
+        boolean[] added = new boolean[1];
+        timelines.compute(account_id, (id, subscribers) -> {
+            if(subscribers == null) {
+                subscribers = ConcurrentHashMap.newKeySet();
+            }
+            added[0] = subscribers.add(connection);
+            return subscribers;
+        });
+        return added[0];
+    }
+
+    /**
+     * Unsubscribes a connection from an account's timeline, dropping the timeline once nobody follows it
+     * @param account_id The account to stop following
+     * @param connection The connection
+     * @return true if the connection was subscribed
+     */
+    public boolean unsubscribe(int account_id, C connection) {
+        boolean[] removed = new boolean[1];
+        timelines.computeIfPresent(account_id, (id, subscribers) -> {
+            removed[0] = subscribers.remove(connection);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Visits every connection subscribed to an account's timeline. Connections subscribing or unsubscribing
+     * concurrently may or may not be visited.
+     * @param account_id The account whose timeline changed
+     * @param action Called once per subscribed connection
+     */
+    public void forEachSubscriber(int account_id, Consumer<C> action) {
+        Set<C> subscribers = timelines.get(account_id);
+        if(subscribers != null) {
+            subscribers.forEach(action);
+        }
+    }
+
+    /**
+     * @return Number of timelines with at least one subscriber
+     */
+    public int getTimelineCount() {
+        return timelines.size();
+    }
+}
@@ -0,0 +1,173 @@
+package Service;
+
+import Util.AppConfig;
+import Util.RevocationList;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks self-validating access tokens.
+ *
+ * A token reads ACCOUNT_ID.EXPIRES.TOKEN_ID.SIGNATURE, where EXPIRES is in epoch seconds, TOKEN_ID is random and the
+ * signature is a base64url HMAC-SHA256 of the first three fields. Checking a token needs no database or session
+ * lookup, only the HMAC and a read of the in-memory revocation list.
+ *
+ * The signing key comes from auth.token.secret (base64) so several processes can accept each other's tokens; without
+ * it a random key is generated and tokens stop working when the process restarts.
+ */
+public class TokenService {
+    /**
+     * What a valid token says about its bearer.
+     */
+    public static class Claims {
+        private final int account_id;
+        private final long expiresEpoch;
+        private final long tokenId;
+
+        Claims(int account_id, long expiresEpoch, long tokenId) {
+            this.account_id = account_id;
+            this.expiresEpoch = expiresEpoch;
+            this.tokenId = tokenId;
+        }
+
+        /**
+         * @return The account the token was issued to
+         */
+        public int getAccount_id() {
+            return account_id;
+        }
+
+        /**
+         * @return When the token expires, in epoch seconds
+         */
+        public long getExpiresEpoch() {
+            return expiresEpoch;
+        }
+    }
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final long ttlSeconds;
+    private final SecureRandom random = new SecureRandom();
+    private final RevocationList revoked = new RevocationList();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Default constructor reads the key and lifetime from AppConfig
+     */
+    public TokenService() {
+        this(secretFromConfig(), AppConfig.getLong("auth.token.ttl.seconds", 3600));
+    }
+
+    /**
+     * @param secret The HMAC key
+     * @param ttlSeconds How long issued tokens stay valid
+     */
+    public TokenService(byte[] secret, long ttlSeconds) {
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    private static byte[] secretFromConfig() {
+        String configured = AppConfig.get("auth.token.secret");
+        if(configured != null) {
+            return Base64.getDecoder().decode(configured);
+        }
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * Issues a token for an authenticated account
+     * @param account_id The account
+     * @return The token
+     */
+    public String issue(int account_id) {
+        long expiresEpoch = System.currentTimeMillis() / 1000 + ttlSeconds;
+        String payload = account_id + "." + expiresEpoch + "." + Long.toUnsignedString(random.nextLong());
+        issued.increment();
+        return payload + "." + sign(payload);
+    }
+
+    /**
+     * Checks a token's signature, expiry and revocation
+     * @param token The token presented by a client
+     * @return The token's claims, or null if it is malformed, forged, expired or revoked
+     */
+    public Claims verify(String token) {
+        Claims claims = parse(token);
+        if(claims == null || claims.expiresEpoch <= System.currentTimeMillis() / 1000 || revoked.isRevoked(claims.tokenId)) {
+            rejected.increment();
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * Revokes a token before it expires
+     * @param token The token to revoke
+     * @return true if the token was valid and is now revoked
+     */
+    public boolean revoke(String token) {
+        Claims claims = verify(token);
+        if(claims == null) return false;
+        revoked.revoke(claims.tokenId, claims.expiresEpoch);
+        return true;
+    }
+
+    private Claims parse(String token) {
+        if(token == null) return null;
+        int signatureStart = token.lastIndexOf('.');
+        if(signatureStart < 0) return null;
+        String payload = token.substring(0, signatureStart);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        if(!MessageDigest.isEqual(expected, token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        String[] fields = payload.split("\\.");
+        if(fields.length != 3) return null;
+        try {
+            return new Claims(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), Long.parseUnsignedLong(fields[2]));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String sign(String payload) {
+        byte[] signature = macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reports token activity
+     * @return Metric name to value
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("auth.tokens.issued", issued.sum());
+        metrics.put("auth.tokens.rejected", rejected.sum());
+        metrics.put("auth.tokens.revoked", (long) revoked.size());
+        return metrics;
+    }
+}
@@ -0,0 +1,128 @@
+package Service;
+
+import DAO.MessageDAO;
+import Util.AppConfig;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Background job that physically removes messages deleted with MessageDAO.deleteMessage, which only marks them.
+ *
+ * Every compaction.interval.ms it purges each shard in batches of compaction.batch.size, pausing
+ * compaction.batch.pause.ms between batches so it never holds the database for long. Tombstones younger than
+ * compaction.grace.seconds are left alone. A run stops early, to be resumed by the next, as soon as the server
+ * reports it is busy, so purging happens while load is low.
+ */
+public class TombstoneCompactor {
+    private final MessageDAO messageDAO;
+    private final BooleanSupplier busy;
+    private final long intervalMillis;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final long graceSeconds;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastRunMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Reads the schedule and batch sizes from AppConfig
+     * @param messageDAO The DAO to purge with
+     * @param busy Reports whether the server is too loaded to compact right now
+     */
+    public TombstoneCompactor(MessageDAO messageDAO, BooleanSupplier busy) {
+        this.messageDAO = messageDAO;
+        this.busy = busy;
+        this.intervalMillis = Math.max(1, AppConfig.getLong("compaction.interval.ms", 5_000));
+        this.batchSize = Math.max(1, AppConfig.getInt("compaction.batch.size", 500));
+        this.pauseMillis = Math.max(0, AppConfig.getLong("compaction.batch.pause.ms", 50));
+        this.graceSeconds = Math.max(0, AppConfig.getLong("compaction.grace.seconds", 60));
+    }
+
+    /**
+     * Starts compacting on a daemon thread; does nothing if already started
+     */
+    public synchronized void start() {
+        if(scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tombstone-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::compact, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops compacting; a batch in progress finishes
+     */
+    public synchronized void stop() {
+        if(scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * @return Whether compaction is scheduled
+     */
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Runs one compaction pass over every shard
+     * @return Number of messages removed
+     */
+    public int compact() {
+        long start = System.nanoTime();
+        runs.increment();
+        long deletedBefore = System.currentTimeMillis() / 1000 - graceSeconds;
+        int removed = 0;
+        try {
+            for(int shard = 0; shard < messageDAO.getShardCount(); shard++) {
+                while(true) {
+                    if(busy.getAsBoolean()) {
+                        deferred.increment();
+                        return removed;
+                    }
+                    int count = messageDAO.purgeDeleted(shard, deletedBefore, batchSize);
+                    batches.increment();
+                    purged.add(count);
+                    removed += count;
+                    if(count < batchSize) break;
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        } catch(SQLException e) {
+            failures.increment();
+            System.out.println(e.getMessage());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lastRunMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return removed;
+    }
+
+    /**
+     * @return Counters describing compaction so far
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("compaction.runs", runs.sum());
+        metrics.put("compaction.batches", batches.sum());
+        metrics.put("compaction.purged", purged.sum());
+        metrics.put("compaction.deferred.busy", deferred.sum());
+        metrics.put("compaction.failures", failures.sum());
+        metrics.put("compaction.last.run.ms", lastRunMillis);
+        return metrics;
+    }
+}
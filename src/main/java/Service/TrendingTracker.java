@@ -0,0 +1,139 @@
+package Service;
+
+import Model.Message;
+import Util.AppConfig;
+import Util.SlidingTopK;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Most used terms and most active posters among recently created messages, over 1 minute, 1 hour and 24 hour windows.
+ *
+ * MessageService feeds every created message in; answers come from SlidingTopK sketches held in memory, so reads
+ * never query the database and memory stays fixed however many messages or distinct terms there are. Counts are
+ * estimates that may run slightly high. Windows follow the server clock at creation, not time_posted_epoch.
+ */
+public class TrendingTracker {
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "the", "and", "for", "are", "but", "not", "you", "all", "any", "can", "her", "was", "one", "our", "out",
+            "has", "have", "had", "his", "him", "its", "that", "this", "with", "from", "they", "will", "what", "just",
+            "your", "about", "there", "their", "would", "been", "were", "when", "who", "which"));
+    private static final int MIN_TERM_LENGTH = 3;
+
+    /**
+     * The windows trends are reported over.
+     */
+    public enum Window {
+        MINUTE("1m", 60_000L, 6),
+        HOUR("1h", 3_600_000L, 12),
+        DAY("24h", 86_400_000L, 24);
+
+        private final String label;
+        private final long millis;
+        private final int slots;
+
+        Window(String label, long millis, int slots) {
+            this.label = label;
+            this.millis = millis;
+            this.slots = slots;
+        }
+
+        /**
+         * @return The window's name in requests and responses, e.g. 1h
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @param label A window name such as 1h
+         * @return The window, or null if there is none by that name
+         */
+        public static Window fromLabel(String label) {
+            for(Window window : values()) {
+                if(window.label.equals(label)) return window;
+            }
+            return null;
+        }
+    }
+
+    private final Map<Window, SlidingTopK<String>> terms = new LinkedHashMap<>();
+    private final Map<Window, SlidingTopK<Integer>> posters = new LinkedHashMap<>();
+
+    /**
+     * Default constructor reads sketch sizes from AppConfig
+     */
+    public TrendingTracker() {
+        int candidates = AppConfig.getInt("trending.candidates", 100);
+        int width = AppConfig.getInt("trending.sketch.width", 1024);
+        int depth = AppConfig.getInt("trending.sketch.depth", 4);
+        for(Window window : Window.values()) {
+            terms.put(window, new SlidingTopK<>(window.millis, window.slots, candidates, width, depth));
+            posters.put(window, new SlidingTopK<>(window.millis, window.slots, candidates, width, depth));
+        }
+    }
+
+    /**
+     * Counts a newly created message
+     * @param message The message, or null if the write did not happen
+     */
+    public void record(Message message) {
+        if(message == null) return;
+        long now = System.currentTimeMillis();
+        Set<String> messageTerms = terms(message.getMessage_text());
+        for(Window window : Window.values()) {
+            posters.get(window).add(message.getPosted_by(), now);
+            SlidingTopK<String> windowTerms = terms.get(window);
+            for(String term : messageTerms) {
+                windowTerms.add(term, now);
+            }
+        }
+    }
+
+    /**
+     * @param window The window to report
+     * @param limit Maximum number of terms and of posters
+     * @return {"window": ..., "terms": [{"term": ..., "count": ...}], "posters": [{"account_id": ..., "count": ...}]}
+     */
+    public Map<String, Object> getTrending(Window window, int limit) {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> topTerms = new ArrayList<>();
+        for(Map.Entry<String, Long> term : terms.get(window).top(limit, now)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("term", term.getKey());
+            entry.put("count", term.getValue());
+            topTerms.add(entry);
+        }
+        List<Map<String, Object>> topPosters = new ArrayList<>();
+        for(Map.Entry<Integer, Long> poster : posters.get(window).top(limit, now)) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("account_id", poster.getKey());
+            entry.put("count", poster.getValue());
+            topPosters.add(entry);
+        }
+        Map<String, Object> trending = new LinkedHashMap<>();
+        trending.put("window", window.label);
+        trending.put("terms", topTerms);
+        trending.put("posters", topPosters);
+        return trending;
+    }
+
+    /**
+     * Splits message text into lower case words, leaving out short and common words. A word repeated within one
+     * message counts once.
+     */
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for(String word : text.toLowerCase().split("[^\\p{L}\\p{N}#@_]+")) {
+            if(word.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+}
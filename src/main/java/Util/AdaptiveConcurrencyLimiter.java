@@ -0,0 +1,101 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global limit on concurrently executing database work that adapts to observed latency.
+ * The limit grows by one after a full window of healthy calls and shrinks by 10% whenever a call takes more than
+ * the configured multiple of the best recent latency (additive increase, multiplicative decrease). Requests
+ * beyond the limit are shed immediately rather than queued behind a slow database.
+ */
+public class AdaptiveConcurrencyLimiter {
+    // Calls faster than this never count as slow, so jitter on sub-millisecond queries does not shrink the limit
+    private static final long LATENCY_FLOOR_NANOS = 2_000_000L;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger healthySamples = new AtomicInteger();
+    private final AtomicLong baselineNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong samples = new AtomicLong();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param initialLimit Starting concurrency limit
+     * @param minLimit Lowest the limit may shrink to
+     * @param maxLimit Highest the limit may grow to
+     * @param tolerance How many times the baseline latency a call may take before the limit shrinks
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    /**
+     * Attempts to start a unit of work
+     * @return true if the work may proceed, in which case release must be called when it finishes
+     */
+    public boolean tryAcquire() {
+        while(true) {
+            int current = inFlight.get();
+            if(current >= limit.get()) {
+                shed.increment();
+                return false;
+            }
+            if(inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finishes a unit of work and feeds its latency into the limit
+     * @param latencyNanos How long the work took
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+
+        // The baseline is the best latency seen, reset periodically so it can follow a permanently slower database
+        if(samples.incrementAndGet() % 10_000 == 0) {
+            baselineNanos.set(latencyNanos);
+        }
+        baselineNanos.accumulateAndGet(latencyNanos, Math::min);
+
+        int current = limit.get();
+        if(latencyNanos > Math.max(LATENCY_FLOOR_NANOS, baselineNanos.get() * tolerance)) {
+            healthySamples.set(0);
+            limit.compareAndSet(current, Math.max(minLimit, (int) (current * 0.9)));
+        } else if(healthySamples.incrementAndGet() >= current) {
+            healthySamples.set(0);
+            limit.compareAndSet(current, Math.min(maxLimit, current + 1));
+        }
+    }
+
+    /**
+     * @return The current concurrency limit
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
+    /**
+     * @return Number of units of work currently running
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Number of requests shed because the limit was reached
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+}
@@ -0,0 +1,186 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Central lookup for tunable application settings.
+ * A setting such as "compression.level" is resolved from the JVM system property of the same name first,
+ * then from the environment variable COMPRESSION_LEVEL, then from the configuration file, then from the selected
+ * profile, and finally falls back to the supplied default.
+ *
+ * The configuration file is a properties file named by config.file (default socialmedia.properties in the working
+ * directory, skipped if missing). A profile is a bundled properties file, profiles/NAME.properties on the classpath,
+ * selected with config.profile; it provides defaults for a whole scenario such as in-memory benchmarking.
+ *
+ * A configured value that is not a valid number or boolean is a mistake, not a request for the default, so the typed
+ * lookups throw IllegalArgumentException naming the setting; settings are read while components are built, so a
+ * typo stops the application at startup instead of silently running with the default.
+ */
+public class AppConfig {
+    private static volatile Properties fileSettings;
+    // Environment lookup, replaceable so tests can supply variables the JVM was not started with
+    static volatile Function<String, String> environment = System::getenv;
+
+    private AppConfig() {
+    }
+
+    /**
+     * Looks up a raw setting value
+     * @param key The dotted setting name
+     * @return The configured value, or null if the setting is not configured
+     */
+    public static String get(String key) {
+        String value = System.getProperty(key);
+        if(value == null) {
+            value = environment.apply(toEnvName(key));
+        }
+        if(value == null) {
+            value = getFileSettings().getProperty(key);
+        }
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * @return The settings of the configuration file layered over the selected profile, loaded on first use
+     */
+    private static Properties getFileSettings() {
+        Properties settings = fileSettings;
+        if(settings == null) {
+            settings = loadFileSettings();
+        }
+        return settings;
+    }
+
+    private static synchronized Properties loadFileSettings() {
+        if(fileSettings != null) return fileSettings;
+        Properties profile = new Properties();
+        String profileName = lookupOutsideFiles("config.profile");
+        if(profileName != null) {
+            String resource = "profiles/" + profileName + ".properties";
+            try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream(resource)) {
+                if(in == null) {
+                    System.out.println("Unknown configuration profile " + profileName);
+                } else {
+                    profile.load(in);
+                }
+            } catch(IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        Properties settings = new Properties(profile);
+        String fileName = lookupOutsideFiles("config.file");
+        Path file = Paths.get(fileName == null ? "socialmedia.properties" : fileName);
+        if(Files.isReadable(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                settings.load(reader);
+            } catch(IOException e) {
+                System.out.println(e.getMessage());
+            }
+        } else if(fileName != null) {
+            System.out.println("Configuration file not found: " + file);
+        }
+        fileSettings = settings;
+        return settings;
+    }
+
+    /**
+     * Forgets the loaded configuration file and profile, so the next lookup loads them again
+     */
+    static synchronized void reload() {
+        fileSettings = null;
+    }
+
+    /**
+     * The settings that choose the files can only come from system properties or the environment
+     */
+    private static String lookupOutsideFiles(String key) {
+        String value = System.getProperty(key);
+        if(value == null) {
+            value = environment.apply(toEnvName(key));
+        }
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Looks up a string setting
+     * @param key The dotted setting name
+     * @param defaultValue The value to use when the setting is not configured
+     * @return The configured value or the default
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Looks up an integer setting
+     * @param key The dotted setting name
+     * @param defaultValue The value to use when the setting is not configured
+     * @return The configured value or the default
+     * @throws IllegalArgumentException if the configured value is not an integer
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        if(value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch(NumberFormatException e) {
+            throw invalid(key, value, "an integer");
+        }
+    }
+
+    /**
+     * Looks up a long setting
+     * @param key The dotted setting name
+     * @param defaultValue The value to use when the setting is not configured
+     * @return The configured value or the default
+     * @throws IllegalArgumentException if the configured value is not an integer
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        if(value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch(NumberFormatException e) {
+            throw invalid(key, value, "an integer");
+        }
+    }
+
+    /**
+     * Looks up a boolean setting
+     * @param key The dotted setting name
+     * @param defaultValue The value to use when the setting is not configured
+     * @return The configured value or the default
+     * @throws IllegalArgumentException if the configured value is neither true nor false
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        if(value == null) return defaultValue;
+        if(value.equalsIgnoreCase("true")) return true;
+        if(value.equalsIgnoreCase("false")) return false;
+        throw invalid(key, value, "true or false");
+    }
+
+    private static IllegalArgumentException invalid(String key, String value, String expected) {
+        return new IllegalArgumentException("Invalid value for " + key + ": " + value + " (expected " + expected + ")");
+    }
+
+    /**
+     * Converts a dotted setting name into its environment variable form, e.g. compression.min.size to
+     * COMPRESSION_MIN_SIZE
+     * @param key The dotted setting name
+     * @return The environment variable name
+     */
+    static String toEnvName(String key) {
+        return key.toUpperCase().replace('.', '_').replace('-', '_');
+    }
+}
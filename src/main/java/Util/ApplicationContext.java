@@ -0,0 +1,185 @@
+package Util;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Service.AccountService;
+import Service.BulkImporter;
+import Service.CredentialVerifier;
+import Service.MessageEventBus;
+import Service.MessageExporter;
+import Service.MessageService;
+import Service.TokenService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Creates and wires the application's components. Each one is built on first use and then shared, so there is one
+ * AccountDAO, one MessageDAO and one AccountService per context however many services need them, and nothing, not
+ * even the database, is opened until something asks for it. Startup is then mostly class loading, which a
+ * class-data-sharing archive (see Benchmark.StartupBenchmark) makes cheap.
+ *
+ * suspend() and resume() bracket a process checkpoint, or any pause during which the process must not hold database
+ * files open: suspend stops the registered background work and closes every connection pool, shutting file
+ * databases down cleanly, and resume restarts the background work; pools reopen on their next use. close() is the
+ * final version of suspend, for shutdown: it also lets queued events and replication finish first.
+ */
+public class ApplicationContext {
+    /**
+     * Background work that must pause while the context is suspended.
+     */
+    public interface Lifecycle {
+        /**
+         * Stops work that would touch the database or open files
+         */
+        void suspend();
+
+        /**
+         * Restarts the work stopped by suspend
+         */
+        void resume();
+    }
+
+    private final Lazy<AccountDAO> accountDAO = new Lazy<>(AccountDAO::new);
+    private final Lazy<MessageDAO> messageDAO = new Lazy<>(MessageDAO::new);
+    private final Lazy<CredentialVerifier> credentialVerifier = new Lazy<>(CredentialVerifier::new);
+    private final Lazy<MessageEventBus> eventBus = new Lazy<>(MessageEventBus::new);
+    private final Lazy<AccountService> accountService =
+            new Lazy<>(() -> new AccountService(getAccountDAO(), getCredentialVerifier()));
+    private final Lazy<MessageService> messageService =
+            new Lazy<>(() -> new MessageService(getMessageDAO(), getAccountService(), getEventBus()));
+    private final Lazy<TokenService> tokenService = new Lazy<>(TokenService::new);
+    private final Lazy<MessageExporter> messageExporter = new Lazy<>(() -> new MessageExporter(getMessageDAO()));
+    private final Lazy<BulkImporter> bulkImporter = new Lazy<>(() -> new BulkImporter(getAccountDAO(), getMessageDAO()));
+    private final List<Lifecycle> lifecycles = new ArrayList<>();
+    private boolean suspended;
+
+    public AccountDAO getAccountDAO() {
+        return accountDAO.get();
+    }
+
+    public MessageDAO getMessageDAO() {
+        return messageDAO.get();
+    }
+
+    public CredentialVerifier getCredentialVerifier() {
+        return credentialVerifier.get();
+    }
+
+    public MessageEventBus getEventBus() {
+        return eventBus.get();
+    }
+
+    public AccountService getAccountService() {
+        return accountService.get();
+    }
+
+    public MessageService getMessageService() {
+        return messageService.get();
+    }
+
+    public TokenService getTokenService() {
+        return tokenService.get();
+    }
+
+    public MessageExporter getMessageExporter() {
+        return messageExporter.get();
+    }
+
+    public BulkImporter getBulkImporter() {
+        return bulkImporter.get();
+    }
+
+    /**
+     * Registers background work to stop on suspend and restart on resume
+     * @param lifecycle The work
+     */
+    public synchronized void register(Lifecycle lifecycle) {
+        lifecycles.add(lifecycle);
+    }
+
+    /**
+     * Stops registered background work, newest first, then closes the database. Requests must have been drained
+     * first; one still running would reopen a pool.
+     */
+    public synchronized void suspend() {
+        if(suspended) return;
+        for(int i = lifecycles.size() - 1; i >= 0; i--) {
+            lifecycles.get(i).suspend();
+        }
+        ConnectionUtil.close();
+        suspended = true;
+    }
+
+    /**
+     * Shuts the context down once requests have stopped: stops registered background work, delivers events already
+     * published, stops password hashing, waits for replicas to apply every committed change, then closes the database
+     * @param timeoutMillis How long to wait for events and replication in all
+     * @return true if events and replication were drained in time; the database is closed either way
+     */
+    public synchronized boolean close(long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        for(int i = lifecycles.size() - 1; i >= 0; i--) {
+            lifecycles.get(i).suspend();
+        }
+        boolean drained = true;
+        try {
+            if(eventBus.isCreated()) {
+                drained = eventBus.get().shutdown((deadline - System.nanoTime()) / 1_000_000);
+            }
+            if(credentialVerifier.isCreated()) {
+                credentialVerifier.get().shutdown();
+            }
+            drained &= ConnectionUtil.awaitReplicas(Math.max(0, (deadline - System.nanoTime()) / 1_000_000));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        } finally {
+            ConnectionUtil.close();
+            suspended = true;
+        }
+        return drained;
+    }
+
+    /**
+     * Restarts the background work stopped by suspend
+     */
+    public synchronized void resume() {
+        if(!suspended) return;
+        suspended = false;
+        for(Lifecycle lifecycle : lifecycles) {
+            lifecycle.resume();
+        }
+    }
+
+    /**
+     * A component built by the first get and shared after that
+     */
+    private static final class Lazy<T> implements Supplier<T> {
+        private final Supplier<T> factory;
+        private volatile T instance;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        boolean isCreated() {
+            return instance != null;
+        }
+
+        @Override
+        public T get() {
+            T current = instance;
+            if(current == null) {
+                synchronized(this) {
+                    current = instance;
+                    if(current == null) {
+                        current = factory.get();
+                        instance = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
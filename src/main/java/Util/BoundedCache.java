@@ -0,0 +1,146 @@
+package Util;
+
+import Diagnostics.CacheLookupEvent;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded concurrent cache.
+ * Eviction is approximate: once the cache is over capacity an arbitrary entry is dropped for each insert, which
+ * keeps reads completely lock-free. Loads that overlap an invalidation are not kept, so a value read before a
+ * write can never be cached after it: invalidate bumps the generation before removing the key, and a load checks the
+ * generation again after storing its value, taking the value back out if it moved. Either that second check sees
+ * the invalidation, or the invalidation's remove comes after the store. Each lookup is also reported as a JFR CacheLookupEvent under the cache's name,
+ * when a recording has that event enabled.
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class BoundedCache<K, V> {
+    private final String name;
+    private final ConcurrentHashMap<K, V> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param name Name reported in CacheLookupEvents, e.g. message
+     * @param maxEntries Number of entries kept before older ones are evicted
+     */
+    public BoundedCache(String name, int maxEntries) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Looks up a cached value without loading it
+     * @param key The key
+     * @return The cached value, or null on a miss
+     */
+    public V get(K key) {
+        V value = entries.get(key);
+        if(value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        CacheLookupEvent.record(name, value != null);
+        return value;
+    }
+
+    /**
+     * Returns the cached value, loading and caching it on a miss. Null results are not cached.
+     * @param key The key
+     * @param loader Produces the value on a miss
+     * @return The value, which may be null
+     */
+    public V get(K key, Supplier<V> loader) {
+        V value = get(key);
+        if(value != null) return value;
+        long observedGeneration = generation.get();
+        value = loader.get();
+        putIfCurrent(key, value, observedGeneration);
+        return value;
+    }
+
+    /**
+     * Caches a value that was loaded without get(key, loader), for example in a batch.
+     * @param key The key
+     * @param value The value
+     * @param observedGeneration getGeneration() as read before the value was loaded
+     */
+    public void putIfCurrent(K key, V value, long observedGeneration) {
+        if(value != null && generation.get() == observedGeneration) {
+            put(key, value);
+            if(generation.get() != observedGeneration) {
+                // An invalidation landed between the check and the put
+                entries.remove(key, value);
+            }
+        }
+    }
+
+    /**
+     * Caches a value known to be current, for example one just written
+     * @param key The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        if(entries.put(key, value) == null && entries.size() > maxEntries) {
+            Iterator<K> keys = entries.keySet().iterator();
+            if(keys.hasNext()) {
+                K victim = keys.next();
+                if(!victim.equals(key)) {
+                    entries.remove(victim);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a cached value
+     * @param key The key
+     */
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    /**
+     * Drops every cached value
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * @return A counter that changes on every invalidation, see putIfCurrent
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return Number of cached entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of lookups that missed the cache
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
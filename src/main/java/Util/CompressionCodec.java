@@ -0,0 +1,78 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content codings supported for response compression.
+ * Brotli is not offered: there is no production-quality pure-Java Brotli encoder, only decoders.
+ */
+public enum CompressionCodec {
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String encoding;
+
+    CompressionCodec(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * @return The token used in the Accept-Encoding and Content-Encoding headers
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Finds the codec for a content coding token
+     * @param encoding A content coding such as "gzip"
+     * @return The matching codec, or null if the coding is not supported
+     */
+    public static CompressionCodec fromEncoding(String encoding) {
+        for(CompressionCodec codec : values()) {
+            if(codec.encoding.equalsIgnoreCase(encoding)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compresses a complete payload
+     * @param input The uncompressed bytes
+     * @param level The deflate level, 1 (fastest) to 9 (smallest)
+     * @return The compressed bytes
+     */
+    public byte[] compress(byte[] input, int level) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+        // gzip frames raw deflate data itself, while HTTP "deflate" means the zlib wrapper
+        Deflater deflater = new Deflater(level, this == GZIP);
+        try {
+            OutputStream out = this == GZIP ? new LeveledGzipOutputStream(buffer, deflater) : new DeflaterOutputStream(buffer, deflater);
+            out.write(input);
+            out.close();
+        } catch(IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * GZIPOutputStream does not expose its level, so the deflater is swapped for one with the requested level
+     */
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, Deflater deflater) throws IOException {
+            super(out);
+            this.def.end();
+            this.def = deflater;
+        }
+    }
+}
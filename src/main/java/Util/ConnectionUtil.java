@@ -1,10 +1,18 @@
 package Util;
 
+import Diagnostics.ConnectionAcquireEvent;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
 
@@ -13,15 +21,22 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Message storage may additionally be split across shard databases, see getShardConnection.
+ *
+ * Reads may be served by local read replicas of the main database, see getReadConnection. Writes to the main
+ * database go through beginWrite/commitWrite so that replicas receive them.
+ *
+ * Nothing is opened when the class loads: the connection string, pools and replicas are all created on first use,
+ * and close() releases them again so that the next use reopens them. configure() changes the number of shards and
+ * replicas in between, for tests and tools.
  */
 public class ConnectionUtil {
 
 	/**
-	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * url will represent our connection string. By default the database is stored in
+	 * a file under ./h2; see buildUrl for the settings that change it. Built on first use.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static volatile String url;
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -33,16 +48,121 @@ public class ConnectionUtil {
 
 	/**
 	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Created on first use.
+	 */
+	private static volatile JdbcDataSource pool;
+
+	/**
+	 * Number of databases that messages are spread across. Shard 0 is the main database above, the others are
+	 * separate files next to it. Changing this for an existing data set requires moving messages between shards.
+	 */
+	private static volatile int shardCount = Math.max(1, AppConfig.getInt("message.shards", 1));
+
+	/**
+	 * One bounded connection pool per shard, created on first use. Slots are read without a lock, so they are
+	 * published through the array. Pooled connections must be closed to be returned to their pool.
+	 */
+	private static volatile AtomicReferenceArray<JdbcConnectionPool> shardPools = new AtomicReferenceArray<>(shardCount);
+
+	/**
+	 * Number of read replicas of the main database. 0 sends every read to the main database.
+	 */
+	private static volatile int replicaCount = Math.max(0, AppConfig.getInt("replicas", 0));
+
+	/**
+	 * Committed changes to the main database, in the order replicas apply them
+	 */
+	private static final ReplicationLog replicationLog = new ReplicationLog();
+
+	/**
+	 * Replicas of the main database, created on first use
+	 */
+	private static volatile ReadReplica[] replicas;
+
+	private static final AtomicInteger nextReplica = new AtomicInteger();
+
+	/**
+	 * Trims the replication log once replicas are running
+	 */
+	private static ScheduledExecutorService replicationLogTrimmer;
+
+	/**
+	 * Establishes the credentials for the DataSource on first use
+	 */
+	private static JdbcDataSource getDataSource() {
+		JdbcDataSource current = pool;
+		if (current == null) {
+			synchronized (ConnectionUtil.class) {
+				current = pool;
+				if (current == null) {
+					current = new JdbcDataSource();
+					current.setURL(getUrl());
+					current.setUser(username);
+					current.setPassword(password);
+					pool = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Builds the connection string for one of our databases from the db.* settings:
+	 * db.mode (file or memory), db.directory (default ./h2), db.cache.size (KB),
+	 * db.lock.timeout (ms), db.write.delay (ms), db.max.compact.time (ms) and
+	 * db.url.options for any further H2 settings, e.g. RETENTION_TIME=0;COMPRESS=TRUE.
+	 * @param database the database name, e.g. db or db-shard-1
+	 * @return the JDBC url
+	 */
+	static String buildUrl(String database) {
+		StringBuilder builder = new StringBuilder("jdbc:h2:");
+		if ("memory".equalsIgnoreCase(AppConfig.getString("db.mode", "file"))) {
+			// Keep the database alive while no connection is open
+			builder.append("mem:").append(database).append(";DB_CLOSE_DELAY=-1;");
+		} else {
+			builder.append(getDatabaseDirectory()).append('/').append(database).append(';');
+		}
+		appendSetting(builder, "CACHE_SIZE", AppConfig.get("db.cache.size"));
+		appendSetting(builder, "LOCK_TIMEOUT", AppConfig.get("db.lock.timeout"));
+		appendSetting(builder, "WRITE_DELAY", AppConfig.get("db.write.delay"));
+		appendSetting(builder, "MAX_COMPACT_TIME", AppConfig.get("db.max.compact.time"));
+		String options = AppConfig.get("db.url.options");
+		if (options != null) {
+			builder.append(options);
+			if (!options.endsWith(";")) {
+				builder.append(';');
+			}
+		}
+		return builder.toString();
+	}
+
+	private static void appendSetting(StringBuilder builder, String name, String value) {
+		if (value != null) {
+			builder.append(name).append('=').append(value).append(';');
+		}
+	}
+
+	/**
+	 * @return the directory holding file databases and replica snapshots
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	static String getDatabaseDirectory() {
+		return AppConfig.getString("db.directory", "./h2");
+	}
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * @return the connection string of the main database
 	 */
-	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+	public static String getUrl() {
+		String current = url;
+		if (current == null) {
+			synchronized (ConnectionUtil.class) {
+				if (url == null) {
+					url = buildUrl("db");
+				}
+				current = url;
+			}
+		}
+		return current;
 	}
 
 	/**
@@ -50,7 +170,7 @@ public class ConnectionUtil {
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return getDataSource().getConnection();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -58,6 +178,304 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @return the number of shards that messages are spread across
+	 */
+	public static int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Closes every pool and replica and changes how many shards and replicas the next use opens, overriding
+	 * message.shards and replicas. DAOs created before the change keep routing to the old number of shards, so
+	 * components are created afresh after it.
+	 * @param shards the number of message shards, at least 1
+	 * @param replicas the number of read replicas of the main database, 0 for none
+	 */
+	public static synchronized void configure(int shards, int replicas) {
+		close();
+		shardCount = Math.max(1, shards);
+		replicaCount = Math.max(0, replicas);
+		shardPools = new AtomicReferenceArray<>(shardCount);
+	}
+
+	/**
+	 * Borrows a pooled connection to a message shard, creating the shard's pool and schema on first use. Shard 0 is
+	 * the main database; its message table is created by the sql script.
+	 * @param shard the shard index, 0 to getShardCount() - 1
+	 * @return an active connection, to be closed by the caller
+	 * @throws SQLException if no connection could be obtained
+	 */
+	public static Connection getShardConnection(int shard) throws SQLException {
+		JdbcConnectionPool shardPool = shardPools.get(shard);
+		if (shardPool == null) {
+			shardPool = createShardPool(shard);
+		}
+		ConnectionAcquireEvent event = ConnectionAcquireEvent.start();
+		Connection connection = shardPool.getConnection();
+		event.finish(shard, false);
+		return connection;
+	}
+
+	private static synchronized JdbcConnectionPool createShardPool(int shard) throws SQLException {
+		if (shardPools.get(shard) != null) {
+			return shardPools.get(shard);
+		}
+		String shardUrl = shard == 0 ? getUrl() : buildUrl("db-shard-" + shard);
+		JdbcConnectionPool shardPool = JdbcConnectionPool.create(shardUrl, username, password);
+		// Shard 0 is the main database, whose pool also serves account queries
+		int poolSize = AppConfig.getInt("db.pool.size", 10);
+		shardPool.setMaxConnections(shard == 0 ? poolSize : AppConfig.getInt("message.shard.pool.size", poolSize));
+		if (shard > 0) {
+			Connection connection = shardPool.getConnection();
+			try {
+				createShardSchema(connection);
+			} finally {
+				connection.close();
+			}
+		}
+		shardPools.set(shard, shardPool);
+		return shardPool;
+	}
+
+	/**
+	 * Shards other than 0 hold only the message table. posted_by cannot reference the account table from another
+	 * database, so account existence is checked by MessageService instead of a foreign key.
+	 */
+	private static void createShardSchema(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.execute("create table if not exists message (" +
+				"message_id int primary key, " +
+				"posted_by int, " +
+				"message_text varchar(255), " +
+				"time_posted_epoch bigint, " +
+				"deleted_epoch bigint, " +
+				"version int default 1 not null)");
+		// Shard files created before soft deletes and versioning lack these columns
+		statement.execute("alter table message add column if not exists deleted_epoch bigint");
+		statement.execute("alter table message add column if not exists version int default 1 not null");
+		statement.execute("create table if not exists message_history (" +
+				"message_id int, " +
+				"version int, " +
+				"prefix_length int, " +
+				"suffix_length int, " +
+				"middle_text varchar(255), " +
+				"superseded_epoch bigint, " +
+				"primary key (message_id, version))");
+		statement.execute("create table if not exists id_high_water (" +
+				"table_name varchar(64) primary key, " +
+				"max_id int not null)");
+		statement.execute("create index if not exists message_posted_by on message(posted_by)");
+		statement.execute("create index if not exists message_deleted on message(deleted_epoch)");
+	}
+
+	/**
+	 * @return a pooled connection to the main database for writes, to be closed by the caller
+	 * @throws SQLException if no connection could be obtained
+	 */
+	public static Connection getWriteConnection() throws SQLException {
+		return getShardConnection(0);
+	}
+
+	/**
+	 * Borrows a connection for reading the main database. Replicas are used in turn, skipping any that have not yet
+	 * applied the changes the current request must see (see ReadConsistency); the main database serves the read
+	 * when none has.
+	 * @return an active connection, to be closed by the caller
+	 * @throws SQLException if no connection could be obtained
+	 */
+	public static Connection getReadConnection() throws SQLException {
+		if (replicaCount == 0) {
+			return getWriteConnection();
+		}
+		ReadReplica[] current = getReplicas();
+		long requiredLsn = ReadConsistency.requiredLsn();
+		int start = Math.floorMod(nextReplica.getAndIncrement(), current.length);
+		for (int i = 0; i < current.length; i++) {
+			ReadReplica replica = current[(start + i) % current.length];
+			if (replica.getAppliedLsn() >= requiredLsn) {
+				ConnectionAcquireEvent event = ConnectionAcquireEvent.start();
+				Connection connection = replica.getConnection();
+				event.finish(0, true);
+				return connection;
+			}
+		}
+		return getWriteConnection();
+	}
+
+	/**
+	 * Prepares a connection from getWriteConnection for a write that replicas must receive
+	 * @param connection the connection the write will run on
+	 * @throws SQLException if the transaction cannot be started
+	 */
+	public static void beginWrite(Connection connection) throws SQLException {
+		if (replicaCount > 0) {
+			connection.setAutoCommit(false);
+		}
+	}
+
+	/**
+	 * Commits a write started with beginWrite and ships its row changes to the replicas. The changes are logged
+	 * while the transaction still holds its row locks, so the log order matches the commit order of each row.
+	 * @param connection the connection the write ran on
+	 * @param changes the rows the write changed
+	 * @throws SQLException if the commit fails, in which case the transaction is rolled back
+	 */
+	public static void commitWrite(Connection connection, ReplicationLog.Change... changes) throws SQLException {
+		if (replicaCount == 0) {
+			if (!connection.getAutoCommit()) {
+				connection.commit();
+			}
+			return;
+		}
+		ReplicationLog.Entry[] entries = new ReplicationLog.Entry[changes.length];
+		for (int i = 0; i < changes.length; i++) {
+			entries[i] = replicationLog.append(changes[i]);
+		}
+		boolean committed = false;
+		try {
+			connection.commit();
+			committed = true;
+		} finally {
+			if (!committed) {
+				connection.rollback();
+			}
+			for (ReplicationLog.Entry entry : entries) {
+				replicationLog.complete(entry, committed);
+			}
+		}
+		if (entries.length > 0) {
+			ReadConsistency.recordWrite(entries[entries.length - 1].getLsn());
+		}
+	}
+
+	/**
+	 * @return the replicas of the main database, empty if none are configured
+	 */
+	public static ReadReplica[] getReplicas() {
+		ReadReplica[] current = replicas;
+		if (current == null) {
+			current = createReplicas();
+		}
+		return current;
+	}
+
+	/**
+	 * @return the log of changes shipped to replicas
+	 */
+	public static ReplicationLog getReplicationLog() {
+		return replicationLog;
+	}
+
+	private static synchronized ReadReplica[] createReplicas() {
+		if (replicas != null) {
+			return replicas;
+		}
+		ReadReplica[] created = new ReadReplica[replicaCount];
+		try (Connection primary = getWriteConnection()) {
+			for (int i = 0; i < replicaCount; i++) {
+				created[i] = new ReadReplica(i + 1, buildUrl("replica-" + (i + 1)), username, password,
+						replicationLog);
+				created[i].start(primary);
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Could not start read replicas: " + e.getMessage(), e);
+		}
+		if (replicaCount > 0) {
+			// Entries every replica has applied are no longer needed
+			replicationLogTrimmer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "replication-log-trim");
+				thread.setDaemon(true);
+				return thread;
+			});
+			replicationLogTrimmer.scheduleWithFixedDelay(() -> {
+				long applied = Long.MAX_VALUE;
+				for (ReadReplica replica : created) {
+					applied = Math.min(applied, replica.getAppliedLsn());
+				}
+				replicationLog.trim(applied);
+			}, 1, 1, TimeUnit.SECONDS);
+		}
+		replicas = created;
+		return created;
+	}
+
+	/**
+	 * Checks that the main database answers and its pool has a free connection, without waiting for one
+	 * @return true if a request could get a working connection now
+	 */
+	public static boolean isHealthy() {
+		JdbcConnectionPool mainPool = shardPools.get(0);
+		if (mainPool != null && mainPool.getActiveConnections() >= mainPool.getMaxConnections()) {
+			return false;
+		}
+		try (Connection connection = getWriteConnection()) {
+			return connection.isValid(1);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits for every replica to apply the changes committed so far
+	 * @param timeoutMillis How long to wait
+	 * @return true if the replicas caught up in time, or there are none
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static boolean awaitReplicas(long timeoutMillis) throws InterruptedException {
+		ReadReplica[] current = replicas;
+		if (current == null) {
+			return true;
+		}
+		long target = replicationLog.getWatermark();
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+		for (ReadReplica replica : current) {
+			while (replica.getAppliedLsn() < target) {
+				if (System.nanoTime() >= deadline) {
+					return false;
+				}
+				Thread.sleep(10);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes every pool and replica. File databases are shut down, which flushes and releases their files; in-memory
+	 * databases are kept, since closing them would lose their data. The next connection request reopens everything.
+	 * Connections still borrowed when this runs fail on their next use, so callers drain requests first.
+	 */
+	public static synchronized void close() {
+		if (replicationLogTrimmer != null) {
+			replicationLogTrimmer.shutdownNow();
+			replicationLogTrimmer = null;
+		}
+		if (replicas != null) {
+			for (ReadReplica replica : replicas) {
+				replica.stop();
+			}
+			replicas = null;
+		}
+		boolean fileDatabase = !"memory".equalsIgnoreCase(AppConfig.getString("db.mode", "file"));
+		AtomicReferenceArray<JdbcConnectionPool> current = shardPools;
+		for (int shard = 0; shard < current.length(); shard++) {
+			JdbcConnectionPool shardPool = current.get(shard);
+			if (shardPool == null) {
+				continue;
+			}
+			if (fileDatabase) {
+				try (Connection connection = shardPool.getConnection()) {
+					connection.createStatement().execute("SHUTDOWN");
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+			shardPool.dispose();
+			current.set(shard, null);
+		}
+		pool = null;
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
@@ -67,6 +485,24 @@ public class ConnectionUtil {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
 			RunScript.execute(getConnection(), sqlReader);
+			for (int shard = 1; shard < shardCount; shard++) {
+				Connection connection = getShardConnection(shard);
+				try {
+					connection.createStatement().execute("delete from message");
+					connection.createStatement().execute("delete from message_history");
+					connection.createStatement().execute("delete from id_high_water");
+				} finally {
+					connection.close();
+				}
+			}
+			// The script bypasses the replication log, so replicas start over from a fresh copy
+			if (replicas != null) {
+				try (Connection primary = getWriteConnection()) {
+					for (ReadReplica replica : replicas) {
+						replica.resync(primary);
+					}
+				}
+			}
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,80 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size frequency estimator.
+ *
+ * Every key increments one counter in each of depth rows, chosen by independent hashes; its estimate is the smallest
+ * of those counters. Estimates never undercount and overcount by at most about total / width with high probability,
+ * whatever the number of distinct keys. Counters are updated with atomic adds, so concurrent writers need no lock.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width Counters per row; more means smaller overcounts
+     * @param depth Number of rows; more means overcounts are less likely
+     */
+    public CountMinSketch(int width, int depth) {
+        if(width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * Counts occurrences of a key
+     * @param key The key
+     * @param count How many occurrences to add
+     */
+    public void add(Object key, long count) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int row = 0; row < depth; row++) {
+            counters.addAndGet(row * width + Math.floorMod(h1 + row * h2, width), count);
+        }
+    }
+
+    /**
+     * @param key The key
+     * @return An upper bound on how often the key was added
+     */
+    public long estimate(Object key) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + Math.floorMod(h1 + row * h2, width)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Resets every counter to zero. Adds running concurrently may survive the reset.
+     */
+    public void clear() {
+        for(int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Spreads a 32 bit hash code over 64 bits so the two halves act as independent hashes (MurmurHash3 finalizer)
+     */
+    private static long mix(int hashCode) {
+        long hash = hashCode * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
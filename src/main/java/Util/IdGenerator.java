@@ -0,0 +1,119 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free in-process allocator of increasing int ids, so ids are known before a row is inserted.
+ *
+ * Ids are sequence * stride + offset. Giving every writer node (and every message shard) its own offset below a
+ * shared stride keeps ids unique without coordination, and because each node's sequence only grows, ids sort by
+ * creation order within a node. The sequence is seeded from the table's current maximum id and can be moved past
+ * ids written by someone else with advancePast.
+ */
+public class IdGenerator {
+    private static final long UNSEEDED = -1;
+
+    private final int stride;
+    private final int offset;
+    private final AtomicLong nextSequence = new AtomicLong(UNSEEDED);
+
+    /**
+     * @param stride Distance between consecutive ids of this generator, the number of generators sharing the id space
+     * @param offset This generator's slot, 0 to stride - 1
+     */
+    public IdGenerator(int stride, int offset) {
+        if(stride < 1 || offset < 0 || offset >= stride) {
+            throw new IllegalArgumentException("offset must be in [0, stride), got " + offset + " for stride " + stride);
+        }
+        this.stride = stride;
+        this.offset = offset;
+    }
+
+    /**
+     * Single writer generator: ids are simply max + 1, max + 2, ...
+     */
+    public IdGenerator() {
+        this(1, 0);
+    }
+
+    /**
+     * @return true once the generator has been seeded with advancePast
+     */
+    public boolean isSeeded() {
+        return nextSequence.get() != UNSEEDED;
+    }
+
+    /**
+     * Makes sure every later id is greater than an id already in use. Seeds the generator on first call.
+     * @param maxId The largest id in use, 0 if none
+     */
+    public void advancePast(int maxId) {
+        long required = maxId >= offset ? (maxId - offset) / stride + 1 : 0;
+        if(required == 0 && offset == 0) {
+            // Ids start at 1
+            required = 1;
+        }
+        while(true) {
+            long current = nextSequence.get();
+            if(current >= required || nextSequence.compareAndSet(current, required)) return;
+        }
+    }
+
+    /**
+     * @return A new id
+     * @throws IllegalStateException if the generator has not been seeded or the int id space is used up
+     */
+    public int next() {
+        while(true) {
+            long sequence = nextSequence.get();
+            long id = checkedId(sequence, 1);
+            if(nextSequence.compareAndSet(sequence, sequence + 1)) return (int) id;
+        }
+    }
+
+    /**
+     * Allocates ids for a batch of rows with a single atomic step
+     * @param count How many ids to allocate
+     * @return The new ids in increasing order
+     * @throws IllegalStateException if the generator has not been seeded or the int id space is used up
+     */
+    public int[] next(int count) {
+        int[] ids = new int[count];
+        if(count == 0) return ids;
+        while(true) {
+            long first = nextSequence.get();
+            checkedId(first, count);
+            if(nextSequence.compareAndSet(first, first + count)) {
+                for(int i = 0; i < count; i++) {
+                    ids[i] = (int) ((first + i) * stride + offset);
+                }
+                return ids;
+            }
+        }
+    }
+
+    private long checkedId(long sequence, int count) {
+        if(sequence == UNSEEDED) {
+            throw new IllegalStateException("IdGenerator used before advancePast seeded it");
+        }
+        long last = (sequence + count - 1) * stride + offset;
+        if(last > Integer.MAX_VALUE) {
+            throw new IllegalStateException("int id space exhausted");
+        }
+        return sequence * stride + offset;
+    }
+
+    /**
+     * @return Number of generators this one shares the id space with, itself included
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return This generator's slot in the id space
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,104 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes.
+ *
+ * A stored hash reads pbkdf2-sha256$ITERATIONS$SALT$HASH with base64 salt and hash, so the work factor can be raised
+ * later without invalidating existing hashes. A stored value without that prefix is a legacy plaintext password; it
+ * still verifies, and needsRehash reports that it should be replaced.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations The PBKDF2 work factor for new hashes
+     */
+    public PasswordHasher(int iterations) {
+        if(iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Hashes a password with a fresh random salt
+     * @param password The plaintext password
+     * @return The encoded hash to store
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Checks a password against a stored hash in time independent of where they differ
+     * @param password The plaintext password
+     * @param stored The stored hash, or a legacy plaintext password
+     * @return true if the password matches
+     */
+    public boolean verify(String password, String stored) {
+        if(!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if(parts.length != 4) return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+        } catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param stored A stored hash or legacy plaintext password
+     * @return true if it is plaintext or was made with a different work factor than the current one
+     */
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    /**
+     * @param stored A stored hash or legacy plaintext password
+     * @return true if it is a hash made by this class, with any work factor
+     */
+    public static boolean isHash(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    /**
+     * @return The work factor used for new hashes
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch(GeneralSecurityException e) {
+            // Every Java SE runtime provides PBKDF2WithHmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Util;
+
+import java.util.function.Supplier;
+
+/**
+ * Per-request read-your-writes bookkeeping for replica routing.
+ *
+ * A client that wrote something receives the write's LSN in the X-Write-Lsn response header and sends it back as
+ * X-Read-After-Lsn on later requests. Reads in those requests, and reads following a write within the same request,
+ * are only served by replicas that have applied at least that LSN; otherwise they go to the primary.
+ */
+public class ReadConsistency {
+    private static final ThreadLocal<long[]> SESSION = ThreadLocal.withInitial(() -> new long[2]);
+    private static final int REQUIRED = 0;
+    private static final int WRITTEN = 1;
+
+    private ReadConsistency() {
+    }
+
+    /**
+     * Starts tracking a request
+     * @param requiredLsn The LSN the client has already observed, or 0
+     */
+    public static void begin(long requiredLsn) {
+        long[] session = SESSION.get();
+        session[REQUIRED] = requiredLsn;
+        session[WRITTEN] = 0;
+    }
+
+    /**
+     * Records a write made by the current request
+     * @param lsn The write's LSN
+     */
+    public static void recordWrite(long lsn) {
+        long[] session = SESSION.get();
+        session[WRITTEN] = Math.max(session[WRITTEN], lsn);
+    }
+
+    /**
+     * @return The lowest LSN a replica must have applied to serve the current request's reads
+     */
+    public static long requiredLsn() {
+        long[] session = SESSION.get();
+        return Math.max(session[REQUIRED], session[WRITTEN]);
+    }
+
+    /**
+     * Runs a read whose result is shared with other requests, such as a cache fill or a coalesced lookup. It must not
+     * come from a replica that is missing any write logged before it started, or the stale result would outlive the
+     * write's cache invalidation.
+     * @param read The read to run
+     * @return The read's result
+     */
+    public static <T> T latest(Supplier<T> read) {
+        long[] session = SESSION.get();
+        long saved = session[REQUIRED];
+        session[REQUIRED] = Math.max(saved, ConnectionUtil.getReplicationLog().getLastLsn());
+        try {
+            return read.get();
+        } finally {
+            session[REQUIRED] = saved;
+        }
+    }
+
+    /**
+     * @return The LSN of the latest write made by the current request, or 0 if it made none
+     */
+    public static long lastWriteLsn() {
+        return SESSION.get()[WRITTEN];
+    }
+
+    /**
+     * Stops tracking the current request
+     */
+    public static void end() {
+        begin(0);
+    }
+}
@@ -0,0 +1,142 @@
+package Util;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * A local H2 copy of the primary database that serves reads.
+ * The replica is seeded from a snapshot of the primary and then kept current by a background thread that applies
+ * the ReplicationLog in LSN order.
+ */
+public class ReadReplica {
+    private final int index;
+    private final JdbcConnectionPool pool;
+    private final ReplicationLog log;
+    private volatile long appliedLsn;
+    private volatile long appliedCommitNanos;
+    private final Thread applier;
+
+    /**
+     * @param index The replica number, used for its file and thread names
+     * @param url JDBC url of the replica database
+     * @param username Database user
+     * @param password Database password
+     * @param log The log to apply
+     */
+    ReadReplica(int index, String url, String username, String password, ReplicationLog log) {
+        this.index = index;
+        this.log = log;
+        this.pool = JdbcConnectionPool.create(url, username, password);
+        this.pool.setMaxConnections(AppConfig.getInt("replica.pool.size", 10));
+        this.applier = new Thread(this::applyLoop, "read-replica-" + index);
+        this.applier.setDaemon(true);
+    }
+
+    /**
+     * Copies the primary and starts applying changes made after the copy
+     * @param primary A connection to the primary
+     * @throws SQLException if the snapshot cannot be taken or loaded
+     */
+    void start(Connection primary) throws SQLException {
+        resync(primary);
+        applier.start();
+    }
+
+    /**
+     * Replaces the replica's contents with a fresh snapshot of the primary
+     * @param primary A connection to the primary
+     * @throws SQLException if the snapshot cannot be taken or loaded
+     */
+    synchronized void resync(Connection primary) throws SQLException {
+        // Every change at or below the watermark is in the snapshot; later ones are reapplied, which is idempotent
+        long snapshotLsn = log.getWatermark();
+        File snapshot = new File(ConnectionUtil.getDatabaseDirectory(), "replica-" + index + "-snapshot.sql");
+        Statement dump = primary.createStatement();
+        dump.execute("SCRIPT TO '" + snapshot.getPath() + "'");
+        try (Connection connection = pool.getConnection()) {
+            Statement load = connection.createStatement();
+            load.execute("DROP ALL OBJECTS");
+            load.execute("RUNSCRIPT FROM '" + snapshot.getPath() + "'");
+        } finally {
+            snapshot.delete();
+        }
+        appliedLsn = snapshotLsn;
+    }
+
+    private void applyLoop() {
+        while(true) {
+            try {
+                ReplicationLog.Entry entry = log.awaitNext(appliedLsn, 100);
+                if(entry != null) {
+                    apply(entry);
+                }
+            } catch(InterruptedException e) {
+                return;
+            } catch(SQLException e) {
+                // Retry the same entry; a replica must never skip a change
+                System.out.println("Replica " + index + " failed to apply change: " + e.getMessage());
+                try {
+                    Thread.sleep(100);
+                } catch(InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void apply(ReplicationLog.Entry entry) throws SQLException {
+        if(entry.getLsn() != appliedLsn + 1) return; // resynced in the meantime
+        if(entry.getState() == ReplicationLog.Entry.COMMITTED) {
+            ReplicationLog.Change change = entry.getChange();
+            try (Connection connection = pool.getConnection()) {
+                PreparedStatement preparedStatement = connection.prepareStatement(change.toSql());
+                Object[] parameters = change.getParameters();
+                for(int i = 0; i < parameters.length; i++) {
+                    preparedStatement.setObject(i + 1, parameters[i]);
+                }
+                preparedStatement.executeUpdate();
+            }
+            appliedCommitNanos = entry.getCommittedNanos();
+        }
+        appliedLsn = entry.getLsn();
+    }
+
+    /**
+     * @return A pooled connection to this replica, to be closed by the caller
+     * @throws SQLException if no connection could be obtained
+     */
+    Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    /**
+     * @return The last LSN applied to this replica
+     */
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    /**
+     * @return How far behind the primary this replica is in milliseconds, 0 if it is caught up
+     */
+    public long getLagMillis() {
+        long pendingLsn = appliedLsn + 1;
+        if(pendingLsn > log.getWatermark()) return 0;
+        long pendingCommit = log.getCommittedNanos(pendingLsn);
+        long since = pendingCommit == 0 ? appliedCommitNanos : pendingCommit;
+        return since == 0 ? 0 : (System.nanoTime() - since) / 1_000_000;
+    }
+
+    /**
+     * Stops applying changes and closes the replica's connections
+     */
+    void stop() {
+        applier.interrupt();
+        pool.dispose();
+    }
+}
@@ -0,0 +1,194 @@
+package Util;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordered log of committed row changes on the primary database, shipped to read replicas.
+ *
+ * A writer calls append while its transaction still holds the row locks and before committing, then marks the
+ * entry committed or aborted. Because a second writer to the same row cannot get past the row lock until the first
+ * commits, log sequence numbers (LSNs) follow commit order for every row. Changes are full row images, so applying
+ * one more than once is harmless.
+ */
+public class ReplicationLog {
+    /**
+     * One row change. values is null for a delete.
+     */
+    public static class Change {
+        private final String table;
+        private final String keyColumn;
+        private final String[] columns;
+        private final Object[] values;
+        private final Object key;
+
+        /**
+         * @param table The table changed
+         * @param keyColumn The primary key column. An upsert of a row with a composite key names all of its columns,
+         * comma separated; a delete may name one of them to remove every row with that value.
+         * @param key The primary key value
+         * @param columns Every column of the row, or null for a delete
+         * @param values The row's values in column order, or null for a delete
+         */
+        public Change(String table, String keyColumn, Object key, String[] columns, Object[] values) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+            this.key = key;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /**
+         * @return The SQL statement that applies this change on a replica
+         */
+        public String toSql() {
+            if(values == null) {
+                return "DELETE FROM " + table + " WHERE " + keyColumn + " = ?";
+            }
+            StringBuilder placeholders = new StringBuilder();
+            for(int i = 0; i < columns.length; i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            return "MERGE INTO " + table + " (" + String.join(", ", columns) + ") KEY (" + keyColumn + ") VALUES ("
+                    + placeholders + ")";
+        }
+
+        /**
+         * @return The parameters for toSql()
+         */
+        public Object[] getParameters() {
+            return values == null ? new Object[]{key} : values;
+        }
+    }
+
+    /**
+     * A change with its position in the log.
+     */
+    public static class Entry {
+        static final int PENDING = 0;
+        static final int COMMITTED = 1;
+        static final int ABORTED = 2;
+
+        private final long lsn;
+        private final Change change;
+        private volatile int state = PENDING;
+        private volatile long committedNanos;
+
+        Entry(long lsn, Change change) {
+            this.lsn = lsn;
+            this.change = change;
+        }
+
+        /**
+         * @return This entry's log sequence number
+         */
+        public long getLsn() {
+            return lsn;
+        }
+
+        Change getChange() {
+            return change;
+        }
+
+        int getState() {
+            return state;
+        }
+
+        long getCommittedNanos() {
+            return committedNanos;
+        }
+    }
+
+    private final ConcurrentSkipListMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong lastLsn = new AtomicLong();
+    // Every entry at or below this LSN is committed or aborted
+    private final AtomicLong watermark = new AtomicLong();
+
+    /**
+     * Records a change that is about to be committed. Must be called before the transaction commits.
+     * @param change The row change
+     * @return The log entry, to be passed to complete
+     */
+    public Entry append(Change change) {
+        // The LSN is assigned and published under one lock so readers never see a gap in the sequence
+        synchronized(entries) {
+            Entry entry = new Entry(lastLsn.incrementAndGet(), change);
+            entries.put(entry.lsn, entry);
+            return entry;
+        }
+    }
+
+    /**
+     * Marks an appended change as committed or rolled back
+     * @param entry The entry returned by append
+     * @param committed true if the transaction committed
+     */
+    public void complete(Entry entry, boolean committed) {
+        entry.committedNanos = System.nanoTime();
+        entry.state = committed ? Entry.COMMITTED : Entry.ABORTED;
+        advanceWatermark();
+        synchronized(this) {
+            notifyAll();
+        }
+    }
+
+    private void advanceWatermark() {
+        while(true) {
+            long current = watermark.get();
+            Entry next = entries.get(current + 1);
+            if(next == null || next.state == Entry.PENDING) return;
+            watermark.compareAndSet(current, current + 1);
+        }
+    }
+
+    /**
+     * Waits until the entry after the given LSN has been completed
+     * @param lsn The last LSN already handled
+     * @param timeoutMillis How long to wait at most
+     * @return The next entry if it is complete, otherwise null
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    Entry awaitNext(long lsn, long timeoutMillis) throws InterruptedException {
+        Entry next = entries.get(lsn + 1);
+        if(next != null && next.state != Entry.PENDING) return next;
+        synchronized(this) {
+            next = entries.get(lsn + 1);
+            if(next == null || next.state == Entry.PENDING) {
+                wait(timeoutMillis);
+            }
+        }
+        next = entries.get(lsn + 1);
+        return next != null && next.state != Entry.PENDING ? next : null;
+    }
+
+    /**
+     * Drops entries every replica has applied
+     * @param appliedLsn The lowest LSN applied by all replicas
+     */
+    void trim(long appliedLsn) {
+        entries.headMap(appliedLsn, true).clear();
+    }
+
+    /**
+     * @return The highest LSN such that every change at or below it is committed or aborted
+     */
+    public long getWatermark() {
+        return watermark.get();
+    }
+
+    /**
+     * @return The highest LSN assigned
+     */
+    public long getLastLsn() {
+        return lastLsn.get();
+    }
+
+    /**
+     * @param lsn An LSN
+     * @return When that entry was committed, or 0 if it is no longer in the log
+     */
+    long getCommittedNanos(long lsn) {
+        Entry entry = entries.get(lsn);
+        return entry == null ? 0 : entry.committedNanos;
+    }
+}
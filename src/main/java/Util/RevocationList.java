@@ -0,0 +1,56 @@
+package Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent set of revoked token ids.
+ *
+ * A revoked token only has to be remembered until it would have expired anyway, so each id is stored with its
+ * expiry and expired ids are purged as new ones are added. The list therefore never holds more than the tokens
+ * revoked within one token lifetime. Lookups are a single lock-free read, skipped entirely while nothing is revoked.
+ */
+public class RevocationList {
+    private static final long PURGE_INTERVAL_SECONDS = 60;
+
+    private final ConcurrentHashMap<Long, Long> expiryByTokenId = new ConcurrentHashMap<>();
+    private final AtomicLong nextPurgeEpoch = new AtomicLong();
+
+    /**
+     * Revokes a token
+     * @param tokenId The token's id
+     * @param expiresEpoch When the token expires, in epoch seconds
+     */
+    public void revoke(long tokenId, long expiresEpoch) {
+        long now = System.currentTimeMillis() / 1000;
+        if(expiresEpoch <= now) return;
+        expiryByTokenId.put(tokenId, expiresEpoch);
+        long purgeAt = nextPurgeEpoch.get();
+        if(now >= purgeAt && nextPurgeEpoch.compareAndSet(purgeAt, now + PURGE_INTERVAL_SECONDS)) {
+            purgeExpired(now);
+        }
+    }
+
+    /**
+     * @param tokenId A token's id
+     * @return true if the token has been revoked
+     */
+    public boolean isRevoked(long tokenId) {
+        return !expiryByTokenId.isEmpty() && expiryByTokenId.containsKey(tokenId);
+    }
+
+    /**
+     * Forgets revoked tokens that have expired
+     * @param nowEpoch The current time in epoch seconds
+     */
+    public void purgeExpired(long nowEpoch) {
+        expiryByTokenId.values().removeIf(expiresEpoch -> expiresEpoch <= nowEpoch);
+    }
+
+    /**
+     * @return Number of revoked tokens still remembered
+     */
+    public int size() {
+        return expiryByTokenId.size();
+    }
+}
@@ -0,0 +1,81 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical lookups.
+ * While a lookup for a key is running, further callers asking for the same key wait for that lookup and share its
+ * result instead of issuing their own query. Nothing is cached once the lookup completes.
+ * @param <K> The lookup key type
+ * @param <V> The lookup result type
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader for a key, or joins a loader that is already running for that key
+     * @param key The lookup key
+     * @param loader Performs the lookup
+     * @return The lookup result, which may be null
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if(existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        executions.increment();
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch(RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Stops later callers from joining a lookup that is currently running for a key.
+     * Called after a write so that readers arriving after it never share a result read before it.
+     * @param key The lookup key
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * @return Number of lookups that actually ran
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * @return Number of callers that shared another caller's lookup
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private V await(CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
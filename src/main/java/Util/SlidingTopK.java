@@ -0,0 +1,203 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate most frequent keys over a sliding time window, in bounded memory.
+ *
+ * The window is split into slots, each with its own CountMinSketch; a slot is cleared and reused once it falls out of
+ * the window, so a key's count in the window is the sum of its estimates in the live slots. A bounded set of
+ * candidate keys remembers which keys to report: a key is admitted when its windowed estimate beats the weakest
+ * candidate. Reading the top keys re-estimates every candidate and picks the largest with a heap.
+ *
+ * Counting a key that is already a candidate only raises its count, without locking. Admitting a new key takes a
+ * lock and finds the weakest candidate in a min-heap. Heap entries may hold a candidate's count from when it was
+ * pushed; counts only grow between slot rotations, so a stale entry is an underestimate and is re-pushed with the
+ * current count when it reaches the top.
+ * @param <K> The key type
+ */
+public class SlidingTopK<K> {
+    private final long slotMillis;
+    private final CountMinSketch[] sketches;
+    // Which slot of the timeline each sketch currently holds
+    private final AtomicLongArray slotNumbers;
+    private final int maxCandidates;
+    private final ConcurrentHashMap<K, AtomicLong> candidates = new ConcurrentHashMap<>();
+    // One entry per candidate, weakest first; guards every change to the candidate set
+    private final PriorityQueue<Ranked<K>> byCount = new PriorityQueue<>();
+    // Estimate a new key must exceed to become a candidate once the set is full; read without locking
+    private volatile long admissionThreshold;
+
+    /**
+     * @param windowMillis Length of the window
+     * @param slots Number of slots the window is split into; more slide more smoothly
+     * @param maxCandidates Number of keys tracked as possible top keys
+     * @param width CountMinSketch width of each slot
+     * @param depth CountMinSketch depth of each slot
+     */
+    public SlidingTopK(long windowMillis, int slots, int maxCandidates, int width, int depth) {
+        this.slotMillis = Math.max(1, windowMillis / slots);
+        this.sketches = new CountMinSketch[slots];
+        this.slotNumbers = new AtomicLongArray(slots);
+        for(int i = 0; i < slots; i++) {
+            sketches[i] = new CountMinSketch(width, depth);
+            slotNumbers.set(i, -1);
+        }
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    /**
+     * Counts one occurrence of a key
+     * @param key The key
+     * @param nowMillis The current time
+     */
+    public void add(K key, long nowMillis) {
+        long slotNumber = nowMillis / slotMillis;
+        int slot = (int) (slotNumber % sketches.length);
+        if(slotNumbers.get(slot) != slotNumber) {
+            rotate(slot, slotNumber);
+        }
+        sketches[slot].add(key, 1);
+
+        long estimate = estimate(key, slotNumber);
+        AtomicLong count = candidates.get(key);
+        if(count != null) {
+            count.accumulateAndGet(estimate, Math::max);
+        } else if(estimate > admissionThreshold) {
+            synchronized(byCount) {
+                offer(key, estimate);
+            }
+        }
+    }
+
+    /**
+     * @param limit Number of keys to return
+     * @param nowMillis The current time
+     * @return Up to limit keys with their estimated counts in the window, most frequent first
+     */
+    public List<Map.Entry<K, Long>> top(int limit, long nowMillis) {
+        long slotNumber = nowMillis / slotMillis;
+        List<Map.Entry<K, Long>> snapshot;
+        synchronized(byCount) {
+            refresh(slotNumber);
+            snapshot = new ArrayList<>(candidates.size());
+            for(Map.Entry<K, AtomicLong> candidate : candidates.entrySet()) {
+                snapshot.add(Map.entry(candidate.getKey(), candidate.getValue().get()));
+            }
+        }
+        Comparator<Map.Entry<K, Long>> byCount = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<K, Long>> heap = new PriorityQueue<>(byCount);
+        for(Map.Entry<K, Long> candidate : snapshot) {
+            heap.add(candidate);
+            if(heap.size() > limit) heap.poll();
+        }
+        List<Map.Entry<K, Long>> top = new ArrayList<>(heap);
+        top.sort(byCount.reversed());
+        return top;
+    }
+
+    private long estimate(K key, long slotNumber) {
+        long estimate = 0;
+        for(int i = 0; i < sketches.length; i++) {
+            long age = slotNumber - slotNumbers.get(i);
+            if(age >= 0 && age < sketches.length) {
+                estimate += sketches[i].estimate(key);
+            }
+        }
+        return estimate;
+    }
+
+    private synchronized void rotate(int slot, long slotNumber) {
+        if(slotNumbers.get(slot) >= slotNumber) return;
+        sketches[slot].clear();
+        slotNumbers.set(slot, slotNumber);
+        synchronized(byCount) {
+            // Counts just dropped, so stored estimates are stale
+            refresh(slotNumber);
+        }
+    }
+
+    /**
+     * Admits a key, evicting the weakest candidate when full. Caller holds the byCount lock.
+     */
+    private void offer(K key, long estimate) {
+        AtomicLong count = candidates.get(key);
+        if(count != null) {
+            // Admitted by another thread since the unlocked check
+            count.accumulateAndGet(estimate, Math::max);
+            return;
+        }
+        if(candidates.size() >= maxCandidates) {
+            Ranked<K> weakest = weakest();
+            if(estimate <= weakest.count) return;
+            byCount.poll();
+            candidates.remove(weakest.key);
+        }
+        candidates.put(key, new AtomicLong(estimate));
+        byCount.add(new Ranked<>(key, estimate));
+        updateThreshold();
+    }
+
+    /**
+     * Re-estimates every candidate, drops those no longer in the window and rebuilds the heap. Caller holds the
+     * byCount lock.
+     */
+    private void refresh(long slotNumber) {
+        byCount.clear();
+        Iterator<Map.Entry<K, AtomicLong>> iterator = candidates.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<K, AtomicLong> candidate = iterator.next();
+            long estimate = estimate(candidate.getKey(), slotNumber);
+            if(estimate == 0) {
+                iterator.remove();
+            } else {
+                candidate.getValue().set(estimate);
+                byCount.add(new Ranked<>(candidate.getKey(), estimate));
+            }
+        }
+        updateThreshold();
+    }
+
+    /**
+     * @return The heap's top once its count is current. Caller holds the byCount lock and the heap is not empty.
+     */
+    private Ranked<K> weakest() {
+        while(true) {
+            Ranked<K> top = byCount.peek();
+            long current = candidates.get(top.key).get();
+            if(current == top.count) return top;
+            byCount.poll();
+            byCount.add(new Ranked<>(top.key, current));
+        }
+    }
+
+    private void updateThreshold() {
+        admissionThreshold = candidates.size() < maxCandidates ? 0 : weakest().count;
+    }
+
+    /**
+     * A candidate and its count when it was pushed onto the heap
+     */
+    private static final class Ranked<K> implements Comparable<Ranked<K>> {
+        final K key;
+        final long count;
+
+        Ranked(K key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public int compareTo(Ranked<K> other) {
+            return Long.compare(count, other.count);
+        }
+    }
+}
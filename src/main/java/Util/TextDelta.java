@@ -0,0 +1,60 @@
+package Util;
+
+/**
+ * Compact edit from one text to another: the target is the base with everything between a common prefix and a
+ * common suffix replaced. Edits to messages are usually small, so storing only the lengths and the replaced middle
+ * takes far less room than a full copy.
+ */
+public class TextDelta {
+    private final int prefixLength;
+    private final int suffixLength;
+    private final String middle;
+
+    /**
+     * @param prefixLength Number of leading characters of the base kept
+     * @param suffixLength Number of trailing characters of the base kept
+     * @param middle Text placed between them
+     */
+    public TextDelta(int prefixLength, int suffixLength, String middle) {
+        this.prefixLength = prefixLength;
+        this.suffixLength = suffixLength;
+        this.middle = middle;
+    }
+
+    /**
+     * @param base The text the delta will be applied to
+     * @param target The text applying it must produce
+     * @return The smallest delta of this form from base to target; surrogate pairs are never split
+     */
+    public static TextDelta between(String base, String target) {
+        int limit = Math.min(base.length(), target.length());
+        int prefix = 0;
+        while(prefix < limit && base.charAt(prefix) == target.charAt(prefix)) prefix++;
+        if(prefix > 0 && Character.isHighSurrogate(target.charAt(prefix - 1))) prefix--;
+        int suffix = 0;
+        while(suffix < limit - prefix
+                && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) suffix++;
+        if(suffix > 0 && Character.isLowSurrogate(target.charAt(target.length() - suffix))) suffix--;
+        return new TextDelta(prefix, suffix, target.substring(prefix, target.length() - suffix));
+    }
+
+    /**
+     * @param base The text the delta was computed from
+     * @return The target text
+     */
+    public String applyTo(String base) {
+        return base.substring(0, prefixLength) + middle + base.substring(base.length() - suffixLength);
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int getSuffixLength() {
+        return suffixLength;
+    }
+
+    public String getMiddle() {
+        return middle;
+    }
+}
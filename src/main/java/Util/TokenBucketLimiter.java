@@ -0,0 +1,163 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free per-key token bucket.
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (the generic cell rate algorithm), which
+ * behaves exactly like a token bucket refilled at a fixed rate but can be updated with one compare-and-set.
+ * Buckets live in a fixed number of shards; a bucket that has been idle long enough to be full again is
+ * indistinguishable from a new one, so it is evicted to keep memory bounded. Every request adding a bucket does a
+ * bounded amount of eviction work, so rotating through new keys cannot make a request scan every bucket.
+ * @param <K> The key type, e.g. an account_id or a client address
+ */
+public class TokenBucketLimiter<K> {
+    private static final int SHARDS = 16;
+    // Buckets examined by one new key while the limiter is over capacity
+    private static final int EVICTION_BUDGET = 64;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long idleNanos;
+    private final int maxBuckets;
+    private final List<ConcurrentHashMap<K, AtomicLong>> shards;
+    private final AtomicInteger bucketCount = new AtomicInteger();
+    private final AtomicInteger sweepCursor = new AtomicInteger();
+    private final AtomicInteger creations = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param ratePerSecond Sustained requests allowed per key per second
+     * @param burst Requests a key may make back to back before being limited
+     * @param maxBuckets Number of keys tracked before idle buckets are evicted eagerly
+     * @param idleSeconds How long a full bucket is kept after its last use
+     */
+    public TokenBucketLimiter(double ratePerSecond, int burst, int maxBuckets, long idleSeconds) {
+        this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.idleNanos = idleSeconds * 1_000_000_000L;
+        this.maxBuckets = maxBuckets;
+        this.shards = new ArrayList<>(SHARDS);
+        for(int i = 0; i < SHARDS; i++) {
+            shards.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Takes one token from a key's bucket
+     * @param key The key being limited
+     * @return 0 if the request is admitted, otherwise the number of nanoseconds until a token is available
+     */
+    public long tryAcquire(K key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = bucketFor(key, now);
+        while(true) {
+            long tat = bucket.get();
+            long newTat = Math.max(tat, now) + intervalNanos;
+            long debt = newTat - now;
+            if(debt > burstNanos) {
+                rejected.increment();
+                return debt - burstNanos;
+            }
+            if(bucket.compareAndSet(tat, newTat)) {
+                admitted.increment();
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucketFor(K key, long now) {
+        ConcurrentHashMap<K, AtomicLong> shard = shards.get(Math.floorMod(key.hashCode() * 0x9E3779B9, SHARDS));
+        AtomicLong bucket = shard.get(key);
+        if(bucket != null) return bucket;
+
+        if(bucketCount.get() >= maxBuckets) {
+            evictSome(now);
+        } else if((creations.incrementAndGet() & 1023) == 0) {
+            sweepIdle(now);
+        }
+        AtomicLong created = new AtomicLong(now);
+        bucket = shard.putIfAbsent(key, created);
+        if(bucket == null) {
+            bucketCount.incrementAndGet();
+            return created;
+        }
+        return bucket;
+    }
+
+    /**
+     * Evicts long idle buckets from the next shard in rotation. Runs once every 1024 new keys, so its cost is
+     * spread over them.
+     */
+    private void sweepIdle(long now) {
+        Map<K, AtomicLong> shard = shards.get(Math.floorMod(sweepCursor.getAndIncrement(), SHARDS));
+        Iterator<AtomicLong> buckets = shard.values().iterator();
+        while(buckets.hasNext()) {
+            if(buckets.next().get() <= now - idleNanos) {
+                buckets.remove();
+                bucketCount.decrementAndGet();
+                evicted.increment();
+            }
+        }
+    }
+
+    /**
+     * Under memory pressure, examines at most EVICTION_BUDGET buckets, starting at the next shard in rotation, and
+     * evicts those without outstanding debt. If the limiter is still twice over capacity, buckets are evicted
+     * whatever their debt, so memory stays bounded even while every bucket is in use.
+     */
+    private void evictSome(long now) {
+        int examined = 0;
+        for(int i = 0; i < SHARDS && examined < EVICTION_BUDGET; i++) {
+            Map<K, AtomicLong> shard = shards.get(Math.floorMod(sweepCursor.getAndIncrement(), SHARDS));
+            boolean overflowing = bucketCount.get() >= 2L * maxBuckets;
+            Iterator<AtomicLong> buckets = shard.values().iterator();
+            while(buckets.hasNext() && examined < EVICTION_BUDGET) {
+                examined++;
+                long tat = buckets.next().get();
+                if(overflowing || tat <= now) {
+                    buckets.remove();
+                    bucketCount.decrementAndGet();
+                    evicted.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of keys currently tracked
+     */
+    public int getBucketCount() {
+        return bucketCount.get();
+    }
+
+    /**
+     * @return Number of requests admitted
+     */
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return Number of requests rejected
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return Number of idle buckets evicted
+     */
+    public long getEvicted() {
+        return evicted.sum();
+    }
+}
@@ -1,3 +1,5 @@
+drop table if exists id_high_water;
+drop table if exists message_history;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +12,24 @@ create table message (
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
+    deleted_epoch bigint,
+    version int default 1 not null,
     foreign key (posted_by) references  account(account_id)
 );
+create index message_deleted on message(deleted_epoch);
+create table message_history (
+    message_id int,
+    version int,
+    prefix_length int,
+    suffix_length int,
+    middle_text varchar(255),
+    superseded_epoch bigint,
+    primary key (message_id, version)
+);
+create table id_high_water (
+    table_name varchar(64) primary key,
+    max_id int not null
+);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccessTokenTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Logging in returns a token in the X-Auth-Token header that authorizes writes for that account only
+     *
+     * Expected Response:
+     *  Status Code: 200 for the account's own message, 403 for another account's, 401 for a forged token
+     *  Response Body of the login: JSON representation of user object, unchanged
+     */
+    @Test
+    public void tokenAuthorizesOwnWrites() throws IOException, InterruptedException {
+        HttpResponse<String> loginResponse = login();
+        Assert.assertEquals(200, loginResponse.statusCode());
+        Assert.assertEquals(new Account(1, "testuser1", "password"), objectMapper.readValue(loginResponse.body(), Account.class));
+        String token = loginResponse.headers().firstValue("X-Auth-Token").orElse(null);
+        Assert.assertNotNull(token);
+
+        Assert.assertEquals(200, createMessage(1, "Bearer " + token).statusCode());
+        Assert.assertEquals(403, createMessage(2, "Bearer " + token).statusCode());
+        Assert.assertEquals(401, createMessage(1, "Bearer " + token + "x").statusCode());
+    }
+
+    /**
+     * A token stops working once it has been revoked with POST /logout
+     *
+     * Expected Response:
+     *  Status Code: 200 for the logout, 401 for later writes and a second logout with the same token
+     */
+    @Test
+    public void logoutRevokesToken() throws IOException, InterruptedException {
+        String token = login().headers().firstValue("X-Auth-Token").orElse(null);
+
+        HttpRequest logoutRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/logout"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(200, webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(401, createMessage(1, "Bearer " + token).statusCode());
+        Assert.assertEquals(401, webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> login() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> createMessage(int posted_by, String authorization) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ApplicationContext;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ApplicationContextTest {
+
+    ApplicationContext context;
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app on a new context, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        context = new ApplicationContext();
+        socialMediaController = new SocialMediaController(context);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Every component is created once per context
+     */
+    @Test
+    public void componentsAreShared() {
+        Assert.assertSame(context.getAccountService(), context.getAccountService());
+        Assert.assertSame(context.getMessageDAO(), context.getMessageDAO());
+        Assert.assertNotSame(context.getAccountService(), new ApplicationContext().getAccountService());
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages, suspending and resuming the context, then
+     * GET localhost:8080/messages/2
+     *
+     * Expected Response:
+     *  The database is closed by suspend and reopened by the next request, with the message still there
+     */
+    @Test
+    public void suspendClosesAndResumeReopens() throws IOException, InterruptedException {
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"before checkpoint\", \"time_posted_epoch\": 1669947792}"))
+                .build();
+        Assert.assertEquals(200, webClient.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        context.suspend();
+        context.resume();
+
+        // A fresh context has empty caches, so the read goes to the reopened database
+        app.stop();
+        app = new SocialMediaController(new ApplicationContext()).startAPI();
+        app.start(8080);
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 1, "before checkpoint", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+}
@@ -0,0 +1,87 @@
+package Benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.CompressedPayload;
+import Model.Message;
+import Util.CompressionCodec;
+
+/**
+ * Measures throughput and CPU cost of compressing GET /messages sized bodies at several levels, and compares
+ * recompressing per request against reusing the compressed bytes held by CompressedPayload.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.CompressionBenchmark
+ */
+public class CompressionBenchmark {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        int[] listSizes = {100, 1000, 10000};
+        int[] levels = {1, 6, 9};
+
+        System.out.printf("%-8s %-8s %-6s %12s %10s %12s %14s%n",
+                "rows", "codec", "level", "bytes", "ratio", "MB/s", "cpu us/op");
+        for(int rows : listSizes) {
+            byte[] body = objectMapper.writeValueAsBytes(sampleMessages(rows));
+            for(CompressionCodec codec : CompressionCodec.values()) {
+                for(int level : levels) {
+                    int iterations = Math.max(20, 20_000_000 / body.length);
+                    // warm up the JIT before measuring
+                    for(int i = 0; i < iterations / 4; i++) codec.compress(body, level);
+
+                    long cpuStart = THREADS.getCurrentThreadCpuTime();
+                    long wallStart = System.nanoTime();
+                    int compressedSize = 0;
+                    for(int i = 0; i < iterations; i++) {
+                        compressedSize = codec.compress(body, level).length;
+                    }
+                    long wall = System.nanoTime() - wallStart;
+                    long cpu = THREADS.getCurrentThreadCpuTime() - cpuStart;
+
+                    double megabytesPerSecond = (double) body.length * iterations / (1 << 20) / (wall / 1e9);
+                    System.out.printf("%-8d %-8s %-6d %12d %10.2f %12.1f %14.1f%n",
+                            rows, codec.getEncoding(), level, compressedSize,
+                            (double) body.length / compressedSize, megabytesPerSecond, cpu / 1e3 / iterations);
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-8s %-22s %16s%n", "rows", "strategy", "responses/sec");
+        for(int rows : listSizes) {
+            byte[] body = objectMapper.writeValueAsBytes(sampleMessages(rows));
+            int iterations = Math.max(20, 10_000_000 / body.length);
+
+            long start = System.nanoTime();
+            for(int i = 0; i < iterations; i++) {
+                new CompressedPayload(body).getEncoded(CompressionCodec.GZIP, 6);
+            }
+            double recompress = iterations / ((System.nanoTime() - start) / 1e9);
+
+            CompressedPayload cached = new CompressedPayload(body);
+            start = System.nanoTime();
+            for(int i = 0; i < iterations; i++) {
+                cached.getEncoded(CompressionCodec.GZIP, 6);
+            }
+            double reuse = iterations / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("%-8d %-22s %16.0f%n", rows, "recompress per request", recompress);
+            System.out.printf("%-8d %-22s %16.0f%n", rows, "cached compressed", reuse);
+        }
+    }
+
+    private static List<Message> sampleMessages(int rows) {
+        List<Message> messages = new ArrayList<>(rows);
+        for(int i = 1; i <= rows; i++) {
+            messages.add(new Message(i, i % 50 + 1, "sample message text number " + i + " with some words", 1669947792L + i));
+        }
+        return messages;
+    }
+}
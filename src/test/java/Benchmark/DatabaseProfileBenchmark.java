@@ -0,0 +1,144 @@
+package Benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Runs a mixed DAO workload (20% inserts, 60% reads by id, 10% updates, 10% reads by account) against each
+ * configuration profile and reports throughput. Every profile runs in its own JVM because the connection settings
+ * are fixed once ConnectionUtil is loaded; file profiles use their own directory under target/h2-bench.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.DatabaseProfileBenchmark
+ * Optional arguments: [threads] [seconds] [profile...], default 8 threads, 10 seconds, every bundled profile.
+ */
+public class DatabaseProfileBenchmark {
+    private static final String[] PROFILES = {"file-default", "durable", "write-heavy", "in-memory"};
+    private static final int ACCOUNTS = 100;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals("--run")) {
+            runWorkload(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<String> profiles = new ArrayList<>();
+        for(int i = 2; i < args.length; i++) profiles.add(args[i]);
+        if(profiles.isEmpty()) profiles.addAll(List.of(PROFILES));
+
+        System.out.printf("%-14s %12s %12s %12s %12s %12s%n",
+                "profile", "ops/sec", "inserts/s", "reads/s", "updates/s", "timeline/s");
+        for(String profile : profiles) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(projectClasspath());
+            command.add("-Dconfig.profile=" + profile);
+            command.add("-Ddb.directory=./target/h2-bench/" + profile);
+            command.add(DatabaseProfileBenchmark.class.getName());
+            command.add("--run");
+            command.add(Integer.toString(threads));
+            command.add(Integer.toString(seconds));
+            Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while((line = output.readLine()) != null) {
+                    if(line.startsWith("RESULT ")) {
+                        String[] fields = line.substring(7).split(" ");
+                        System.out.printf("%-14s %12s %12s %12s %12s %12s%n",
+                                profile, fields[0], fields[1], fields[2], fields[3], fields[4]);
+                    }
+                }
+            }
+            if(child.waitFor() != 0) {
+                System.out.printf("%-14s failed with exit code %d%n", profile, child.exitValue());
+            }
+        }
+    }
+
+    /**
+     * exec:java puts the project on a child class loader rather than java.class.path
+     */
+    static String projectClasspath() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if(loader instanceof URLClassLoader) {
+            StringBuilder classpath = new StringBuilder();
+            for(URL url : ((URLClassLoader) loader).getURLs()) {
+                if(classpath.length() > 0) classpath.append(File.pathSeparatorChar);
+                classpath.append(new File(url.getPath()).getPath());
+            }
+            return classpath.toString();
+        }
+        return System.getProperty("java.class.path");
+    }
+
+    private static void runWorkload(int threads, int seconds) throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        AccountDAO accountDAO = new AccountDAO();
+        MessageDAO messageDAO = new MessageDAO();
+        List<Account> accounts = new ArrayList<>();
+        for(int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account("bench" + i, "password"));
+        }
+        accounts = accountDAO.insertAccounts(accounts);
+        List<Message> seed = new ArrayList<>();
+        for(int i = 0; i < 10_000; i++) {
+            seed.add(new Message(accounts.get(i % ACCOUNTS).getAccount_id(), "seed message " + i, 1669947792));
+        }
+        int maxMessageId = messageDAO.insertMessages(seed).get(seed.size() - 1).getMessage_id();
+
+        LongAdder inserts = new LongAdder();
+        LongAdder reads = new LongAdder();
+        LongAdder updates = new LongAdder();
+        LongAdder timelines = new LongAdder();
+        List<Account> posters = accounts;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for(int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while(System.nanoTime() < deadline) {
+                    int operation = random.nextInt(100);
+                    if(operation < 20) {
+                        int posted_by = posters.get(random.nextInt(ACCOUNTS)).getAccount_id();
+                        messageDAO.insertMessage(new Message(posted_by, "benchmark message", System.currentTimeMillis()));
+                        inserts.increment();
+                    } else if(operation < 80) {
+                        messageDAO.getMessageById(1 + random.nextInt(maxMessageId));
+                        reads.increment();
+                    } else if(operation < 90) {
+                        messageDAO.updateMessage(1 + random.nextInt(maxMessageId), "updated " + operation);
+                        updates.increment();
+                    } else {
+                        messageDAO.getMessagesByUser(posters.get(random.nextInt(ACCOUNTS)).getAccount_id());
+                        timelines.increment();
+                    }
+                }
+                done.countDown();
+            });
+            worker.start();
+        }
+        done.await();
+        long total = inserts.sum() + reads.sum() + updates.sum() + timelines.sum();
+        System.out.printf("RESULT %d %d %d %d %d%n", total / seconds, inserts.sum() / seconds,
+                reads.sum() / seconds, updates.sum() / seconds, timelines.sum() / seconds);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,113 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Model.VersionedMessage;
+import Util.ConnectionUtil;
+
+/**
+ * Compares optimistic edits (read the version, then UPDATE ... WHERE version = ?, re-reading on conflict) with
+ * pessimistic ones (SELECT ... FOR UPDATE, then UPDATE) when many threads edit a few hot messages. Each thread picks
+ * its message with Zipfian skew over the hot set, so the smaller the set the more edits collide. Latency covers a
+ * whole read-modify-write, retries included.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.EditContentionBenchmark
+ * Optional arguments: [threads] [seconds] [hot messages...], default 8 threads, 5 seconds, hot sets of 1, 10 and 1000.
+ */
+public class EditContentionBenchmark {
+    private static final long MAX_LATENCY_MICROS = 60_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Integer> hotSets = new ArrayList<>();
+        for(int i = 2; i < args.length; i++) hotSets.add(Integer.parseInt(args[i]));
+        if(hotSets.isEmpty()) hotSets.addAll(List.of(1, 10, 1000));
+
+        System.out.printf("%-11s %6s %10s %12s %10s %10s %10s %10s%n",
+                "mode", "hot", "edits/s", "retries/edit", "failed", "p50 ms", "p99 ms", "max ms");
+        for(int hot : hotSets) {
+            for(boolean locking : new boolean[]{false, true}) {
+                run(locking, threads, seconds, hot);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(boolean locking, int threads, int seconds, int hot) throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        Account author = new AccountDAO().insertAccount(new Account("contention", "password"));
+        List<Message> seed = new ArrayList<>();
+        for(int i = 0; i < hot; i++) {
+            seed.add(new Message(author.getAccount_id(), "hot message " + i, 1669947792));
+        }
+        List<Message> messages = messageDAO.insertMessages(seed);
+        ZipfianGenerator popularity = new ZipfianGenerator(hot, 0.99);
+
+        ConcurrentHistogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        LongAdder edits = new LongAdder();
+        LongAdder retries = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for(int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                Random random = new Random(thread);
+                int sequence = 0;
+                while(System.nanoTime() < deadline) {
+                    int message_id = messages.get(popularity.next(random)).getMessage_id();
+                    String text = "edit " + thread + "." + sequence++;
+                    long start = System.nanoTime();
+                    VersionedMessage updated = locking
+                            ? messageDAO.updateMessageLocking(message_id, text, null)
+                            : editOptimistically(messageDAO, message_id, text, retries);
+                    if(updated == null) {
+                        failed.increment();
+                        continue;
+                    }
+                    latencies.recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - start) / 1000));
+                    edits.increment();
+                }
+                done.countDown();
+            });
+            worker.start();
+        }
+        done.await();
+
+        System.out.printf("%-11s %6d %10d %12.3f %10d %10.2f %10.2f %10.2f%n",
+                locking ? "for-update" : "optimistic", hot, edits.sum() / seconds,
+                edits.sum() == 0 ? 0.0 : (double) retries.sum() / edits.sum(), failed.sum(),
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getMaxValue() / 1000.0);
+    }
+
+    /**
+     * Reads the message and edits the version it saw, as a client sending If-Match would, starting over on conflict
+     */
+    private static VersionedMessage editOptimistically(MessageDAO messageDAO, int message_id, String text,
+            LongAdder retries) {
+        while(true) {
+            VersionedMessage current = (VersionedMessage) messageDAO.getMessageById(message_id);
+            if(current == null) return null;
+            try {
+                return messageDAO.updateMessage(message_id, text, current.getVersion());
+            } catch(ConcurrentModificationException e) {
+                retries.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Model.Message;
+import Model.MessageEvent;
+import Service.MessageEventBus;
+
+/**
+ * Fans message events out to many concurrent subscribers on one node and reports publish throughput, delivery
+ * latency percentiles and slow-consumer drops. Subscribers are in-process sinks, so this measures the bus itself;
+ * socket write cost for real SSE clients comes on top.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.EventBusFanoutBenchmark
+ *     -Dexec.args="[subscribers] [events]"
+ */
+public class EventBusFanoutBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        MessageEventBus bus = new MessageEventBus(events + 16, 4096, threads);
+        CountDownLatch done = new CountDownLatch(subscribers * events);
+        // Latency histogram in microseconds, one slot per microsecond up to one second
+        AtomicLongArray latencyMicros = new AtomicLongArray(1_000_001);
+        List<MessageEventBus.Subscription> subscriptions = new ArrayList<>(subscribers);
+        for(int i = 0; i < subscribers; i++) {
+            subscriptions.add(bus.subscribe(null, 0, event -> {
+                long micros = (System.nanoTime() - event.getPublished_nanos()) / 1000;
+                latencyMicros.incrementAndGet((int) Math.min(micros, 1_000_000));
+                done.countDown();
+            }, () -> { }));
+        }
+
+        long start = System.nanoTime();
+        for(int i = 1; i <= events; i++) {
+            bus.publish(MessageEvent.Type.CREATED, new Message(i, 1, "benchmark message " + i, 1669947792L));
+        }
+        long publishNanos = System.nanoTime() - start;
+        boolean completed = done.await(120, TimeUnit.SECONDS);
+        long totalNanos = System.nanoTime() - start;
+
+        System.out.printf("subscribers=%d events=%d dispatchThreads=%d completed=%b%n", subscribers, events, threads, completed);
+        System.out.printf("publish: %.0f events/sec (%.1f us per fan-out)%n",
+                events / (publishNanos / 1e9), publishNanos / 1e3 / events);
+        System.out.printf("delivery: %.0f deliveries/sec, delivered=%d dropped=%d%n",
+                bus.getDelivered() / (totalNanos / 1e9), bus.getDelivered(), bus.getDropped());
+        for(double percentile : Arrays.asList(50.0, 90.0, 99.0, 99.9, 100.0)) {
+            System.out.printf("p%-5s %8d us%n", percentile, percentileMicros(latencyMicros, bus.getDelivered(), percentile));
+        }
+        subscriptions.forEach(MessageEventBus.Subscription::close);
+    }
+
+    private static long percentileMicros(AtomicLongArray histogram, long total, double percentile) {
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for(int micros = 0; micros < histogram.length(); micros++) {
+            seen += histogram.get(micros);
+            if(seen >= target && target > 0) return micros;
+        }
+        return histogram.length() - 1;
+    }
+}
@@ -0,0 +1,383 @@
+package Benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop load generator for the whole API over loopback, with latency reported per operation from HdrHistograms.
+ *
+ * Requests arrive as a Poisson process at a fixed mean rate whether or not earlier ones have finished, and latency
+ * is measured from when a request was due rather than when it was sent, so a stalled server shows up as the queueing
+ * delay its users would see instead of being hidden by a slowed-down client (coordinated omission). Accounts and
+ * messages are picked with Zipfian popularity: low-numbered accounts and recent messages are hot.
+ *
+ * The run can be recorded to a log of timed requests and replayed later, against this build or another, with the
+ * same arrival times. Replays reseed the same number of accounts and messages first so ids line up; requests for
+ * messages created at different ids during the replay may miss.
+ *
+ * Unless --url is given an API is started in process on a reset database, with the per-account write limit lifted
+ * and password hashing cheapened (--hash-iterations) so seeding and logins measure the API rather than PBKDF2.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.LoadGenerator
+ *     -Dexec.args="[--rate 500] [--seconds 30] [--mix register=1,login=4,post=10,timeline=35,get=40,patch=5,delete=5]
+ *     [--accounts 1000] [--messages 10000] [--zipf 0.99] [--url http://host:port] [--hash-iterations 1000]
+ *     [--record FILE] [--replay FILE] [--hgrm FILE]"
+ */
+public class LoadGenerator {
+    private static final int PORT = 8091;
+    private static final String PASSWORD = "password";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    enum Operation {
+        REGISTER, LOGIN, POST, TIMELINE, GET, PATCH, DELETE
+    }
+
+    /**
+     * One request, due offsetMicros after the run started.
+     */
+    static class TimedRequest {
+        final long offsetMicros;
+        final Operation operation;
+        final String method;
+        final String path;
+        final String body;
+
+        TimedRequest(long offsetMicros, Operation operation, String method, String path, String body) {
+            this.offsetMicros = offsetMicros;
+            this.operation = operation;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+
+        String toLogLine() {
+            return offsetMicros + "\t" + operation + "\t" + method + "\t" + path + "\t" + (body == null ? "" : body);
+        }
+
+        static TimedRequest fromLogLine(String line) {
+            String[] fields = line.split("\t", 5);
+            return new TimedRequest(Long.parseLong(fields[0]), Operation.valueOf(fields[1]), fields[2], fields[3],
+                    fields.length < 5 || fields[4].isEmpty() ? null : fields[4]);
+        }
+    }
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors())))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final Random random = new Random(42);
+    private final ZipfianGenerator accountPopularity;
+    private final ZipfianGenerator messagePopularity;
+    private final int[] accountIds;
+    private final List<Integer> messageIds = new ArrayList<>();
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final LongAdder inFlight = new LongAdder();
+
+    LoadGenerator(String baseUrl, int accounts, double theta) {
+        this.baseUrl = baseUrl;
+        this.accountIds = new int[accounts];
+        this.accountPopularity = new ZipfianGenerator(accounts, theta);
+        this.messagePopularity = new ZipfianGenerator(100_000, theta);
+        for(Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            failures.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        List<TimedRequest> replay = null;
+        int accounts = Integer.parseInt(options.getOrDefault("accounts", "1000"));
+        int messages = Integer.parseInt(options.getOrDefault("messages", "10000"));
+        if(options.containsKey("replay")) {
+            replay = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(options.get("replay")), StandardCharsets.UTF_8)) {
+                // The header records how the recorded run was seeded
+                String[] header = reader.readLine().substring(2).split(" ");
+                accounts = Integer.parseInt(header[0].split("=")[1]);
+                messages = Integer.parseInt(header[1].split("=")[1]);
+                String line;
+                while((line = reader.readLine()) != null) {
+                    if(!line.isEmpty()) replay.add(TimedRequest.fromLogLine(line));
+                }
+            }
+        }
+
+        String url = options.get("url");
+        Javalin app = null;
+        if(url == null) {
+            System.setProperty("ratelimit.per.second", "1000000");
+            System.setProperty("ratelimit.burst", "1000000");
+            System.setProperty("ratelimit.anonymous.per.second", "1000000");
+            System.setProperty("ratelimit.anonymous.burst", "1000000");
+            System.setProperty("password.hash.iterations", options.getOrDefault("hash-iterations", "1000"));
+            ConnectionUtil.resetTestDatabase();
+            app = new SocialMediaController().startAPI().start(PORT);
+            url = "http://localhost:" + PORT;
+        }
+
+        LoadGenerator generator = new LoadGenerator(url, accounts, Double.parseDouble(options.getOrDefault("zipf", "0.99")));
+        generator.seed(accounts, messages);
+
+        BufferedWriter record = null;
+        if(options.containsKey("record")) {
+            record = Files.newBufferedWriter(Paths.get(options.get("record")), StandardCharsets.UTF_8);
+            record.write("# accounts=" + accounts + " messages=" + messages + "\n");
+        }
+        long elapsedNanos;
+        if(replay != null) {
+            elapsedNanos = generator.replay(replay);
+        } else {
+            elapsedNanos = generator.run(Double.parseDouble(options.getOrDefault("rate", "500")),
+                    Integer.parseInt(options.getOrDefault("seconds", "30")),
+                    parseMix(options.getOrDefault("mix", "register=1,login=4,post=10,timeline=35,get=40,patch=5,delete=5")),
+                    record);
+        }
+        if(record != null) record.close();
+
+        generator.report(elapsedNanos);
+        if(options.containsKey("hgrm")) {
+            try (PrintStream out = new PrintStream(options.get("hgrm"), StandardCharsets.UTF_8)) {
+                generator.total().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        if(app != null) app.stop();
+        System.exit(0);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for(String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Registers the accounts and posts the messages the run reads from, one at a time so ids are reproducible
+     */
+    void seed(int accounts, int messages) throws IOException, InterruptedException {
+        for(int i = 0; i < accounts; i++) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString(account("load-user-" + i))).build());
+            if(response.statusCode() != 200) {
+                throw new IllegalStateException("Registering load-user-" + i + " failed with " + response.statusCode()
+                        + "; seed a fresh database");
+            }
+            accountIds[i] = objectMapper.readTree(response.body()).get("account_id").asInt();
+        }
+        for(int i = 0; i < messages; i++) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString(message(pickAccount(), "seed " + i))).build());
+            addMessage(response.body());
+        }
+    }
+
+    /**
+     * Issues requests as a Poisson process until the time is up
+     * @return Nanoseconds from the first request being due until the last response arrived
+     */
+    long run(double ratePerSecond, int seconds, Map<Operation, Integer> mix, BufferedWriter record) throws IOException {
+        Operation[] operations = mix.keySet().toArray(new Operation[0]);
+        int[] cumulative = new int[operations.length];
+        int totalWeight = 0;
+        for(int i = 0; i < operations.length; i++) {
+            totalWeight += mix.get(operations[i]);
+            cumulative[i] = totalWeight;
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        double meanGapNanos = 1e9 / ratePerSecond;
+        double due = start;
+        while(due < end) {
+            int pick = random.nextInt(totalWeight);
+            int index = 0;
+            while(cumulative[index] <= pick) index++;
+            TimedRequest request = build(operations[index], (long) ((due - start) / 1000));
+            if(record != null) {
+                record.write(request.toLogLine());
+                record.write('\n');
+            }
+            dispatch(request, (long) due);
+            due += -Math.log(1 - random.nextDouble()) * meanGapNanos;
+        }
+        return awaitCompletion(start);
+    }
+
+    /**
+     * Issues recorded requests at their recorded times
+     * @return Nanoseconds from the first request being due until the last response arrived
+     */
+    long replay(List<TimedRequest> requests) {
+        long start = System.nanoTime();
+        for(TimedRequest request : requests) {
+            dispatch(request, start + TimeUnit.MICROSECONDS.toNanos(request.offsetMicros));
+        }
+        return awaitCompletion(start);
+    }
+
+    private TimedRequest build(Operation operation, long offsetMicros) {
+        switch(operation) {
+            case REGISTER:
+                return new TimedRequest(offsetMicros, operation, "POST", "/register",
+                        account("load-new-" + registrations.incrementAndGet() + "-" + offsetMicros));
+            case LOGIN:
+                return new TimedRequest(offsetMicros, operation, "POST", "/login",
+                        account("load-user-" + accountPopularity.next(random)));
+            case POST:
+                return new TimedRequest(offsetMicros, operation, "POST", "/messages", message(pickAccount(), "load " + offsetMicros));
+            case TIMELINE:
+                return new TimedRequest(offsetMicros, operation, "GET", "/accounts/" + pickAccount() + "/messages", null);
+            case GET:
+                return new TimedRequest(offsetMicros, operation, "GET", "/messages/" + pickMessage(), null);
+            case PATCH:
+                return new TimedRequest(offsetMicros, operation, "PATCH", "/messages/" + pickMessage(),
+                        "{\"message_text\":\"edited " + offsetMicros + "\"}");
+            default:
+                return new TimedRequest(offsetMicros, operation, "DELETE", "/messages/" + pickMessage(), null);
+        }
+    }
+
+    private void dispatch(TimedRequest request, long dueNanos) {
+        long wait;
+        while((wait = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        HttpRequest.BodyPublisher body = request.body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(request.body);
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(baseUrl + request.path))
+                .method(request.method, body)
+                .build();
+        inFlight.increment();
+        CompletableFuture<HttpResponse<String>> response = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString());
+        response.whenComplete((result, error) -> {
+            long micros = (System.nanoTime() - dueNanos) / 1000;
+            latencies.get(request.operation).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+            if(error != null || result.statusCode() >= 300) {
+                failures.get(request.operation).increment();
+            } else if(request.operation == Operation.POST) {
+                addMessage(result.body());
+            }
+            inFlight.decrement();
+        });
+    }
+
+    private long awaitCompletion(long start) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while(inFlight.sum() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private int pickAccount() {
+        return accountIds[accountPopularity.next(random)];
+    }
+
+    /**
+     * Recent messages are the popular ones
+     */
+    private int pickMessage() {
+        synchronized(messageIds) {
+            if(messageIds.isEmpty()) return 1;
+            int age = messagePopularity.next(random) % messageIds.size();
+            return messageIds.get(messageIds.size() - 1 - age);
+        }
+    }
+
+    private void addMessage(String body) {
+        try {
+            JsonNode message = objectMapper.readTree(body);
+            if(message != null && message.has("message_id")) {
+                synchronized(messageIds) {
+                    messageIds.add(message.get("message_id").asInt());
+                }
+            }
+        } catch(IOException e) {
+            // Not a message; nothing to remember
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String account(String username) {
+        return "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}";
+    }
+
+    private static String message(int posted_by, String text) {
+        return "{\"posted_by\":" + posted_by + ",\"message_text\":\"" + text + "\",\"time_posted_epoch\":"
+                + System.currentTimeMillis() / 1000 + "}";
+    }
+
+    private Histogram total() {
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        for(Histogram histogram : latencies.values()) {
+            total.add(histogram);
+        }
+        return total;
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-9s %9s %9s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "requests", "req/s", "failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for(Operation operation : Operation.values()) {
+            print(operation.name().toLowerCase(), latencies.get(operation), failures.get(operation).sum(), seconds);
+        }
+        long failed = 0;
+        for(LongAdder count : failures.values()) failed += count.sum();
+        print("all", total(), failed, seconds);
+    }
+
+    private static void print(String name, Histogram histogram, long failed, double seconds) {
+        if(histogram.getTotalCount() == 0) return;
+        System.out.printf("%-9s %9d %9.0f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds, failed,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,63 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import Service.CredentialVerifier;
+import Util.PasswordHasher;
+
+/**
+ * Measures login verification throughput at several PBKDF2 work factors: single-threaded (logins/sec per core),
+ * through a CredentialVerifier using every core, and for repeated logins answered by the verified-credential cache.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.PasswordHashBenchmark
+ * Optional arguments: the work factors to test, default 10000 50000 100000 210000 600000.
+ */
+public class PasswordHashBenchmark {
+    public static void main(String[] args) throws Exception {
+        int[] workFactors = {10_000, 50_000, 100_000, 210_000, 600_000};
+        if(args.length > 0) {
+            workFactors = new int[args.length];
+            for(int i = 0; i < args.length; i++) workFactors[i] = Integer.parseInt(args[i]);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-12s %12s %16s %16s %18s%n",
+                "iterations", "ms/login", "logins/s/core", "logins/s (" + cores + ")", "cached logins/s");
+        for(int iterations : workFactors) {
+            PasswordHasher hasher = new PasswordHasher(iterations);
+            String stored = hasher.hash("password");
+            // warm up the JIT before measuring
+            for(int i = 0; i < 5; i++) hasher.verify("password", stored);
+
+            int singleLogins = Math.max(5, 2_000_000 / iterations);
+            long start = System.nanoTime();
+            for(int i = 0; i < singleLogins; i++) hasher.verify("password", stored);
+            double singleSeconds = (System.nanoTime() - start) / 1e9;
+
+            CredentialVerifier verifier = new CredentialVerifier(hasher, cores, singleLogins * cores, 1);
+            int parallelLogins = singleLogins * cores;
+            List<CompletableFuture<Boolean>> pending = new ArrayList<>(parallelLogins);
+            start = System.nanoTime();
+            for(int i = 0; i < parallelLogins; i++) {
+                // Distinct usernames so the one-entry cache cannot answer
+                pending.add(verifier.verify("user" + i, "password", stored));
+            }
+            for(CompletableFuture<Boolean> login : pending) login.join();
+            double parallelSeconds = (System.nanoTime() - start) / 1e9;
+
+            CredentialVerifier caching = new CredentialVerifier(hasher, cores, 16, 16);
+            caching.verify("user", "password", stored).join();
+            int cachedLogins = 200_000;
+            start = System.nanoTime();
+            for(int i = 0; i < cachedLogins; i++) caching.verify("user", "password", stored).join();
+            double cachedSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-12d %12.2f %16.1f %16.1f %18.0f%n", iterations,
+                    singleSeconds * 1e3 / singleLogins, singleLogins / singleSeconds,
+                    parallelLogins / parallelSeconds, cachedLogins / cachedSeconds);
+        }
+    }
+}
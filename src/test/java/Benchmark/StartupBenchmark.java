@@ -0,0 +1,169 @@
+package Benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+import Controller.SocialMediaController;
+import Util.ApplicationContext;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Measures how long a fresh JVM takes from launch to its first served request, GET /messages, with and without an
+ * application class-data-sharing archive. Every run is its own JVM on a database under target/h2-bench/startup.
+ *
+ * The archive is made by one training run with -XX:ArchiveClassesAtExit; later runs map it with
+ * -XX:SharedArchiveFile, skipping the parsing and verification of every class the server loads. The same two flags
+ * work for Main outside the benchmark. Archived classes must come from jars, so the project's class directories are
+ * packed into target/startup-benchmark.jar first.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.StartupBenchmark
+ * Optional arguments: [runs], default 5.
+ */
+public class StartupBenchmark {
+    private static final int PORT = 8092;
+    private static final String DATABASE_DIRECTORY = "./target/h2-bench/startup";
+    private static String classpath;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals("--serve")) {
+            serveFirstRequest();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--init")) {
+            ConnectionUtil.resetTestDatabase();
+            ConnectionUtil.close();
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String archive = new File("target/startup-benchmark.jsa").getAbsolutePath();
+        new File(archive).delete();
+        classpath = jarClasspath(DatabaseProfileBenchmark.projectClasspath());
+
+        child(List.of(), "--init");
+        child(List.of("-XX:ArchiveClassesAtExit=" + archive), "--serve");
+
+        System.out.printf("%-8s %12s %14s %12s%n", "mode", "jvm->main ms", "main->first ms", "total ms");
+        report("default", runs, List.of());
+        report("appcds", runs, List.of("-XX:SharedArchiveFile=" + archive));
+        System.exit(0);
+    }
+
+    private static void report(String mode, int runs, List<String> jvmOptions) throws Exception {
+        long[][] results = new long[runs][];
+        for(int i = 0; i < runs; i++) {
+            results[i] = child(jvmOptions, "--serve");
+        }
+        System.out.printf("%-8s %12d %14d %12d%n", mode, median(results, 0), median(results, 1), median(results, 2));
+    }
+
+    private static long median(long[][] results, int column) {
+        long[] values = new long[results.length];
+        for(int i = 0; i < results.length; i++) values[i] = results[i][column];
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /**
+     * Runs this class in a new JVM and returns the {jvm to main, main to first response, total} it reports
+     */
+    private static long[] child(List<String> jvmOptions, String mode) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-Xlog:cds=off");
+        command.add("-cp");
+        command.add(classpath);
+        command.add("-Ddb.directory=" + DATABASE_DIRECTORY);
+        command.add(StartupBenchmark.class.getName());
+        command.add(mode);
+        long[] result = null;
+        Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = output.readLine()) != null) {
+                if(line.startsWith("RESULT ")) {
+                    String[] fields = line.substring(7).split(" ");
+                    result = new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])};
+                }
+            }
+        }
+        if(child.waitFor() != 0) {
+            throw new IllegalStateException(mode + " run failed with exit code " + child.exitValue());
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the directories on a classpath with one jar holding their contents
+     */
+    private static String jarClasspath(String directoryClasspath) throws IOException {
+        Path jar = Paths.get("target", "startup-benchmark.jar").toAbsolutePath();
+        List<String> entries = new ArrayList<>();
+        entries.add(jar.toString());
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for(String entry : directoryClasspath.split(File.pathSeparator)) {
+                Path path = Paths.get(entry);
+                if(!Files.isDirectory(path)) {
+                    entries.add(entry);
+                    continue;
+                }
+                try (Stream<Path> files = Files.walk(path)) {
+                    for(Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                        String name = path.relativize(file).toString().replace(File.separatorChar, '/');
+                        try {
+                            out.putNextEntry(new JarEntry(name));
+                        } catch(ZipException duplicate) {
+                            continue; // main and test classes both have the resource; the first one wins
+                        }
+                        Files.copy(file, out);
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Starts the server as Main does, minus the warm-up, and times the first request from inside the JVM. Exits
+     * normally so that a training run writes its archive.
+     */
+    private static void serveFirstRequest() throws Exception {
+        long mainMillis = System.currentTimeMillis();
+        long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        Javalin app = new SocialMediaController(new ApplicationContext()).startAPI();
+        app.start(PORT);
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        long firstMillis = System.currentTimeMillis();
+        if(response.statusCode() != 200) {
+            throw new IllegalStateException("First request failed with status " + response.statusCode());
+        }
+        app.stop();
+        ConnectionUtil.close();
+        System.out.printf("RESULT %d %d %d%n", mainMillis - jvmStartMillis, firstMillis - mainMillis,
+                firstMillis - jvmStartMillis);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,112 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Load test for /ws/messages: opens many WebSocket clients over loopback that all follow account 1, posts messages
+ * through POST /messages and reports fan-out latency from the POST being sent to each client receiving the frame.
+ * Resets the database before running.
+ *
+ * Run with:
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=Benchmark.WebSocketFanoutBenchmark
+ *     -Dexec.args="[clients] [messages]"
+ */
+public class WebSocketFanoutBenchmark {
+    private static final int PORT = 8090;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        // The benchmark posts as a single account from a single client, so lift the write limits
+        System.setProperty("ratelimit.per.second", "1000000");
+        System.setProperty("ratelimit.burst", "1000000");
+        System.setProperty("ratelimit.anonymous.per.second", "1000000");
+        System.setProperty("ratelimit.anonymous.burst", "1000000");
+        System.setProperty("ws.max.pending", String.valueOf(messages * 2));
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI().start(PORT);
+        HttpClient httpClient = HttpClient.newHttpClient();
+
+        CountDownLatch received = new CountDownLatch(clients * messages);
+        AtomicLongArray latencyMicros = new AtomicLongArray(10_000_001);
+        LongAdder frames = new LongAdder();
+        List<WebSocket> sockets = new ArrayList<>(clients);
+        for(int i = 0; i < clients; i++) {
+            WebSocket socket = httpClient.newWebSocketBuilder()
+                    .buildAsync(URI.create("ws://localhost:" + PORT + "/ws/messages"), new WebSocket.Listener() {
+                        private final StringBuilder partial = new StringBuilder();
+
+                        @Override
+                        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                            partial.append(data);
+                            if(last) {
+                                String frame = partial.toString();
+                                partial.setLength(0);
+                                int start = frame.indexOf("sent=");
+                                if(start >= 0) {
+                                    long sent = Long.parseLong(frame.substring(start + 5, frame.indexOf('"', start)));
+                                    long micros = (System.nanoTime() - sent) / 1000;
+                                    latencyMicros.incrementAndGet((int) Math.min(micros, 10_000_000));
+                                    frames.increment();
+                                    received.countDown();
+                                }
+                            }
+                            webSocket.request(1);
+                            return null;
+                        }
+                    }).join();
+            socket.sendText("{\"action\":\"subscribe\",\"account_ids\":[1," + (i + 2) + "]}", true).join();
+            sockets.add(socket);
+        }
+        Thread.sleep(500);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < messages; i++) {
+            HttpRequest post = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + PORT + "/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"sent=" + System.nanoTime()
+                            + "\",\"time_posted_epoch\":1669947792}"))
+                    .build();
+            httpClient.send(post, HttpResponse.BodyHandlers.discarding());
+        }
+        boolean completed = received.await(120, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("clients=%d messages=%d completed=%b frames=%d (expected %d)%n",
+                clients, messages, completed, frames.sum(), (long) clients * messages);
+        System.out.printf("fan-out throughput: %.0f frames/sec%n", frames.sum() / (elapsed / 1e9));
+        for(double percentile : Arrays.asList(50.0, 90.0, 99.0, 99.9, 100.0)) {
+            System.out.printf("p%-5s %8d us%n", percentile, percentileMicros(latencyMicros, frames.sum(), percentile));
+        }
+
+        sockets.forEach(socket -> socket.abort());
+        app.stop();
+    }
+
+    private static long percentileMicros(AtomicLongArray histogram, long total, double percentile) {
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for(int micros = 0; micros < histogram.length(); micros++) {
+            seen += histogram.get(micros);
+            if(seen >= target && target > 0) return micros;
+        }
+        return histogram.length() - 1;
+    }
+}
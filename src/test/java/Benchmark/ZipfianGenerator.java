@@ -0,0 +1,57 @@
+package Benchmark;
+
+import java.util.Random;
+
+/**
+ * Draws ranks 0..n-1 with Zipfian popularity: rank k is chosen with probability proportional to 1 / (k + 1)^theta,
+ * so a few keys take most of the traffic as on a real timeline. The cumulative distribution is computed once and
+ * each draw is a binary search.
+ */
+public class ZipfianGenerator {
+    private final double[] cumulative;
+
+    /**
+     * @param n Number of ranks
+     * @param theta Skew; 0 is uniform, around 1 is typical of social workloads
+     */
+    public ZipfianGenerator(int n, double theta) {
+        if(n < 1) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for(int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, theta);
+            cumulative[k] = sum;
+        }
+        for(int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    /**
+     * @param random The source of randomness
+     * @return A rank, 0 being the most popular
+     */
+    public int next(Random random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(cumulative[middle] < u) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Number of ranks
+     */
+    public int size() {
+        return cumulative.length;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Service.BulkImporter;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+import io.javalin.Javalin;
+
+public class BulkImportTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    BulkImporter importer;
+    Path file;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. The importer uses tiny chunks and batches so a small file spans several.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("import.chunk.bytes", "40");
+        System.setProperty("import.batch.size", "2");
+        System.setProperty("password.hash.iterations", "1000");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        importer = new BulkImporter();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        app.stop();
+        System.clearProperty("import.chunk.bytes");
+        System.clearProperty("import.batch.size");
+        System.clearProperty("password.hash.iterations");
+        System.clearProperty("import.accept.hashes");
+        if(file != null) Files.deleteIfExists(file);
+    }
+
+    /**
+     * Importing a CSV of accounts, some breaking the registration rules, then logging in as an imported account
+     *
+     * Expected Response:
+     *  Valid accounts are imported; blank usernames, short passwords, duplicates and taken usernames are rejected
+     *  Status Code: 200 for POST localhost:8080/login with an imported account's plaintext password
+     */
+    @Test
+    public void importAccountsCsv() throws IOException, InterruptedException {
+        file = Files.createTempFile("accounts", ".csv");
+        Files.writeString(file, "username,password\n"
+                + "alice,password1\n"
+                + "\"bob, the builder\",\"pa\"\"ss\"\n"
+                + ",password2\n"
+                + "carol,abc\n"
+                + "alice,password3\n"
+                + "testuser1,password4\n"
+                + "dave,password5\n");
+
+        BulkImporter.ImportResult result = importer.importAccounts(file);
+        Assert.assertEquals(3, result.getImported());
+        Assert.assertEquals(4, result.getRejected());
+        Assert.assertEquals(0, result.getFailed());
+
+        Assert.assertEquals(200, login("bob, the builder", "pa\\\"ss"));
+        Assert.assertEquals(200, login("dave", "password5"));
+        Assert.assertEquals(401, login("carol", "abc"));
+    }
+
+    /**
+     * Importing NDJSON messages, some breaking the message rules, then sending an http request to
+     * GET localhost:8080/accounts/1/messages
+     *
+     * Expected Response:
+     *  Valid messages are imported; blank and overlong text, unknown posters and malformed lines are rejected
+     *  Status Code: 200
+     *  Response Body: the seeded message and the imported ones
+     */
+    @Test
+    public void importMessagesNdjson() throws IOException, InterruptedException {
+        file = Files.createTempFile("messages", ".ndjson");
+        Files.writeString(file, "{\"posted_by\":1,\"message_text\":\"imported 1\",\"time_posted_epoch\":1669947800}\n"
+                + "{\"posted_by\":1,\"message_text\":\" \",\"time_posted_epoch\":1669947801}\n"
+                + "{\"posted_by\":1,\"message_text\":\"" + "x".repeat(256) + "\",\"time_posted_epoch\":1669947802}\n"
+                + "{\"posted_by\":999,\"message_text\":\"nobody\",\"time_posted_epoch\":1669947803}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"message_id\":7,\"posted_by\":1,\"message_text\":\"imported 2\",\"time_posted_epoch\":1669947804}\n");
+
+        BulkImporter.ImportResult result = importer.importMessages(file);
+        Assert.assertEquals(2, result.getImported());
+        Assert.assertEquals(4, result.getRejected());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode messages = objectMapper.readTree(response.body());
+        Assert.assertEquals(3, messages.size());
+        // Chunks load in parallel, so imported messages may be numbered in any order
+        Set<String> texts = new HashSet<>();
+        for(JsonNode message : messages) {
+            texts.add(message.get("message_text").asText());
+        }
+        Assert.assertEquals(Set.of("test message 1", "imported 1", "imported 2"), texts);
+    }
+
+    /**
+     * Importing an account whose password is already a hash, first as it is and then with import.accept.hashes=true
+     *
+     * Expected Response:
+     *  Without the flag the hash is treated as the password itself; with it the hash is stored and the original
+     *  password logs in
+     */
+    @Test
+    public void prehashedPasswordsNeedOptIn() throws IOException, InterruptedException {
+        String hash = new PasswordHasher(1000).hash("original");
+        file = Files.createTempFile("accounts", ".ndjson");
+        Files.writeString(file, "{\"username\":\"literal\",\"password\":\"" + hash + "\"}\n");
+        Assert.assertEquals(1, importer.importAccounts(file).getImported());
+        Assert.assertEquals(401, login("literal", "original"));
+        Assert.assertEquals(200, login("literal", hash));
+
+        System.setProperty("import.accept.hashes", "true");
+        Files.writeString(file, "{\"username\":\"migrated\",\"password\":\"" + hash + "\"}\n");
+        Assert.assertEquals(1, new BulkImporter().importAccounts(file).getImported());
+        Assert.assertEquals(200, login("migrated", "original"));
+    }
+
+    private int login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+}
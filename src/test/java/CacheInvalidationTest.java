@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Controller.ResponseCache;
+import Util.BoundedCache;
+
+public class CacheInvalidationTest {
+
+    /**
+     * A load whose put is overtaken by an invalidation of the same key: the writer invalidates after the load passed
+     * its generation check but before the loaded value is stored
+     *
+     * Expected Result:
+     *  The stale value is returned to the loading caller but not left in the cache
+     */
+    @Test
+    public void invalidationDuringLoadIsNotOverwritten() {
+        AtomicInteger pendingInvalidations = new AtomicInteger(1);
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10) {
+            @Override
+            public void put(Integer key, String value) {
+                if(pendingInvalidations.getAndDecrement() > 0) {
+                    invalidate(key);
+                }
+                super.put(key, value);
+            }
+        };
+
+        Assert.assertEquals("stale", cache.get(1, () -> "stale"));
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(0, cache.size());
+
+        Assert.assertEquals("fresh", cache.get(1, () -> "fresh"));
+        Assert.assertEquals("fresh", cache.get(1));
+    }
+
+    /**
+     * The same race through putIfCurrent, with the generation read before a batch load
+     *
+     * Expected Result:
+     *  The value is not cached
+     */
+    @Test
+    public void putIfCurrentUndoesRacingPut() {
+        AtomicInteger pendingInvalidations = new AtomicInteger(1);
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10) {
+            @Override
+            public void put(Integer key, String value) {
+                if(pendingInvalidations.getAndDecrement() > 0) {
+                    invalidate(key);
+                }
+                super.put(key, value);
+            }
+        };
+        long observedGeneration = cache.getGeneration();
+        cache.putIfCurrent(1, "stale", observedGeneration);
+        Assert.assertNull(cache.get(1));
+    }
+
+    /**
+     * Loading one more response body than the cache holds, then looking each body up with a loader that fails
+     *
+     * Expected Result:
+     *  Only one body was evicted to make room; the other four are still answered from the cache
+     */
+    @Test
+    public void fullResponseCacheEvictsOneEntry() {
+        ResponseCache cache = new ResponseCache(false, 1024, 6, "gzip", 4);
+        for(int i = 0; i < 5; i++) {
+            cache.get("key" + i, () -> new byte[]{1});
+        }
+        int cached = 0;
+        for(int i = 0; i < 5; i++) {
+            try {
+                cache.get("key" + i, () -> {
+                    throw new IllegalStateException("not cached");
+                });
+                cached++;
+            } catch(IllegalStateException e) {
+                // Evicted
+            }
+        }
+        Assert.assertEquals(4, cached);
+    }
+}
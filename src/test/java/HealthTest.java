@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class HealthTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("admin.token", "admin-secret");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("admin.token");
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/health/live and GET localhost:8080/health/ready
+     *
+     * Expected Response:
+     *  live is 200 throughout; ready is 503 until warm-up, then 200 with a healthy database
+     */
+    @Test
+    public void liveAndReady() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/health/live").statusCode());
+        HttpResponse<String> cold = get("/health/ready");
+        Assert.assertEquals(503, cold.statusCode());
+        Assert.assertTrue(objectMapper.readTree(cold.body()).get("database").asBoolean());
+
+        socialMediaController.warmUp();
+        HttpResponse<String> ready = get("/health/ready");
+        Assert.assertEquals(200, ready.statusCode());
+        JsonNode body = objectMapper.readTree(ready.body());
+        Assert.assertTrue(body.get("ready").asBoolean());
+        Assert.assertFalse(body.get("draining").asBoolean());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register, then shutting down while its password is hashed
+     *
+     * Expected Response:
+     *  The registration completes with 200 and is stored before the server stops
+     */
+    @Test
+    public void shutdownDrainsRequestsInFlight() throws Exception {
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"draining\", \"password\": \"password\"}"))
+                .build();
+        CompletableFuture<HttpResponse<String>> inFlight = webClient.sendAsync(register, HttpResponse.BodyHandlers.ofString());
+        // The metrics request counts itself, so a second request in flight is the registration
+        for(int i = 0; i < 100 && !inFlight.isDone(); i++) {
+            if(objectMapper.readTree(get("/admin/metrics").body()).get("requests.in.flight").asInt() > 1) break;
+            Thread.sleep(5);
+        }
+
+        Assert.assertTrue(socialMediaController.shutdown());
+        Assert.assertEquals(200, inFlight.get().statusCode());
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            Assert.assertTrue(connection.createStatement()
+                    .executeQuery("SELECT * FROM account WHERE username = 'draining'").next());
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                        .header("Authorization", "Bearer admin-secret").build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
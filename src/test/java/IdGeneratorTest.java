@@ -0,0 +1,169 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.IdGenerator;
+
+public class IdGeneratorTest {
+
+    /**
+     * Before every test, reset the database
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Two nodes times three shards, six generators sharing stride 6, each allocating singles and batches from
+     * several threads at once
+     *
+     * Expected Result:
+     *  No id is handed out twice, and every id falls in its generator's slot
+     */
+    @Test
+    public void generatorsSharingAStrideNeverCollide() throws InterruptedException {
+        int nodes = 2;
+        int shards = 3;
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for(int node = 0; node < nodes; node++) {
+            for(int shard = 0; shard < shards; shard++) {
+                IdGenerator generator = new IdGenerator(nodes * shards, node * shards + shard);
+                generator.advancePast(100);
+                for(int t = 0; t < 2; t++) {
+                    Thread thread = new Thread(() -> {
+                        for(int i = 0; i < 500; i++) {
+                            int[] batch = i % 2 == 0 ? new int[]{generator.next()} : generator.next(3);
+                            for(int id : batch) {
+                                Assert.assertTrue(id > 100);
+                                Assert.assertEquals(generator.getOffset(), id % generator.getStride());
+                                Assert.assertTrue(ids.add(id));
+                            }
+                        }
+                    });
+                    thread.start();
+                    threads.add(thread);
+                }
+            }
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(nodes * shards * 2 * (250 + 250 * 3), ids.size());
+    }
+
+    /**
+     * Allocating a batch with next(n), then moving past ids in use with advancePast
+     *
+     * Expected Result:
+     *  Batches are increasing ids one stride apart; advancePast only ever raises the sequence; an unseeded generator
+     *  refuses to allocate
+     */
+    @Test
+    public void batchesAndAdvancePast() {
+        IdGenerator generator = new IdGenerator(4, 1);
+        try {
+            generator.next();
+            Assert.fail("unseeded generator allocated an id");
+        } catch(IllegalStateException e) {
+            // Expected
+        }
+        generator.advancePast(0);
+        Assert.assertArrayEquals(new int[]{1, 5, 9}, generator.next(3));
+        generator.advancePast(40);
+        Assert.assertEquals(41, generator.next());
+        generator.advancePast(10);
+        Assert.assertEquals(45, generator.next());
+        Assert.assertEquals(0, generator.next(0).length);
+
+        IdGenerator single = new IdGenerator();
+        single.advancePast(0);
+        Assert.assertEquals(1, single.next());
+    }
+
+    /**
+     * Inserting messages and accounts after rows were written behind the DAOs' generators, singly and in batches
+     *
+     * Expected Result:
+     *  The first insert hits a duplicate key, the DAO resyncs past the foreign rows once and the insert succeeds
+     *  with fresh ids; no row is lost or duplicated
+     */
+    @Test
+    public void daosResyncAfterDuplicateKey() throws SQLException {
+        MessageDAO messageDAO = new MessageDAO();
+        Message first = messageDAO.insertMessage(new Message(1, "first", 1669947792));
+        Assert.assertEquals(2, first.getMessage_id());
+
+        execute("insert into message (message_id, posted_by, message_text, time_posted_epoch) values (3, 1, 'foreign', 1)");
+        Assert.assertEquals(4, messageDAO.insertMessage(new Message(1, "after", 1669947792)).getMessage_id());
+
+        execute("insert into message (message_id, posted_by, message_text, time_posted_epoch) values (5, 1, 'foreign', 1)");
+        List<Message> batch = messageDAO.insertMessages(Arrays.asList(new Message(1, "a", 1669947792),
+                new Message(1, "b", 1669947792), new Message(1, "c", 1669947792)));
+        Assert.assertNotNull(batch);
+        // The ids of the failed attempt are not reused, so the batch may leave a gap
+        Assert.assertTrue(batch.get(0).getMessage_id() > 5);
+        Assert.assertTrue(batch.get(1).getMessage_id() > batch.get(0).getMessage_id());
+        Assert.assertTrue(batch.get(2).getMessage_id() > batch.get(1).getMessage_id());
+        Assert.assertEquals(8, count("message"));
+
+        AccountDAO accountDAO = new AccountDAO();
+        Assert.assertEquals(2, accountDAO.insertAccount(new Account("second", "password")).getAccount_id());
+        execute("insert into account (account_id, username, password) values (3, 'foreign3', 'password')");
+        Assert.assertEquals(4, accountDAO.insertAccount(new Account("fourth", "password")).getAccount_id());
+        execute("insert into account (account_id, username, password) values (5, 'foreign5', 'password')");
+        List<Account> accounts = accountDAO.insertAccounts(Arrays.asList(new Account("x", "password"),
+                new Account("y", "password")));
+        Assert.assertNotNull(accounts);
+        Assert.assertTrue(accounts.get(0).getAccount_id() > 5);
+        Assert.assertTrue(accounts.get(1).getAccount_id() > accounts.get(0).getAccount_id());
+        Assert.assertEquals(7, count("account"));
+    }
+
+    /**
+     * Inserting a message, deleting it and purging its tombstone, then inserting with a freshly seeded MessageDAO
+     *
+     * Expected Result:
+     *  The purged id is not handed out again, although it is above every id left in the message table
+     */
+    @Test
+    public void purgedIdsAreNotReused() throws SQLException {
+        MessageDAO messageDAO = new MessageDAO();
+        Message purged = messageDAO.insertMessage(new Message(1, "purged", 1669947792));
+        Assert.assertEquals(2, purged.getMessage_id());
+        Assert.assertNotNull(messageDAO.deleteMessage(purged.getMessage_id()));
+        Assert.assertEquals(1, messageDAO.purgeDeleted(0, Long.MAX_VALUE, 10));
+        Assert.assertEquals(1, count("message"));
+
+        Assert.assertEquals(3, new MessageDAO().insertMessage(new Message(1, "after", 1669947792)).getMessage_id());
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            connection.createStatement().execute(sql);
+        }
+    }
+
+    private int count(String table) throws SQLException {
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            ResultSet rs = connection.createStatement().executeQuery("select count(*) from " + table);
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
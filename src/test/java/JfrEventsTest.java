@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrEventsTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Recording with the socialmedia events enabled while sending GET localhost:8080/messages/1 twice
+     *
+     * Expected Response:
+     *  The recording holds an HTTP request event per request with its route and status, and the DAO query,
+     *  connection and cache lookup events the requests caused
+     */
+    @Test
+    public void requestsEmitFlightRecorderEvents() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("socialmedia", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("socialmedia.HttpRequest");
+            recording.enable("socialmedia.DaoQuery");
+            recording.enable("socialmedia.ConnectionAcquire");
+            recording.enable("socialmedia.CacheLookup");
+            recording.start();
+            for(int i = 0; i < 2; i++) {
+                HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages/1")).build(), HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(200, response.statusCode());
+            }
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> requests = ofType(events, "socialmedia.HttpRequest");
+            Assert.assertEquals(2, requests.size());
+            Assert.assertEquals("/messages/{message_id}", requests.get(0).getString("route"));
+            Assert.assertEquals(200, requests.get(0).getInt("status"));
+
+            List<RecordedEvent> queries = ofType(events, "socialmedia.DaoQuery");
+            Assert.assertTrue(queries.stream().anyMatch(query -> "getMessageById".equals(query.getString("method"))
+                    && query.getLong("rows") == 1));
+            Assert.assertFalse(ofType(events, "socialmedia.ConnectionAcquire").isEmpty());
+            Assert.assertTrue(ofType(events, "socialmedia.CacheLookup").stream()
+                    .anyMatch(lookup -> "message".equals(lookup.getString("cache"))));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+}
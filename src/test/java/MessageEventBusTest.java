@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Model.MessageEvent;
+import Service.MessageEventBus;
+
+public class MessageEventBusTest {
+
+    /**
+     * Eight threads publishing at once to a subscriber of every message and one subscriber of account 1
+     *
+     * Expected Result:
+     *  Each subscriber receives every matching event exactly once, in event id order
+     */
+    @Test(timeout = 30000)
+    public void concurrentPublishersDeliverEveryEventInOrder() throws Exception {
+        int publishers = 8;
+        int perPublisher = 2000;
+        MessageEventBus bus = new MessageEventBus(publishers * perPublisher, 16, 4);
+        List<Long> all = new CopyOnWriteArrayList<>();
+        List<Long> forAccount = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(publishers * perPublisher + perPublisher);
+        bus.subscribe(null, 0, event -> {
+            all.add(event.getEvent_id());
+            received.countDown();
+        }, () -> Assert.fail("dropped"));
+        bus.subscribe(1, 0, event -> {
+            forAccount.add(event.getEvent_id());
+            received.countDown();
+        }, () -> Assert.fail("dropped"));
+
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for(int p = 0; p < publishers; p++) {
+            // Publisher 0 posts as account 1, the others as accounts 2 to 8
+            int account_id = p + 1;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                for(int i = 0; i < perPublisher; i++) {
+                    bus.publish(MessageEvent.Type.CREATED, new Message(i, account_id, "text", 1669947792));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(received.await(20, TimeUnit.SECONDS));
+
+        Assert.assertEquals(publishers * perPublisher, all.size());
+        for(int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(i + 1, (long) all.get(i));
+        }
+        Assert.assertEquals(perPublisher, forAccount.size());
+        for(int i = 1; i < forAccount.size(); i++) {
+            Assert.assertTrue(forAccount.get(i) > forAccount.get(i - 1));
+        }
+    }
+
+    /**
+     * A subscriber whose writes block, next to a healthy one, with a single dispatcher thread
+     *
+     * Expected Result:
+     *  The healthy subscriber keeps receiving events while the other is stalled, and the stalled one is dropped
+     *  once its write times out
+     */
+    @Test(timeout = 30000)
+    public void stalledSubscriberDoesNotHoldUpOthers() throws Exception {
+        MessageEventBus bus = new MessageEventBus(256, 16, 1, 50, 4, 1000);
+        CountDownLatch unblock = new CountDownLatch(1);
+        CountDownLatch stalled = new CountDownLatch(1);
+        AtomicBoolean stalledDropped = new AtomicBoolean();
+        bus.subscribe(null, 0, event -> {
+            stalled.countDown();
+            try {
+                unblock.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> stalledDropped.set(true));
+        bus.publish(MessageEvent.Type.CREATED, new Message(0, 1, "text", 1669947792));
+        // The only dispatcher thread is now blocked in the first subscriber's write
+        Assert.assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        CountDownLatch healthy = new CountDownLatch(3);
+        bus.subscribe(null, 0, event -> healthy.countDown(), () -> Assert.fail("dropped"));
+
+        for(int i = 0; i < 3; i++) {
+            bus.publish(MessageEvent.Type.CREATED, new Message(i, 1, "text", 1669947792));
+        }
+        Assert.assertTrue(healthy.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(bus.getStalledWrites() >= 1);
+
+        for(int i = 0; i < 100 && !stalledDropped.get(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(stalledDropped.get());
+        Assert.assertEquals(1, bus.getSubscriberCount());
+        unblock.countDown();
+    }
+}
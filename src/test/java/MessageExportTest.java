@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageExportTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path exportDirectory;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Exports go to a temporary directory, one message id per chunk.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        exportDirectory = Files.createTempDirectory("message-export");
+        System.setProperty("export.directory", exportDirectory.toString());
+        System.setProperty("export.chunk.ids", "1");
+        System.setProperty("admin.token", "admin-secret");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        app.stop();
+        System.clearProperty("export.directory");
+        System.clearProperty("export.chunk.ids");
+        System.clearProperty("admin.token");
+        try (var files = Files.list(exportDirectory)) {
+            for(Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(exportDirectory);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/export?format=ndjson&gzip=true after creating a message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: 2 rows written; the gzipped file holds both messages in message_id order, one JSON object per line
+     */
+    @Test
+    public void exportNdjsonGzip() throws IOException, InterruptedException {
+        createMessage("second message");
+
+        JsonNode result = export("format=ndjson&gzip=true", 200);
+        Assert.assertEquals(2, result.get("rows").asLong());
+        Assert.assertTrue(result.has("rows_per_second"));
+
+        String[] lines;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(Paths.get(result.get("file").asText())))) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+        }
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(lines[0], Message.class));
+        Assert.assertEquals(new Message(2, 1, "second message", 1669947792), objectMapper.readValue(lines[1], Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/export?format=csv for text with a comma and quotes
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the file starts with a header and quotes the text
+     */
+    @Test
+    public void exportCsvQuotesText() throws IOException, InterruptedException {
+        createMessage("hello, \\\"world\\\"");
+
+        JsonNode result = export("format=csv", 200);
+        String csv = Files.readString(Paths.get(result.get("file").asText()));
+        Assert.assertEquals("message_id,posted_by,message_text,time_posted_epoch\n"
+                + "1,1,test message 1,1669947792\n"
+                + "2,1,\"hello, \"\"world\"\"\",1669947792\n", csv);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/admin/export?format=xml
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void unknownFormatIsRejected() throws IOException, InterruptedException {
+        export("format=xml", 400);
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/admin/export and GET localhost:8080/admin/metrics without the
+     * admin token, with a wrong one, and with an account's access token
+     *
+     * Expected Response:
+     *  Status Code: 401 for each, and no export file is written
+     */
+    @Test
+    public void adminEndpointsNeedTheAdminToken() throws IOException, InterruptedException {
+        HttpRequest login = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        String accountToken = webClient.send(login, HttpResponse.BodyHandlers.ofString())
+                .headers().firstValue("X-Auth-Token").orElse(null);
+
+        for(String authorization : new String[] {null, "Bearer wrong-secret", "Bearer " + accountToken}) {
+            HttpRequest.Builder export = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/admin/export?format=ndjson"))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+            HttpRequest.Builder metrics = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/admin/metrics"));
+            if(authorization != null) {
+                export.header("Authorization", authorization);
+                metrics.header("Authorization", authorization);
+            }
+            Assert.assertEquals(401, webClient.send(export.build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+            Assert.assertEquals(401, webClient.send(metrics.build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+        try (var files = Files.list(exportDirectory)) {
+            Assert.assertEquals(0, files.count());
+        }
+    }
+
+    private JsonNode export(String query, int expectedStatus) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/export?" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer admin-secret")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(expectedStatus, response.statusCode());
+        return expectedStatus == 200 ? objectMapper.readTree(response.body()) : null;
+    }
+
+    private void createMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
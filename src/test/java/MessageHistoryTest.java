@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageHistoryTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to PATCH localhost:8080/messages/1 with and without If-Match
+     *
+     * Expected Response:
+     *  GET localhost:8080/messages/1 carries ETag "1" and an unchanged message body
+     *  PATCH with If-Match: "1" responds 200 with ETag "2"; repeating it responds 412
+     *  PATCH without If-Match responds 200 with ETag "3"
+     */
+    @Test
+    public void ifMatchGuardsEdits() throws IOException, InterruptedException {
+        HttpResponse<String> read = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1")).build());
+        Assert.assertEquals("\"1\"", read.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(read.body(), Message.class));
+
+        HttpResponse<String> first = patch("test message 2", "\"1\"");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("\"2\"", first.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(new Message(1, 1, "test message 2", 1669947792), objectMapper.readValue(first.body(), Message.class));
+
+        Assert.assertEquals(412, patch("lost update", "\"1\"").statusCode());
+
+        HttpResponse<String> unconditional = patch("edited entirely", null);
+        Assert.assertEquals(200, unconditional.statusCode());
+        Assert.assertEquals("\"3\"", unconditional.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages, then PATCH it with a weak tag and with If-Match: *
+     *
+     * Expected Response:
+     *  POST responds with ETag "1"
+     *  PATCH with If-Match: W/"1" responds 200 with ETag "2"; If-Match: * responds 200 with ETag "3"
+     *  PATCH localhost:8080/messages/100 with If-Match: * responds 412
+     */
+    @Test
+    public void weakAndWildcardTags() throws IOException, InterruptedException {
+        HttpResponse<String> created = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .build());
+        Assert.assertEquals(200, created.statusCode());
+        Assert.assertEquals("\"1\"", created.headers().firstValue("ETag").orElse(null));
+
+        HttpResponse<String> weak = patch("test message 2", "W/\"1\"");
+        Assert.assertEquals(200, weak.statusCode());
+        Assert.assertEquals("\"2\"", weak.headers().firstValue("ETag").orElse(null));
+
+        HttpResponse<String> any = patch("test message 3", "*");
+        Assert.assertEquals(200, any.statusCode());
+        Assert.assertEquals("\"3\"", any.headers().firstValue("ETag").orElse(null));
+
+        Assert.assertEquals(412, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/100"))
+                .header("If-Match", "*")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"missing\"}"))
+                .build()).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1/history after two edits
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every version newest first, the current one with a null superseded_epoch; limit=2 stops
+     *  after two. Each older version is stored as a delta against the next, not as a full copy.
+     */
+    @Test
+    public void historyRebuildsEveryVersion() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals(200, patch("test message 2", null).statusCode());
+        Assert.assertEquals(200, patch("edited entirely", null).statusCode());
+
+        JsonNode history = objectMapper.readTree(send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1/history")).build()).body());
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals(3, history.get(0).get("version").asInt());
+        Assert.assertEquals("edited entirely", history.get(0).get("message_text").asText());
+        Assert.assertTrue(history.get(0).get("superseded_epoch").isNull());
+        Assert.assertEquals("test message 2", history.get(1).get("message_text").asText());
+        Assert.assertEquals(1, history.get(2).get("version").asInt());
+        Assert.assertEquals("test message 1", history.get(2).get("message_text").asText());
+        Assert.assertTrue(history.get(2).get("superseded_epoch").asLong() > 0);
+
+        JsonNode limited = objectMapper.readTree(send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1/history?limit=2")).build()).body());
+        Assert.assertEquals(2, limited.size());
+
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT middle_text FROM message_history WHERE message_id = 1 AND version = 1");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("1", rs.getString(1));
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/100/history
+     *
+     * Expected Response:
+     *  Status Code: 404
+     */
+    @Test
+    public void historyOfMissingMessage() throws IOException, InterruptedException {
+        Assert.assertEquals(404, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/100/history")).build()).statusCode());
+    }
+
+    private HttpResponse<String> patch(String text, String ifMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"" + text + "\"}"));
+        if(ifMatch != null) request.header("If-Match", ifMatch);
+        return send(request.build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
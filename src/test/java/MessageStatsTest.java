@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageStatistics;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStatsTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/stats counts the seeded message, then messages created
+     * and deleted afterwards
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: {"account_id":1,"message_count":1}, then 2 after a create, then 1 after a delete
+     */
+    @Test
+    public void accountStatsFollowWrites() throws IOException, InterruptedException {
+        Assert.assertEquals(1, getJson("/accounts/1/stats").get("message_count").asLong());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(2, getJson("/accounts/1/stats").get("message_count").asLong());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(1, getJson("/accounts/1/stats").get("message_count").asLong());
+        Assert.assertEquals(0, getJson("/accounts/2/stats").get("message_count").asLong());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/stats reports totals and hourly counts
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one message, one active account, one hour bucket starting at 1669946400
+     */
+    @Test
+    public void overallStats() throws IOException, InterruptedException {
+        JsonNode stats = getJson("/stats");
+        Assert.assertEquals(1, stats.get("total_messages").asLong());
+        Assert.assertEquals(1, stats.get("active_accounts").asLong());
+        Assert.assertEquals(1, stats.get("messages_per_hour").size());
+        Assert.assertEquals(1669946400L, stats.get("messages_per_hour").get(0).get("hour_epoch").asLong());
+        Assert.assertEquals(1, stats.get("messages_per_hour").get(0).get("count").asLong());
+    }
+
+    /**
+     * Keeping three hour buckets over the seeded message, then counting a message dated a month ahead, messages in
+     * the last three hours and a message in the seeded message's hour
+     *
+     * Expected Result:
+     *  The future message gets no bucket, the recent hours push the seeded hour out, and the old message does not
+     *  bring it back; every message is still in the totals
+     */
+    @Test
+    public void hourBucketsIgnoreEpochsOutsideTheWindow() {
+        MessageStatistics statistics = new MessageStatistics(new MessageDAO(), 3);
+        Assert.assertEquals(1, statistics.getMessagesPerHour().size());
+        long now = System.currentTimeMillis() / 1000;
+
+        statistics.recordCreated(new Message(1, "from the future", now + 30 * 24 * 3600));
+        Assert.assertEquals(1, statistics.getMessagesPerHour().size());
+
+        for(int hoursAgo = 2; hoursAgo >= 0; hoursAgo--) {
+            statistics.recordCreated(new Message(1, "recent", now - hoursAgo * 3600));
+        }
+        statistics.recordCreated(new Message(1, "late arrival", 1669947792));
+        Assert.assertEquals(3, statistics.getMessagesPerHour().size());
+        Assert.assertEquals((now - 2 * 3600) / 3600 * 3600,
+                (long) statistics.getMessagesPerHour().get(0).get("hour_epoch"));
+        Assert.assertEquals(6, statistics.getTotalMessages());
+    }
+
+    private JsonNode getJson(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+}
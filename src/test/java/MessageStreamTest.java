@@ -0,0 +1,134 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStreamTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Opening GET localhost:8080/messages/stream and then creating a message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a "created" server-sent event carrying the new message
+     */
+    @Test(timeout = 10000)
+    public void streamReceivesCreatedMessage() throws Exception {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream"))
+                .header("Accept", "text/event-stream")
+                .build();
+        CompletableFuture<HttpResponse<InputStream>> pending = webClient.sendAsync(streamRequest, HttpResponse.BodyHandlers.ofInputStream());
+        // give the server a moment to register the subscriber before publishing
+        Thread.sleep(500);
+        postMessage("streamed message");
+
+        HttpResponse<InputStream> stream = pending.get();
+        Assert.assertEquals(200, stream.statusCode());
+
+        List<String> event = readEvent(stream.body());
+        Assert.assertTrue(event.contains("event: created"));
+        Assert.assertTrue(event.contains("id: 1"));
+        String data = event.stream().filter(line -> line.startsWith("data: ")).findFirst().orElse("data: ").substring(6);
+        Assert.assertEquals(new Message(2, 1, "streamed message", 1669947792), objectMapper.readValue(data, Message.class));
+        stream.body().close();
+    }
+
+    /**
+     * Reconnecting to GET localhost:8080/accounts/1/messages/stream with a Last-Event-ID header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the events published after that id are replayed
+     */
+    @Test(timeout = 10000)
+    public void streamResumesAfterLastEventId() throws Exception {
+        postMessage("first message");
+        postMessage("second message");
+
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages/stream"))
+                .header("Accept", "text/event-stream")
+                .header("Last-Event-ID", "1")
+                .build();
+        HttpResponse<InputStream> stream = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, stream.statusCode());
+
+        List<String> event = readEvent(stream.body());
+        Assert.assertTrue(event.contains("id: 2"));
+        Assert.assertTrue(event.stream().anyMatch(line -> line.contains("second message")));
+        stream.body().close();
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    /**
+     * Reads lines up to the blank line that ends one server-sent event
+     */
+    private List<String> readEvent(InputStream body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        while(true) {
+            String line = reader.readLine();
+            if(line == null || (line.isEmpty() && !lines.isEmpty())) break;
+            if(!line.isEmpty()) lines.add(line);
+        }
+        return lines;
+    }
+}
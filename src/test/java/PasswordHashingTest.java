@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PasswordHashingTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A registered account stores a hash rather than its password, and logging in with the password still works
+     *
+     * Expected Response:
+     *  Status Code: 200 for the right password, 401 for a wrong one
+     *  Stored password: pbkdf2-sha256$...
+     */
+    @Test
+    public void registeredPasswordIsHashed() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> registerResponse = post("/register", "user", "secret");
+        Assert.assertEquals(200, registerResponse.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret"), objectMapper.readValue(registerResponse.body(), Account.class));
+
+        Assert.assertTrue(storedPassword("user").startsWith("pbkdf2-sha256$"));
+
+        HttpResponse<String> loginResponse = post("/login", "user", "secret");
+        Assert.assertEquals(200, loginResponse.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret"), objectMapper.readValue(loginResponse.body(), Account.class));
+
+        Assert.assertEquals(401, post("/login", "user", "wrong").statusCode());
+    }
+
+    /**
+     * A plaintext password from before hashing is accepted once and replaced with a hash
+     *
+     * Expected Response:
+     *  Status Code: 200 before and after the upgrade
+     */
+    @Test
+    public void legacyPasswordIsUpgradedOnLogin() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals("password", storedPassword("testuser1"));
+
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertTrue(storedPassword("testuser1").startsWith("pbkdf2-sha256$"));
+
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String username, String password) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String storedPassword(String username) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        ResultSet rs = connection.createStatement().executeQuery(
+                "SELECT password FROM account WHERE username = '" + username + "'");
+        Assert.assertTrue(rs.next());
+        return rs.getString(1);
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ProfilingTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("admin.token", "admin-secret");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("admin.token");
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/admin/profiling?enabled=true, then GET localhost:8080/messages/1
+     * three times, then GET localhost:8080/admin/profiling
+     *
+     * Expected Response:
+     *  Profiling is off until enabled; then the route reports three requests with allocation and CPU figures, and
+     *  reset=true clears them
+     */
+    @Test
+    public void profilesRoutesWhileEnabled() throws IOException, InterruptedException {
+        Assert.assertFalse(report("GET", "").get("enabled").asBoolean());
+        get("/messages/1");
+        Assert.assertEquals(0, report("GET", "").get("routes").size());
+
+        Assert.assertTrue(report("POST", "?enabled=true").get("enabled").asBoolean());
+        for(int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, get("/messages/1").statusCode());
+        }
+        JsonNode route = report("GET", "").get("routes").get("GET /messages/{message_id}");
+        Assert.assertEquals(3, route.get("requests").asInt());
+        Assert.assertTrue(route.get("alloc.bytes.mean").asLong() > 0);
+        Assert.assertTrue(route.get("alloc.bytes.max").asLong() >= route.get("alloc.bytes.p50").asLong());
+
+        JsonNode cleared = report("POST", "?enabled=false&reset=true");
+        Assert.assertFalse(cleared.get("enabled").asBoolean());
+        Assert.assertEquals(0, cleared.get("routes").size());
+    }
+
+    /**
+     * Sending http requests to GET and POST localhost:8080/admin/profiling without the admin token
+     *
+     * Expected Response:
+     *  Status Code: 401, and profiling stays off
+     */
+    @Test
+    public void profilingNeedsTheAdminToken() throws IOException, InterruptedException {
+        Assert.assertEquals(401, send("GET", "", null).statusCode());
+        Assert.assertEquals(401, send("POST", "?enabled=true", null).statusCode());
+        Assert.assertEquals(401, send("POST", "?enabled=true", "Bearer wrong-secret").statusCode());
+        Assert.assertFalse(report("GET", "").get("enabled").asBoolean());
+    }
+
+    private JsonNode report(String method, String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(method, query, "Bearer admin-secret");
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    private HttpResponse<String> send(String method, String query, String authorization) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/profiling" + query))
+                .method(method, HttpRequest.BodyPublishers.noBody());
+        if(authorization != null) request.header("Authorization", authorization);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
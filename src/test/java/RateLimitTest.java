@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.TokenBucketLimiter;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient. Each test starts the Javalin app itself,
+     * after setting the limits it needs.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        if(app != null) app.stop();
+        System.clearProperty("ratelimit.per.second");
+        System.clearProperty("ratelimit.burst");
+        System.clearProperty("ratelimit.anonymous.per.second");
+        System.clearProperty("ratelimit.anonymous.burst");
+        System.clearProperty("concurrency.initial");
+        System.clearProperty("concurrency.min");
+    }
+
+    /**
+     * Writes without a token are limited per client, so posting as account 1 does not spend account 1's budget;
+     * writes with account 1's token are limited per account.
+     *
+     * Expected Response:
+     *  Status Code: 429 with a Retry-After of at least one second once either budget is spent
+     */
+    @Test
+    public void writesOverTheLimitAreRejectedWithRetryAfter() throws IOException, InterruptedException {
+        System.setProperty("ratelimit.per.second", "1");
+        System.setProperty("ratelimit.burst", "2");
+        System.setProperty("ratelimit.anonymous.per.second", "1");
+        System.setProperty("ratelimit.anonymous.burst", "3");
+        startApp();
+        String token = login().headers().firstValue("X-Auth-Token").orElse(null);
+
+        for(int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, createMessage(null).statusCode());
+        }
+        assertRateLimited(createMessage(null));
+
+        Assert.assertEquals(200, createMessage("Bearer " + token).statusCode());
+        Assert.assertEquals(200, createMessage("Bearer " + token).statusCode());
+        assertRateLimited(createMessage("Bearer " + token));
+    }
+
+    /**
+     * With no concurrency left for writes the request is shed rather than queued
+     *
+     * Expected Response:
+     *  Status Code: 503
+     *  Retry-After: 1
+     */
+    @Test
+    public void writesBeyondTheConcurrencyLimitAreShed() throws IOException, InterruptedException {
+        System.setProperty("concurrency.initial", "0");
+        System.setProperty("concurrency.min", "0");
+        startApp();
+
+        HttpResponse<String> response = createMessage(null);
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+    }
+
+    /**
+     * A stream of new keys while every bucket is in use keeps the limiter near its capacity instead of growing
+     */
+    @Test
+    public void bucketsStayBoundedUnderNewKeys() {
+        TokenBucketLimiter<Integer> limiter = new TokenBucketLimiter<>(1, 1, 100, 60);
+        for(int key = 0; key < 10_000; key++) {
+            Assert.assertEquals(0, limiter.tryAcquire(key));
+        }
+        Assert.assertTrue(limiter.getBucketCount() <= 201);
+        Assert.assertTrue(limiter.getEvicted() >= 9_799);
+    }
+
+    /**
+     * Two client addresses whose hash codes collide ("Aa" and "BB") each get their own bucket
+     */
+    @Test
+    public void collidingKeysDoNotShareABucket() {
+        TokenBucketLimiter<String> limiter = new TokenBucketLimiter<>(1, 1, 100, 60);
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        Assert.assertEquals(0, limiter.tryAcquire("Aa"));
+        Assert.assertTrue(limiter.tryAcquire("Aa") > 0);
+        Assert.assertEquals(0, limiter.tryAcquire("BB"));
+    }
+
+    private void startApp() throws InterruptedException {
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private void assertRateLimited(HttpResponse<String> response) {
+        Assert.assertEquals(429, response.statusCode());
+        long retryAfter = Long.parseLong(response.headers().firstValue("Retry-After").orElse("0"));
+        Assert.assertTrue(retryAfter >= 1);
+    }
+
+    private HttpResponse<String> login() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> createMessage(String authorization) throws IOException, InterruptedException {
+        HttpRequest.Builder postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json");
+        if(authorization != null) postRequest.header("Authorization", authorization);
+        return webClient.send(postRequest.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.ReadConsistency;
+import Util.ReplicationLog;
+import io.javalin.Javalin;
+
+public class ReplicationTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    ReplicationLog.Entry blocker;
+
+    /**
+     * Before every test, switch to two read replicas, reset the database, start the replicas from it, restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.configure(1, 2);
+        ConnectionUtil.resetTestDatabase();
+        ConnectionUtil.getReplicas();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if(blocker != null) {
+            ConnectionUtil.getReplicationLog().complete(blocker, false);
+        }
+        app.stop();
+        ReadConsistency.end();
+        ConnectionUtil.configure(1, 0);
+    }
+
+    /**
+     * Inserting, editing and deleting a message through MessageDAO, then reading it from a replica
+     *
+     * Expected Result:
+     *  Once the replicas catch up, a read with no LSN requirement is served by a replica holding each change
+     */
+    @Test
+    public void replicasApplyCommittedChanges() throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+        Message message = messageDAO.insertMessage(new Message(1, "replicated", 1669947792));
+        Assert.assertTrue(ConnectionUtil.awaitReplicas(5000));
+        Assert.assertEquals("replicated", textOnReplica(message.getMessage_id()));
+
+        messageDAO.updateMessage(message.getMessage_id(), "edited");
+        Assert.assertTrue(ConnectionUtil.awaitReplicas(5000));
+        Assert.assertEquals("edited", textOnReplica(message.getMessage_id()));
+
+        messageDAO.deleteMessage(message.getMessage_id());
+        Assert.assertTrue(ConnectionUtil.awaitReplicas(5000));
+        ReadConsistency.begin(0);
+        Assert.assertNull(messageDAO.getMessageById(message.getMessage_id()));
+    }
+
+    /**
+     * Holding the replicas back with a log entry that is never committed, then posting a message to
+     * POST localhost:8080/messages and reading its history from GET localhost:8080/messages/{id}/history with and
+     * without the X-Read-After-Lsn header
+     *
+     * Expected Response:
+     *  The POST returns X-Write-Lsn. Without the header the read goes to a lagging replica and finds nothing (404);
+     *  with it the read goes to the primary and finds the message. Once the replicas catch up the plain read finds
+     *  it too.
+     */
+    @Test
+    public void readAfterLsnSkipsLaggingReplicas() throws Exception {
+        ReplicationLog log = ConnectionUtil.getReplicationLog();
+        blocker = log.append(new ReplicationLog.Change("account", "account_id", -1, null, null));
+
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"fresh\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> created = webClient.send(post, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, created.statusCode());
+        String writeLsn = created.headers().firstValue("X-Write-Lsn").orElseThrow();
+        Assert.assertTrue(Long.parseLong(writeLsn) > blocker.getLsn());
+        int message_id = objectMapper.readValue(created.body(), Message.class).getMessage_id();
+
+        Assert.assertEquals(404, history(message_id, null).statusCode());
+        Assert.assertEquals(200, history(message_id, writeLsn).statusCode());
+
+        log.complete(blocker, false);
+        blocker = null;
+        Assert.assertTrue(ConnectionUtil.awaitReplicas(5000));
+        Assert.assertEquals(200, history(message_id, null).statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register, which inserts the account after hashing its password
+     * on another thread
+     *
+     * Expected Response:
+     *  Status Code: 200 with an X-Write-Lsn header for the insert
+     */
+    @Test
+    public void asyncRegisterReportsItsWriteLsn() throws Exception {
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"replicated\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> registered = webClient.send(register, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertTrue(Long.parseLong(registered.headers().firstValue("X-Write-Lsn").orElseThrow()) > 0);
+    }
+
+    /**
+     * Reads the message's text through getReadConnection with no LSN requirement, which any replica satisfies
+     */
+    private String textOnReplica(int message_id) throws SQLException {
+        ReadConsistency.begin(0);
+        try (Connection connection = ConnectionUtil.getReadConnection()) {
+            Assert.assertTrue(connection.getMetaData().getURL().contains("replica-"));
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT message_text FROM message WHERE message_id = " + message_id);
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private HttpResponse<String> history(int message_id, String readAfterLsn) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + message_id + "/history"));
+        if(readAfterLsn != null) {
+            request.header("X-Read-After-Lsn", readAfterLsn);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
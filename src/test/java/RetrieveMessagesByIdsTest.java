@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByIdsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=3,1,99,2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in request order with null for id 99, which is listed as missing
+     */
+    @Test
+    public void getMessagesByIdsInRequestOrder() throws IOException, InterruptedException {
+        postMessage("second message");
+        postMessage("third message");
+
+        // warm the cache for one of the ids so the response mixes cached and fetched messages
+        webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/2")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=3,1,99,2"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode body = objectMapper.readTree(response.body());
+        List<Message> expectedMessages = Arrays.asList(
+                new Message(3, 1, "third message", 1669947792),
+                new Message(1, 1, "test message 1", 1669947792),
+                null,
+                new Message(2, 1, "second message", 1669947792));
+        List<Message> actualMessages = new ArrayList<>();
+        for(JsonNode message : body.get("messages")) {
+            actualMessages.add(message.isNull() ? null : objectMapper.treeToValue(message, Message.class));
+        }
+        Assert.assertEquals(expectedMessages, actualMessages);
+        Assert.assertEquals("[99]", body.get("missing").toString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesByIdsInvalidId() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,abc"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageShardRouter;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ShardingTest {
+    private static final int SHARDS = 3;
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    List<Integer> account_ids = new ArrayList<>();
+
+    /**
+     * Before every test, switch to three message shards, reset the database without the seed message, add six
+     * accounts, restart the Javalin app, and create a new webClient and ObjectMapper for interacting locally on
+     * the web.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        ConnectionUtil.configure(SHARDS, 0);
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getWriteConnection()) {
+            connection.createStatement().execute("delete from message");
+        }
+        AccountDAO accountDAO = new AccountDAO();
+        for(int i = 0; i < 6; i++) {
+            account_ids.add(accountDAO.insertAccount(new Account("sharded" + i, "password")).getAccount_id());
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.configure(1, 0);
+    }
+
+    /**
+     * Posting two messages for each of six accounts to POST localhost:8080/messages with three shards
+     *
+     * Expected Response:
+     *  Each message is stored on the shard its author hashes to, its id is congruent to that shard modulo the
+     *  shard count, and ids are unique across shards
+     */
+    @Test
+    public void messagesAreRoutedByAuthorWithShardOwnedIds() throws Exception {
+        List<Message> created = postMessages();
+        MessageShardRouter router = new MessageShardRouter(SHARDS);
+        Set<Integer> ids = new HashSet<>();
+        Set<Integer> shardsUsed = new HashSet<>();
+        for(Message message : created) {
+            int shard = router.shardForAccount(message.getPosted_by());
+            Assert.assertEquals(shard, router.shardForMessage(message.getMessage_id()));
+            Assert.assertTrue(ids.add(message.getMessage_id()));
+            Assert.assertTrue(storedOn(shard, message.getMessage_id()));
+            shardsUsed.add(shard);
+        }
+        Assert.assertTrue(shardsUsed.size() > 1);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages, GET localhost:8080/messages/{id} and
+     * GET localhost:8080/accounts/{id}/messages after posting across shards
+     *
+     * Expected Response:
+     *  The full list is every message merged in message_id order, and single and per-account reads find each
+     *  message on its shard
+     */
+    @Test
+    public void readsGatherAcrossShards() throws Exception {
+        List<Message> created = postMessages();
+
+        List<Message> all = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(created.size(), all.size());
+        for(int i = 1; i < all.size(); i++) {
+            Assert.assertTrue(all.get(i).getMessage_id() > all.get(i - 1).getMessage_id());
+        }
+        created.sort(Comparator.comparingInt(Message::getMessage_id));
+        Assert.assertEquals(created, all);
+
+        for(Message message : created) {
+            HttpResponse<String> response = get("/messages/" + message.getMessage_id());
+            Assert.assertEquals(message, objectMapper.readValue(response.body(), Message.class));
+        }
+        for(int account_id : account_ids) {
+            List<Message> timeline = objectMapper.readValue(get("/accounts/" + account_id + "/messages").body(),
+                    new TypeReference<List<Message>>(){});
+            Assert.assertEquals(2, timeline.size());
+            for(Message message : timeline) {
+                Assert.assertEquals(account_id, message.getPosted_by());
+            }
+        }
+    }
+
+    private List<Message> postMessages() throws IOException, InterruptedException {
+        List<Message> created = new ArrayList<>();
+        for(int round = 0; round < 2; round++) {
+            for(int account_id : account_ids) {
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + account_id +
+                                ", \"message_text\": \"round " + round + "\", \"time_posted_epoch\": 1669947792}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+                HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals(200, response.statusCode());
+                created.add(objectMapper.readValue(response.body(), Message.class));
+            }
+        }
+        return created;
+    }
+
+    private boolean storedOn(int shard, int message_id) throws SQLException {
+        try (Connection connection = ConnectionUtil.getShardConnection(shard)) {
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM message WHERE message_id = " + message_id);
+            rs.next();
+            return rs.getInt(1) == 1;
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
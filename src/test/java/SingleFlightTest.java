@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class SingleFlightTest {
+
+    CountingMessageDAO messageDAO;
+    MessageService messageService;
+    ExecutorService executor;
+
+    /**
+     * Before every test, reset the database and create a MessageService over a MessageDAO that counts lookups and
+     * holds the first one open until the test releases it.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new CountingMessageDAO();
+        messageService = new MessageService(messageDAO, new AccountService());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        messageDAO.release.countDown();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Looking up message 1 from eight threads at once, while the first lookup is held open
+     *
+     * Expected Result:
+     *  Seven callers join the first lookup, the DAO is called once and every caller gets the message
+     */
+    @Test
+    public void concurrentLookupsShareOneDaoCall() throws Exception {
+        List<Future<Message>> lookups = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            lookups.add(executor.submit(() -> messageService.getMessageById(1)));
+        }
+        Assert.assertTrue(messageDAO.loading.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while(messageService.getMetrics().get("message.lookups.coalesced") < 7 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        messageDAO.release.countDown();
+
+        for(Future<Message> lookup : lookups) {
+            Assert.assertEquals("test message 1", lookup.get(5, TimeUnit.SECONDS).getMessage_text());
+        }
+        Assert.assertEquals(1, messageDAO.lookups.get());
+        Assert.assertEquals(7L, (long) messageService.getMetrics().get("message.lookups.coalesced"));
+    }
+
+    /**
+     * Starting a lookup of message 1 and holding it open, editing the message, then looking it up again
+     *
+     * Expected Result:
+     *  The lookup after the edit runs its own query and sees the new text instead of joining the earlier lookup,
+     *  and the earlier lookup's stale result is not left in the cache
+     */
+    @Test
+    public void forgetAfterWriteStopsLaterCallersJoining() throws Exception {
+        Future<Message> before = executor.submit(() -> messageService.getMessageById(1));
+        Assert.assertTrue(messageDAO.loading.await(5, TimeUnit.SECONDS));
+
+        Assert.assertNotNull(messageService.updateMessage(1, "edited"));
+        Future<Message> after = executor.submit(() -> messageService.getMessageById(1));
+        Assert.assertEquals("edited", after.get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertEquals(2, messageDAO.lookups.get());
+
+        messageDAO.release.countDown();
+        Assert.assertEquals("test message 1", before.get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertEquals("edited", messageService.getMessageById(1).getMessage_text());
+    }
+
+    /**
+     * A MessageDAO whose first getMessageById reads the message, then waits for the release latch before returning
+     */
+    private static class CountingMessageDAO extends MessageDAO {
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Message getMessageById(int message_id) {
+            Message message = super.getMessageById(message_id);
+            if(lookups.incrementAndGet() == 1) {
+                loading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SoftDeleteTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Compaction runs often and purges tombstones older than a second.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("compaction.interval.ms", "200");
+        System.setProperty("compaction.grace.seconds", "1");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("compaction.interval.ms");
+        System.clearProperty("compaction.grace.seconds");
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1, then reading and updating the message
+     *
+     * Expected Response:
+     *  Status Code: 200 with the deleted message; the row stays as a tombstone until compaction removes it
+     *  GET localhost:8080/messages/1 and GET localhost:8080/messages no longer return it
+     *  PATCH localhost:8080/messages/1 responds 400 and a second DELETE responds 200 with an empty body
+     */
+    @Test
+    public void deleteLeavesTombstoneUntilCompacted() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build());
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(deleted.body(), Message.class));
+        Assert.assertTrue(rowExists(1));
+
+        Assert.assertEquals("", send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1")).build()).body());
+        Assert.assertEquals("[]", send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build()).body());
+        Assert.assertEquals(400, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"revived\"}"))
+                .build()).statusCode());
+        HttpResponse<String> again = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build());
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals("", again.body());
+
+        Thread.sleep(2500);
+        Assert.assertFalse(rowExists(1));
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private boolean rowExists(int message_id) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM message WHERE message_id = " + message_id);
+            rs.next();
+            return rs.getInt(1) == 1;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TrendingMessagesTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/trending?window=1m after creating messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the most repeated term first and account 1 as the top poster
+     */
+    @Test
+    public void trendingTermsAndPosters() throws IOException, InterruptedException {
+        createMessage("javalin is fast");
+        createMessage("javalin streams");
+        createMessage("javalin and h2");
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/trending?window=1m&limit=2"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode trending = objectMapper.readTree(response.body());
+        Assert.assertEquals("1m", trending.get("window").asText());
+        Assert.assertEquals(2, trending.get("terms").size());
+        Assert.assertEquals("javalin", trending.get("terms").get(0).get("term").asText());
+        Assert.assertEquals(3, trending.get("terms").get(0).get("count").asLong());
+        Assert.assertEquals(1, trending.get("posters").get(0).get("account_id").asInt());
+        Assert.assertEquals(3, trending.get("posters").get(0).get("count").asLong());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/trending with an unknown window
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void unknownWindowIsRejected() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/trending?window=1y"))
+                .build();
+        Assert.assertEquals(400, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private void createMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
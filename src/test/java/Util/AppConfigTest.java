@@ -0,0 +1,96 @@
+package Util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AppConfigTest {
+
+    Map<String, String> environment;
+    Path file;
+
+    /**
+     * Before every test, select the durable profile and a temporary configuration file, and replace the environment
+     * with a map the test can fill.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("socialmedia", ".properties");
+        environment = new HashMap<>();
+        AppConfig.environment = environment::get;
+        System.setProperty("config.profile", "durable");
+        System.setProperty("config.file", file.toString());
+        AppConfig.reload();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        AppConfig.environment = System::getenv;
+        System.clearProperty("config.profile");
+        System.clearProperty("config.file");
+        System.clearProperty("db.lock.timeout");
+        System.clearProperty("test.number");
+        System.clearProperty("test.flag");
+        AppConfig.reload();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Setting db.lock.timeout in the profile, then also in the configuration file, the environment and a system
+     * property
+     *
+     * Expected Result:
+     *  Each source overrides the ones before it: system property, then environment, then file, then profile
+     */
+    @Test
+    public void lookupOrder() throws IOException {
+        Assert.assertEquals(10000, AppConfig.getInt("db.lock.timeout", 1));
+        Assert.assertEquals(1, AppConfig.getInt("db.unset.setting", 1));
+
+        Files.writeString(file, "db.lock.timeout=20000\n");
+        AppConfig.reload();
+        Assert.assertEquals(20000, AppConfig.getInt("db.lock.timeout", 1));
+
+        environment.put("DB_LOCK_TIMEOUT", "30000");
+        Assert.assertEquals(30000, AppConfig.getInt("db.lock.timeout", 1));
+
+        System.setProperty("db.lock.timeout", " 40000 ");
+        Assert.assertEquals(40000, AppConfig.getInt("db.lock.timeout", 1));
+    }
+
+    /**
+     * Looking up settings whose configured values are not valid numbers or booleans
+     *
+     * Expected Result:
+     *  IllegalArgumentException naming the setting, rather than the default
+     */
+    @Test
+    public void invalidValuesAreRejected() {
+        System.setProperty("test.number", "12ms");
+        System.setProperty("test.flag", "yes");
+        assertRejected(() -> AppConfig.getInt("test.number", 1), "test.number");
+        assertRejected(() -> AppConfig.getLong("test.number", 1), "test.number");
+        assertRejected(() -> AppConfig.getBoolean("test.flag", false), "test.flag");
+
+        System.setProperty("test.flag", "TRUE");
+        Assert.assertTrue(AppConfig.getBoolean("test.flag", false));
+        System.setProperty("test.number", "");
+        Assert.assertEquals(7, AppConfig.getInt("test.number", 7));
+    }
+
+    private static void assertRejected(Runnable lookup, String key) {
+        try {
+            lookup.run();
+            Assert.fail("Expected " + key + " to be rejected");
+        } catch(IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains(key));
+        }
+    }
+}
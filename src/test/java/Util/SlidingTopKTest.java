@@ -0,0 +1,48 @@
+package Util;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlidingTopKTest {
+
+    /**
+     * Counting three frequent keys interleaved with thousands of keys seen once, into a tracker with room for ten
+     * candidates
+     *
+     * Expected Result:
+     *  The frequent keys are reported first, most frequent first, with their counts
+     */
+    @Test
+    public void frequentKeysSurviveChurn() {
+        SlidingTopK<String> topK = new SlidingTopK<>(60_000, 6, 10, 4096, 4);
+        for(int i = 0; i < 5000; i++) {
+            topK.add("rare" + i, 1000);
+            if(i % 10 == 0) topK.add("hot", 1000);
+            if(i % 20 == 0) topK.add("warm", 1000);
+            if(i % 50 == 0) topK.add("mild", 1000);
+        }
+        List<Map.Entry<String, Long>> top = topK.top(3, 1000);
+        Assert.assertEquals(List.of("hot", "warm", "mild"), List.of(top.get(0).getKey(), top.get(1).getKey(), top.get(2).getKey()));
+        Assert.assertTrue(top.get(0).getValue() >= 500);
+    }
+
+    /**
+     * Counting a key, then reading the top keys after the window has passed
+     *
+     * Expected Result:
+     *  Nothing is reported once every slot holding the key has been reused
+     */
+    @Test
+    public void keysLeaveWithTheWindow() {
+        SlidingTopK<String> topK = new SlidingTopK<>(60_000, 6, 10, 1024, 4);
+        topK.add("old", 0);
+        Assert.assertEquals(1, topK.top(5, 0).size());
+        topK.add("new", 120_000);
+        List<Map.Entry<String, Long>> top = topK.top(5, 120_000);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("new", top.get(0).getKey());
+    }
+}
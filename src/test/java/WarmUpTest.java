@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WarmUpTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("admin.token", "admin-secret");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("admin.token");
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/health/ready before and after warm-up
+     *
+     * Expected Response:
+     *  503 before warm-up, 200 after it; the warmed message and its author are cached
+     */
+    @Test
+    public void readyOnlyAfterWarmUp() throws IOException, InterruptedException {
+        Assert.assertEquals(503, get("/health/ready").statusCode());
+
+        Map<String, Long> report = socialMediaController.warmUp();
+        Assert.assertEquals(Long.valueOf(1), report.get("warmup.messages"));
+        Assert.assertEquals(Long.valueOf(1), report.get("warmup.accounts"));
+
+        HttpResponse<String> ready = get("/health/ready");
+        Assert.assertEquals(200, ready.statusCode());
+        Assert.assertTrue(objectMapper.readTree(ready.body()).get("ready").asBoolean());
+
+        JsonNode metrics = objectMapper.readTree(get("/admin/metrics").body());
+        Assert.assertEquals(1, metrics.get("message.cache.size").asInt());
+        Assert.assertEquals(1, metrics.get("account.cache.size").asInt());
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1 after warm-up, then GET it
+     *
+     * Expected Response:
+     *  The preloaded copy is dropped, so GET returns the edited text
+     */
+    @Test
+    public void editsReplacePreloadedMessages() throws IOException, InterruptedException {
+        socialMediaController.warmUp();
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited after warm-up\"}"))
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Message expected = new Message(1, 1, "edited after warm-up", 1669947792);
+        Assert.assertEquals(expected, objectMapper.readValue(get("/messages/1").body(), Message.class));
+        Assert.assertEquals(expected, objectMapper.readValue(get("/accounts/1/messages").body(), Message[].class)[0]);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                        .header("Authorization", "Bearer admin-secret").build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
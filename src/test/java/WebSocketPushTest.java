@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WebSocketPushTest {
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account is registered so two timelines can be followed.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(register, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Connecting two clients to ws://localhost:8080/ws/messages; the first follows accounts 1 and 2, the second
+     * only account 2. Messages are posted by both accounts, then the first client unsubscribes from account 2.
+     *
+     * Expected Response:
+     *  Each client gets a "created" frame for exactly the messages of the accounts it follows at the time
+     */
+    @Test
+    public void pushesMessagesOfFollowedAccounts() throws Exception {
+        Client first = connect();
+        Client second = connect();
+        first.command("{\"action\":\"subscribe\",\"account_ids\":[1,2]}");
+        second.command("{\"action\":\"subscribe\",\"account_ids\":[2]}");
+
+        int fromFirstAccount = createMessage(1, "from one");
+        JsonNode frame = first.next();
+        Assert.assertEquals("created", frame.get("type").asText());
+        Assert.assertEquals(fromFirstAccount, frame.get("message").get("message_id").asInt());
+        Assert.assertEquals("from one", frame.get("message").get("message_text").asText());
+
+        int fromSecondAccount = createMessage(2, "from two");
+        Assert.assertEquals(fromSecondAccount, first.next().get("message").get("message_id").asInt());
+        Assert.assertEquals(fromSecondAccount, second.next().get("message").get("message_id").asInt());
+
+        first.command("{\"action\":\"unsubscribe\",\"account_ids\":[2]}");
+        int afterUnsubscribe = createMessage(2, "only the second client");
+        Assert.assertEquals(afterUnsubscribe, second.next().get("message").get("message_id").asInt());
+        Assert.assertNull(first.frames.poll(500, TimeUnit.MILLISECONDS));
+
+        first.socket.abort();
+        second.socket.abort();
+    }
+
+    /**
+     * Sending malformed commands over ws://localhost:8080/ws/messages
+     *
+     * Expected Response:
+     *  An "error" frame for each, and the connection stays open
+     */
+    @Test
+    public void malformedCommandsAreAnsweredWithErrors() throws Exception {
+        Client client = connect();
+        client.socket.sendText("not json", true).join();
+        Assert.assertEquals("invalid json", client.next().get("error").asText());
+        client.socket.sendText("{\"action\":\"follow\",\"account_ids\":[1]}", true).join();
+        Assert.assertEquals("unknown action", client.next().get("error").asText());
+
+        client.command("{\"action\":\"subscribe\",\"account_ids\":[1]}");
+        int message_id = createMessage(1, "still open");
+        Assert.assertEquals(message_id, client.next().get("message").get("message_id").asInt());
+        client.socket.abort();
+    }
+
+    private Client connect() {
+        Client client = new Client();
+        client.socket = webClient.newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:8080/ws/messages"), client).join();
+        return client;
+    }
+
+    private int createMessage(int posted_by, String text) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body()).get("message_id").asInt();
+    }
+
+    /**
+     * A WebSocket client that queues every text frame it receives
+     */
+    private class Client implements WebSocket.Listener {
+        final BlockingQueue<JsonNode> frames = new LinkedBlockingQueue<>();
+        final StringBuilder partial = new StringBuilder();
+        WebSocket socket;
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if(last) {
+                try {
+                    frames.add(objectMapper.readTree(partial.toString()));
+                } catch(IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        /**
+         * Sends a command and waits until the server has handled it. Commands on one connection are handled in
+         * order, so the error answering a trailing malformed command shows every earlier one is in effect.
+         */
+        void command(String command) throws InterruptedException {
+            socket.sendText(command, true).join();
+            socket.sendText("{\"action\":\"sync\"}", true).join();
+            Assert.assertEquals("account_ids must be an array", next().get("error").asText());
+        }
+
+        JsonNode next() throws InterruptedException {
+            JsonNode frame = frames.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(frame);
+            return frame;
+        }
+    }
+}